@@ -0,0 +1,173 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm;
+
+/**
+ * A provider of class hierarchy information. A class hierarchy gives the super
+ * class, the interfaces and the kind (class or interface) of classes, given
+ * their internal names, without necessarily loading them into the JVM. It can
+ * be set on a {@link ClassWriter} to compute the common super class of two
+ * classes when the stack map frames are computed from scratch (see
+ * {@link ClassWriter#setClassHierarchy setClassHierarchy}).
+ *
+ * <p>
+ * Implementations must be safe to use from several threads concurrently if
+ * they are shared between several ClassWriter instances used in parallel.
+ */
+public abstract class ClassHierarchy {
+
+    /**
+     * Constructs a new {@link ClassHierarchy}.
+     */
+    protected ClassHierarchy() {
+    }
+
+    /**
+     * Returns the internal name of the super class of the given class.
+     *
+     * @param type
+     *            the internal name of a class or interface.
+     * @return the internal name of the super class of the given class, or
+     *         <tt>null</tt> if type is "java/lang/Object".
+     * @throws RuntimeException
+     *             if the given class cannot be found.
+     */
+    public abstract String getSuperName(String type);
+
+    /**
+     * Returns the internal names of the interfaces directly implemented (or
+     * extended) by the given class (or interface).
+     *
+     * @param type
+     *            the internal name of a class or interface.
+     * @return the internal names of the direct super interfaces of the given
+     *         class. This array must not be modified.
+     * @throws RuntimeException
+     *             if the given class cannot be found.
+     */
+    public abstract String[] getInterfaces(String type);
+
+    /**
+     * Returns whether the given class is an interface.
+     *
+     * @param type
+     *            the internal name of a class or interface.
+     * @return <tt>true</tt> if the given class is an interface.
+     * @throws RuntimeException
+     *             if the given class cannot be found.
+     */
+    public abstract boolean isInterface(String type);
+
+    /**
+     * Returns whether the first given class is the same as, or is a super
+     * class or super interface of the second given class.
+     *
+     * @param type1
+     *            the internal name of a class or interface.
+     * @param type2
+     *            the internal name of another class or interface.
+     * @return <tt>true</tt> if a value of type2 can be assigned to a variable
+     *         of type1.
+     */
+    public boolean isAssignableFrom(final String type1, final String type2) {
+        if (type1.equals(type2) || "java/lang/Object".equals(type1)) {
+            return true;
+        }
+        if (isInterface(type1)) {
+            return implementsInterface(type2, type1);
+        }
+        if (isInterface(type2)) {
+            return false;
+        }
+        String t = getSuperName(type2);
+        while (t != null && !"java/lang/Object".equals(t)) {
+            if (t.equals(type1)) {
+                return true;
+            }
+            t = getSuperName(t);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the common super type of the two given types. This method has
+     * the same semantics as the default implementation of
+     * {@link ClassWriter#getCommonSuperClass}, but uses the information
+     * provided by this class hierarchy instead of loaded classes.
+     *
+     * @param type1
+     *            the internal name of a class.
+     * @param type2
+     *            the internal name of another class.
+     * @return the internal name of the common super class of the two given
+     *         classes.
+     */
+    public String getCommonSuperClass(final String type1, final String type2) {
+        if (isAssignableFrom(type1, type2)) {
+            return type1;
+        }
+        if (isAssignableFrom(type2, type1)) {
+            return type2;
+        }
+        if (isInterface(type1) || isInterface(type2)) {
+            return "java/lang/Object";
+        }
+        String t = type1;
+        do {
+            t = getSuperName(t);
+        } while (!isAssignableFrom(t, type2));
+        return t;
+    }
+
+    /**
+     * Returns whether the given class implements (or extends) the given
+     * interface, directly or indirectly.
+     *
+     * @param type
+     *            the internal name of a class or interface.
+     * @param itf
+     *            the internal name of an interface.
+     * @return <tt>true</tt> if type implements or extends itf.
+     */
+    private boolean implementsInterface(final String type, final String itf) {
+        String t = type;
+        while (t != null && !"java/lang/Object".equals(t)) {
+            String[] interfaces = getInterfaces(t);
+            for (int i = 0; i < interfaces.length; ++i) {
+                if (interfaces[i].equals(itf)
+                        || implementsInterface(interfaces[i], itf)) {
+                    return true;
+                }
+            }
+            t = getSuperName(t);
+        }
+        return false;
+    }
+}
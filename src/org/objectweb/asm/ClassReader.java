@@ -31,6 +31,7 @@ package org.objectweb.asm;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * A Java class parser to make a {@link ClassVisitor} visit an existing class.
@@ -38,6 +39,18 @@ import java.io.InputStream;
  * calls the appropriate visit methods of a given class visitor for each field,
  * method and bytecode instruction encountered.
  * 
+ * <p>
+ * A ClassReader is thread safe: once constructed, it can be shared between
+ * several threads, each of them calling {@link #accept accept} (or any other
+ * method) with its own visitors, without any synchronization. Indeed the
+ * class bytes and the constant pool offsets are never modified after
+ * construction, and all the state needed to parse the class is allocated by
+ * each call to {@link #accept accept}. The only shared mutable state is the
+ * cache of the decoded CONSTANT_Utf8 items, which is designed to tolerate
+ * concurrent, unsynchronized accesses. The visitors, and the attribute
+ * prototypes passed to {@link #accept(ClassVisitor,Attribute[],int) accept},
+ * must of course be thread safe too if they are shared between threads.
+ * 
  * @author Eric Bruneton
  * @author Eugene Kuleshov
  */
@@ -113,9 +126,20 @@ public class ClassReader {
      * which GREATLY improves performances (by a factor 2 to 3). This caching
      * strategy could be extended to all constant pool items, but its benefit
      * would not be so great for these items (because they are much less
-     * expensive to parse than CONSTANT_Utf8 items).
+     * expensive to parse than CONSTANT_Utf8 items). This cache is only
+     * allocated when a CONSTANT_Utf8 item is read for the first time with
+     * {@link #readUTF8 readUTF8}, so that it is not allocated when only the
+     * class header is read (see {@link #getClassName getClassName}).
+     * <p>
+     * This cache can be read and filled by several threads concurrently,
+     * without synchronization. This is safe because each thread only reads
+     * this field once per lookup, because a cached value is always equal to
+     * the value that would be computed otherwise, and because String objects
+     * are immutable, and thus safely published even through a data race. In
+     * the worst case two threads allocate two arrays, or decode the same
+     * string twice, and some cached strings are lost.
      */
-    private final String[] strings;
+    private String[] strings;
 
     /**
      * Maximum length of the strings contained in the constant pool of the
@@ -129,6 +153,18 @@ public class ClassReader {
      */
     public final int header;
 
+    /**
+     * The start index of each field and method in {@link #b b}, or
+     * <tt>null</tt> if this index has not been computed yet. The first element
+     * is the number of fields n, the next n elements are the start indexes of
+     * the fields, followed by the start indexes of the methods, and the last
+     * element is the start index of the attribute_info structure of the class.
+     * This index is computed lazily, by {@link #getMembers getMembers}. This
+     * field is volatile so that this index is safely published to the other
+     * threads which use this class reader.
+     */
+    private volatile int[] members;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -162,7 +198,6 @@ public class ClassReader {
         // parses the constant pool
         items = new int[readUnsignedShort(off + 8)];
         int n = items.length;
-        strings = new String[n];
         int max = 0;
         int index = off + 10;
         for (int i = 1; i < n; ++i) {
@@ -230,7 +265,7 @@ public class ClassReader {
      * @see ClassVisitor#visit(int, int, String, String, String, String[])
      */
     public String getClassName() {
-        return readClass(header + 2, new char[maxStringLength]);
+        return readHeaderClass(header + 2);
     }
 
     /**
@@ -244,7 +279,7 @@ public class ClassReader {
      * @see ClassVisitor#visit(int, int, String, String, String, String[])
      */
     public String getSuperName() {
-        return readClass(header + 4, new char[maxStringLength]);
+        return readHeaderClass(header + 4);
     }
 
     /**
@@ -260,30 +295,238 @@ public class ClassReader {
         int index = header + 6;
         int n = readUnsignedShort(index);
         String[] interfaces = new String[n];
-        if (n > 0) {
-            char[] buf = new char[maxStringLength];
-            for (int i = 0; i < n; ++i) {
-                index += 2;
-                interfaces[i] = readClass(index, buf);
-            }
+        for (int i = 0; i < n; ++i) {
+            index += 2;
+            interfaces[i] = readHeaderClass(index);
         }
         return interfaces;
     }
 
+    /**
+     * Reads a class constant pool item of the class header. This method does
+     * the same thing as {@link #readClass readClass}, but it does not use nor
+     * allocate the {@link #strings strings} cache, nor a buffer of
+     * {@link #getMaxStringLength maxStringLength} chars. Indeed the header
+     * names are usually read only once, and often without calling
+     * {@link #accept(ClassVisitor, int) accept} afterwards (e.g. to index the
+     * classes of a class path).
+     * 
+     * @param index
+     *            the start index of an unsigned short value in {@link #b b},
+     *            whose value is the index of a class constant pool item.
+     * @return the String corresponding to the specified class item.
+     */
+    private String readHeaderClass(final int index) {
+        int item = readUnsignedShort(index);
+        if (item == 0) {
+            return null;
+        }
+        item = readUnsignedShort(items[item]);
+        String[] strings = this.strings;
+        if (strings != null) {
+            String s = strings[item];
+            if (s != null) {
+                return s;
+            }
+        }
+        int utf = items[item];
+        int utfLen = readUnsignedShort(utf);
+        return readUTF(utf + 2, utfLen, new char[utfLen]);
+    }
+
+    /**
+     * Returns the number of fields of the class.
+     * 
+     * @return the number of fields of the class.
+     */
+    public int getFieldCount() {
+        return getMembers()[0];
+    }
+
+    /**
+     * Returns the start index of the given field in {@link #b b}. The access
+     * flags of this field are at this index, and the indexes of the UTF8
+     * constant pool items containing its name and descriptor are at the
+     * following offsets 2 and 4 (see {@link #readUnsignedShort
+     * readUnsignedShort} and {@link #readUTF8 readUTF8}).
+     * 
+     * @param field
+     *            the index of a field, between 0 (inclusive) and
+     *            {@link #getFieldCount getFieldCount} (exclusive).
+     * @return the start index of the given field's field_info structure in
+     *         {@link #b b}.
+     */
+    public int getField(final int field) {
+        int[] members = getMembers();
+        if (field < 0 || field >= members[0]) {
+            throw new IndexOutOfBoundsException(Integer.toString(field));
+        }
+        return members[1 + field];
+    }
+
+    /**
+     * Returns the number of methods of the class.
+     * 
+     * @return the number of methods of the class.
+     */
+    public int getMethodCount() {
+        int[] members = getMembers();
+        return members.length - members[0] - 2;
+    }
+
+    /**
+     * Returns the start index of the given method in {@link #b b}. The access
+     * flags of this method are at this index, and the indexes of the UTF8
+     * constant pool items containing its name and descriptor are at the
+     * following offsets 2 and 4 (see {@link #readUnsignedShort
+     * readUnsignedShort} and {@link #readUTF8 readUTF8}).
+     * 
+     * @param method
+     *            the index of a method, between 0 (inclusive) and
+     *            {@link #getMethodCount getMethodCount} (exclusive).
+     * @return the start index of the given method's method_info structure in
+     *         {@link #b b}.
+     */
+    public int getMethod(final int method) {
+        int[] members = getMembers();
+        if (method < 0 || method >= members.length - members[0] - 2) {
+            throw new IndexOutOfBoundsException(Integer.toString(method));
+        }
+        return members[1 + members[0] + method];
+    }
+
+    /**
+     * Returns the start index of the code of the given method in {@link #b b}.
+     * 
+     * @param method
+     *            the index of a method, between 0 (inclusive) and
+     *            {@link #getMethodCount getMethodCount} (exclusive).
+     * @return the start index of the content of the given method's Code
+     *         attribute in {@link #b b} (i.e. the index of its max_stack
+     *         field), or 0 if this method has no code.
+     */
+    public int getMethodCode(final int method) {
+        char[] c = new char[maxStringLength];
+        int u = getMethod(method) + 6;
+        for (int i = readUnsignedShort(u); i > 0; --i) {
+            if ("Code".equals(readUTF8(u + 2, c))) {
+                return u + 8;
+            }
+            u += 6 + readInt(u + 4);
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the index of the fields and methods of the class, computing it
+     * if necessary. See {@link #members members}.
+     * 
+     * @return the index of the fields and methods of the class.
+     */
+    private int[] getMembers() {
+        int[] members = this.members;
+        if (members != null) {
+            return members;
+        }
+        // skips the header
+        int u = header + 8 + readUnsignedShort(header + 6) * 2;
+        int fieldCount = readUnsignedShort(u);
+        int v = u + 2;
+        for (int i = fieldCount; i > 0; --i) {
+            for (int j = readUnsignedShort(v + 6); j > 0; --j) {
+                v += 6 + readInt(v + 10);
+            }
+            v += 8;
+        }
+        int methodCount = readUnsignedShort(v);
+        members = new int[fieldCount + methodCount + 2];
+        members[0] = fieldCount;
+        // stores the start index of each field and method
+        u += 2;
+        for (int i = 1; i < members.length - 1; ++i) {
+            if (i == fieldCount + 1) {
+                u += 2;
+            }
+            members[i] = u;
+            for (int j = readUnsignedShort(u + 6); j > 0; --j) {
+                u += 6 + readInt(u + 10);
+            }
+            u += 8;
+        }
+        if (methodCount == 0) {
+            u += 2;
+        }
+        // the attribute_info structure starts just after the methods
+        members[members.length - 1] = u;
+        return this.members = members;
+    }
+
     /**
      * Copies the constant pool data into the given {@link ClassWriter}. Should
-     * be called before the {@link #accept(ClassVisitor,int)} method.
+     * be called before the {@link #accept(ClassVisitor,int)} method. The
+     * constant pool bytes are copied as is, but the corresponding items are
+     * not added to the class writer's hash table: this is done lazily, one
+     * kind of constant pool entries at a time, when an item of this kind is
+     * looked up for the first time (see {@link #copyPool(ClassWriter,int)}).
      * 
      * @param classWriter
      *            the {@link ClassWriter} to copy constant pool into.
      */
     void copyPool(final ClassWriter classWriter) {
+        int ll = items.length;
+        int tags = 0;
+        for (int i = 1; i < ll; i++) {
+            int tag = b[items[i] - 1];
+            tags |= 1 << tag;
+            if (tag == ClassWriter.LONG || tag == ClassWriter.DOUBLE) {
+                ++i;
+            }
+        }
+
+        int off = items[1] - 1;
+        classWriter.pool.putByteArray(b, off, header - off);
+        classWriter.index = ll;
+        if ((tags & (1 << ClassWriter.INDY)) != 0) {
+            int u = getBootstrapMethodsAttribute();
+            if (u != 0) {
+                int attrSize = readInt(u + 4);
+                ByteVector bootstrapMethods = new ByteVector(attrSize + 62);
+                bootstrapMethods.putByteArray(b, u + 10, attrSize - 2);
+                classWriter.bootstrapMethods = bootstrapMethods;
+                classWriter.bootstrapMethodsCount = readUnsignedShort(u + 8);
+            }
+        }
+        classWriter.poolReader = this;
+        classWriter.unindexedTags = tags;
+    }
+
+    /**
+     * Adds the items corresponding to the constant pool entries of the given
+     * kind to the hash table of the given {@link ClassWriter}, into which the
+     * constant pool of this class has been copied with
+     * {@link #copyPool(ClassWriter)}. If the constant pool contains several
+     * equal entries, the hash table contains the last one.
+     * 
+     * @param classWriter
+     *            the {@link ClassWriter} into which the constant pool of this
+     *            class has been copied.
+     * @param tag
+     *            the tag of the constant pool entries to be added to the
+     *            class writer's hash table. For {@link ClassWriter#INDY}, the
+     *            bootstrap methods items are added too.
+     */
+    void copyPool(final ClassWriter classWriter, final int tag) {
         char[] buf = new char[maxStringLength];
         int ll = items.length;
-        Item[] items2 = new Item[ll];
         for (int i = 1; i < ll; i++) {
             int index = items[i];
-            int tag = b[index - 1];
+            if (b[index - 1] != tag) {
+                if (b[index - 1] == ClassWriter.LONG
+                        || b[index - 1] == ClassWriter.DOUBLE) {
+                    ++i;
+                }
+                continue;
+            }
             Item item = new Item(i);
             int nameType;
             switch (tag) {
@@ -312,16 +555,9 @@ public class ClassReader {
                 item.set(Double.longBitsToDouble(readLong(index)));
                 ++i;
                 break;
-            case ClassWriter.UTF8: {
-                String s = strings[i];
-                if (s == null) {
-                    index = items[i];
-                    s = strings[i] = readUTF(index + 2,
-                            readUnsignedShort(index), buf);
-                }
-                item.set(tag, s, null, null);
+            case ClassWriter.UTF8:
+                item.set(tag, readUTF8Item(i, buf), null, null);
                 break;
-            }
             case ClassWriter.HANDLE: {
                 int fieldOrMethodRef = items[readUnsignedShort(index + 1)];
                 nameType = items[readUnsignedShort(fieldOrMethodRef + 2)];
@@ -331,9 +567,6 @@ public class ClassReader {
                 break;
             }
             case ClassWriter.INDY:
-                if (classWriter.bootstrapMethods == null) {
-                    copyBootstrapMethods(classWriter, items2, buf);
-                }
                 nameType = items[readUnsignedShort(index + 2)];
                 item.set(readUTF8(nameType, buf), readUTF8(nameType + 2, buf),
                         readUnsignedShort(index));
@@ -347,43 +580,30 @@ public class ClassReader {
                 item.set(tag, readUTF8(index, buf), null, null);
                 break;
             }
-
-            int index2 = item.hashCode % items2.length;
-            item.next = items2[index2];
-            items2[index2] = item;
+            classWriter.putOrReplace(item);
+        }
+        if (tag == ClassWriter.INDY) {
+            copyBootstrapMethods(classWriter, buf);
         }
-
-        int off = items[1] - 1;
-        classWriter.pool.putByteArray(b, off, header - off);
-        classWriter.items = items2;
-        classWriter.threshold = (int) (0.75d * ll);
-        classWriter.index = ll;
     }
 
     /**
-     * Copies the bootstrap method data into the given {@link ClassWriter}.
-     * Should be called before the {@link #accept(ClassVisitor,int)} method.
+     * Adds the items corresponding to the bootstrap methods of this class to
+     * the hash table of the given {@link ClassWriter}, into which the
+     * bootstrap methods data has been copied with
+     * {@link #copyPool(ClassWriter)}.
      * 
      * @param classWriter
      *            the {@link ClassWriter} to copy bootstrap methods into.
+     * @param c
+     *            a buffer to be used to read the bootstrap method arguments.
      */
     private void copyBootstrapMethods(final ClassWriter classWriter,
-            final Item[] items, final char[] c) {
-        // finds the "BootstrapMethods" attribute
-        int u = getAttributes();
-        boolean found = false;
-        for (int i = readUnsignedShort(u); i > 0; --i) {
-            String attrName = readUTF8(u + 2, c);
-            if ("BootstrapMethods".equals(attrName)) {
-                found = true;
-                break;
-            }
-            u += 6 + readInt(u + 4);
-        }
-        if (!found) {
+            final char[] c) {
+        int u = getBootstrapMethodsAttribute();
+        if (u == 0) {
             return;
         }
-        // copies the bootstrap methods in the class writer
         int boostrapMethodCount = readUnsignedShort(u + 8);
         for (int j = 0, v = u + 10; j < boostrapMethodCount; j++) {
             int position = v - u - 10;
@@ -395,15 +615,45 @@ public class ClassReader {
             v += 4;
             Item item = new Item(j);
             item.set(position, hashCode & 0x7FFFFFFF);
-            int index = item.hashCode % items.length;
-            item.next = items[index];
-            items[index] = item;
-        }
-        int attrSize = readInt(u + 4);
-        ByteVector bootstrapMethods = new ByteVector(attrSize + 62);
-        bootstrapMethods.putByteArray(b, u + 10, attrSize - 2);
-        classWriter.bootstrapMethodsCount = boostrapMethodCount;
-        classWriter.bootstrapMethods = bootstrapMethods;
+            classWriter.putOrReplace(item);
+        }
+    }
+
+    /**
+     * Returns the start offset of the "BootstrapMethods" attribute of this
+     * class.
+     * 
+     * @return the start offset of the "BootstrapMethods" attribute of this
+     *         class, or 0 if there is no such attribute.
+     */
+    private int getBootstrapMethodsAttribute() {
+        char[] c = new char[maxStringLength];
+        int u = getAttributes();
+        for (int i = readUnsignedShort(u); i > 0; --i) {
+            if ("BootstrapMethods".equals(readUTF8(u + 2, c))) {
+                return u;
+            }
+            u += 6 + readInt(u + 4);
+        }
+        return 0;
+    }
+
+    /**
+     * Constructs a new {@link ClassReader} object from the remaining bytes of
+     * the given buffer. If this buffer is backed by an accessible array (i.e.,
+     * if it is a heap buffer which is not read-only), the class is parsed
+     * directly in this array, without copying it (the {@link #b b} field is
+     * then this array, and all the offsets used by this class reader are
+     * offsets in this array). Otherwise, for instance for direct or mapped
+     * buffers, the remaining bytes are copied into a new array, with a single
+     * bulk transfer. In both cases the position of the buffer is unchanged.
+     * 
+     * @param buffer
+     *            a buffer whose remaining bytes contain the class to be read.
+     */
+    public ClassReader(final ByteBuffer buffer) {
+        this(getArray(buffer), buffer.hasArray() ? buffer.arrayOffset()
+                + buffer.position() : 0, buffer.remaining());
     }
 
     /**
@@ -432,6 +682,24 @@ public class ClassReader {
                         + ".class"), true));
     }
 
+    /**
+     * Returns an array containing the remaining bytes of the given buffer.
+     * 
+     * @param buffer
+     *            a byte buffer.
+     * @return the array backing the given buffer if it is accessible, or
+     *         otherwise a new array containing the remaining bytes of this
+     *         buffer.
+     */
+    private static byte[] getArray(final ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return buffer.array();
+        }
+        byte[] b = new byte[buffer.remaining()];
+        buffer.duplicate().get(b);
+        return b;
+    }
+
     /**
      * Reads the bytecode of a class.
      * 
@@ -523,6 +791,43 @@ public class ClassReader {
      */
     public void accept(final ClassVisitor classVisitor,
             final Attribute[] attrs, final int flags) {
+        accept(classVisitor, attrs, flags, null, null);
+    }
+
+    /**
+     * Makes the given visitor visit some members of the Java class of this
+     * {@link ClassReader}. This method does the same thing as
+     * {@link #accept(ClassVisitor, Attribute[], int) accept}, but only visits
+     * the given fields and methods. The other fields and methods are skipped
+     * without being parsed, which is much faster than skipping them with a
+     * visitor when only a few members of a large class are needed.
+     * 
+     * @param classVisitor
+     *            the visitor that must visit this class.
+     * @param attrs
+     *            prototypes of the attributes that must be parsed during the
+     *            visit of the class. See
+     *            {@link #accept(ClassVisitor, Attribute[], int) accept}.
+     * @param flags
+     *            option flags that can be used to modify the default behavior
+     *            of this class. See {@link #SKIP_DEBUG}, {@link #EXPAND_FRAMES}
+     *            , {@link #SKIP_FRAMES}, {@link #SKIP_CODE}.
+     * @param fields
+     *            the indexes of the fields to be visited, in the order in
+     *            which they must be visited (see {@link #getField getField}),
+     *            or <tt>null</tt> to visit all the fields.
+     * @param methods
+     *            the indexes of the methods to be visited, in the order in
+     *            which they must be visited (see {@link #getMethod getMethod}),
+     *            or <tt>null</tt> to visit all the methods.
+     */
+    public void accept(final ClassVisitor classVisitor,
+            final Attribute[] attrs, final int flags, final int[] fields,
+            final int[] methods) {
+        if (fields != null || methods != null) {
+            // computes the member index before getAttributes is called
+            getMembers();
+        }
         int u = header; // current offset in the class file
         char[] c = new char[maxStringLength]; // buffer used to read strings
 
@@ -689,13 +994,26 @@ public class ClassReader {
         }
 
         // visits the fields and methods
-        u = header + 10 + 2 * interfaces.length;
-        for (int i = readUnsignedShort(u - 2); i > 0; --i) {
-            u = readField(classVisitor, context, u);
-        }
-        u += 2;
-        for (int i = readUnsignedShort(u - 2); i > 0; --i) {
-            u = readMethod(classVisitor, context, u);
+        if (fields == null && methods == null) {
+            u = header + 10 + 2 * interfaces.length;
+            for (int i = readUnsignedShort(u - 2); i > 0; --i) {
+                u = readField(classVisitor, context, u);
+            }
+            u += 2;
+            for (int i = readUnsignedShort(u - 2); i > 0; --i) {
+                u = readMethod(classVisitor, context, u);
+            }
+        } else {
+            int n = fields == null ? getFieldCount() : fields.length;
+            for (int i = 0; i < n; ++i) {
+                readField(classVisitor, context,
+                        getField(fields == null ? i : fields[i]));
+            }
+            n = methods == null ? getMethodCount() : methods.length;
+            for (int i = 0; i < n; ++i) {
+                readMethod(classVisitor, context,
+                        getMethod(methods == null ? i : methods[i]));
+            }
         }
 
         // visits the end of the class
@@ -2397,6 +2715,10 @@ public class ClassReader {
      * @return the start index of the attribute_info structure of this class.
      */
     private int getAttributes() {
+        int[] members = this.members;
+        if (members != null) {
+            return members[members.length - 1];
+        }
         // skips the header
         int u = header + 8 + readUnsignedShort(header + 6) * 2;
         // skips fields and methods
@@ -2583,16 +2905,35 @@ public class ClassReader {
      *            sufficiently large. It is not automatically resized.
      * @return the String corresponding to the specified UTF8 item.
      */
-    public String readUTF8(int index, final char[] buf) {
+    public String readUTF8(final int index, final char[] buf) {
         int item = readUnsignedShort(index);
         if (index == 0 || item == 0) {
             return null;
         }
+        return readUTF8Item(item, buf);
+    }
+
+    /**
+     * Reads an UTF8 string constant pool item in {@link #b b}, using the
+     * {@link #strings strings} cache.
+     * 
+     * @param item
+     *            the index of an UTF8 constant pool item.
+     * @param buf
+     *            buffer to be used to read the item. This buffer must be
+     *            sufficiently large. It is not automatically resized.
+     * @return the String corresponding to the specified UTF8 item.
+     */
+    private String readUTF8Item(final int item, final char[] buf) {
+        String[] strings = this.strings;
+        if (strings == null) {
+            strings = this.strings = new String[items.length];
+        }
         String s = strings[item];
         if (s != null) {
             return s;
         }
-        index = items[item];
+        int index = items[item];
         return strings[item] = readUTF(index + 2, readUnsignedShort(index), buf);
     }
 
@@ -29,6 +29,13 @@
  */
 package org.objectweb.asm;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
 /**
  * A {@link ClassVisitor} that generates classes in bytecode form. More
  * precisely this visitor generates a byte array conforming to the Java class
@@ -329,15 +336,48 @@ public class ClassWriter extends ClassVisitor {
     final ByteVector pool;
 
     /**
-     * The constant pool's hash table data.
+     * The constant pool's hash table data. This hash table uses open
+     * addressing with linear probing: an item whose hash code is h is stored
+     * at index <tt>h &amp; (items.length - 1)</tt> or, if this slot is already
+     * used, in the next free slot. The length of this array is a power of two.
      */
     Item[] items;
 
     /**
-     * The threshold of the constant pool's hash table.
+     * The hash codes of the items of the {@link #items} hash table, at the
+     * same indexes, or -1 for the free slots. Lookups compare these hash codes
+     * first, and only access the items whose hash code matches.
+     */
+    int[] hashes;
+
+    /**
+     * The number of items in the {@link #items} hash table.
+     */
+    int itemCount;
+
+    /**
+     * The threshold of the constant pool's hash table. The table is resized
+     * when it contains more items than this threshold.
      */
     int threshold;
 
+    /**
+     * The class reader whose constant pool has been copied into this class
+     * writer, if some of its entries have not been added to the {@link #items}
+     * hash table yet. These entries are added lazily, one kind at a time, the
+     * first time an item of this kind is looked up. If no item is ever looked
+     * up, the constant pool is copied with a single byte array copy.
+     */
+    ClassReader poolReader;
+
+    /**
+     * The kinds of constant pool entries of {@link #poolReader} that have not
+     * been added to the {@link #items} hash table yet. The bit <tt>1 &lt;&lt;
+     * tag</tt> is set if the entries whose tag is <tt>tag</tt> have not been
+     * added yet.
+     */
+    int unindexedTags;
+
     /**
      * A reusable key used to look for items in the {@link #items} hash table.
      */
@@ -526,6 +566,14 @@ public class ClassWriter extends ClassVisitor {
      */
     private int compute;
 
+    /**
+     * The value of {@link #compute} computed from the flags given in the
+     * constructor. {@link #compute} can change when the class contains ASM
+     * specific instructions, and is restored to this value by
+     * {@link #reset() reset}.
+     */
+    private final int initialCompute;
+
     /**
      * <tt>true</tt> if some methods have wide forward jumps using ASM pseudo
      * instructions, which need to be expanded into sequences of standard
@@ -534,6 +582,15 @@ public class ClassWriter extends ClassVisitor {
      */
     boolean hasAsmInsns;
 
+    /**
+     * The class hierarchy used to compute the common super class of two
+     * classes, or <tt>null</tt> to load the classes with the class loader of
+     * this ClassWriter.
+     * 
+     * @see #getCommonSuperClass
+     */
+    private ClassHierarchy classHierarchy;
+
     // ------------------------------------------------------------------------
     // Static initializer
     // ------------------------------------------------------------------------
@@ -640,6 +697,8 @@ public class ClassWriter extends ClassVisitor {
         index = 1;
         pool = new ByteVector();
         items = new Item[256];
+        hashes = new int[256];
+        Arrays.fill(hashes, -1);
         threshold = (int) (0.75d * items.length);
         key = new Item();
         key2 = new Item();
@@ -648,6 +707,7 @@ public class ClassWriter extends ClassVisitor {
         this.compute = (flags & COMPUTE_FRAMES) != 0 ? MethodWriter.FRAMES
                 : ((flags & COMPUTE_MAXS) != 0 ? MethodWriter.MAXS
                         : MethodWriter.NOTHING);
+        this.initialCompute = compute;
     }
 
     /**
@@ -688,6 +748,21 @@ public class ClassWriter extends ClassVisitor {
         this.cr = classReader;
     }
 
+    /**
+     * Sets the class hierarchy used by the default implementation of
+     * {@link #getCommonSuperClass getCommonSuperClass}. By default, and if
+     * the given hierarchy is <tt>null</tt>, the classes are loaded with the
+     * class loader of this ClassWriter. A class hierarchy can be shared
+     * between several ClassWriter instances, so that the class hierarchy
+     * information is computed only once for all the generated classes.
+     * 
+     * @param classHierarchy
+     *            the class hierarchy to use, or <tt>null</tt>.
+     */
+    public void setClassHierarchy(final ClassHierarchy classHierarchy) {
+        this.classHierarchy = classHierarchy;
+    }
+
     // ------------------------------------------------------------------------
     // Implementation of the ClassVisitor abstract class
     // ------------------------------------------------------------------------
@@ -842,6 +917,116 @@ public class ClassWriter extends ClassVisitor {
      * @return the bytecode of the class that was build with this class writer.
      */
     public byte[] toByteArray() {
+        ByteVector out;
+        try {
+            out = putClassFile(null);
+        } catch (IOException e) {
+            // cannot happen, nothing is written to an output stream
+            throw new RuntimeException(e);
+        }
+        if (hasAsmInsns) {
+            boolean hasFrames = false;
+            MethodWriter mb = firstMethod;
+            while (mb != null) {
+                hasFrames |= mb.frameCount > 0;
+                mb = (MethodWriter) mb.mv;
+            }
+            anns = null;
+            ianns = null;
+            attrs = null;
+            moduleWriter = null;
+            firstField = null;
+            lastField = null;
+            firstMethod = null;
+            lastMethod = null;
+            compute = 
+                hasFrames ? MethodWriter.INSERTED_FRAMES : MethodWriter.NOTHING;
+            hasAsmInsns = false;
+            new ClassReader(out.data).accept(this, 
+                    (hasFrames ? ClassReader.EXPAND_FRAMES : 0)
+                    | ClassReader.EXPAND_ASM_INSNS);
+            return toByteArray();
+        }
+        return out.data;
+    }
+
+    /**
+     * Writes the bytecode of the class that was build with this class writer
+     * to the given output stream. Unlike {@link #toByteArray toByteArray},
+     * this method does not build the whole class file in memory: the constant
+     * pool is written directly to the stream, and each field and method is
+     * serialized in a buffer which is written to the stream before serializing
+     * the next one. The stream is neither flushed nor closed by this method.
+     * 
+     * @param os
+     *            the stream to which the class file must be written.
+     * @throws IOException
+     *             if an error occurs while writing to the given stream.
+     */
+    public void write(final OutputStream os) throws IOException {
+        if (hasAsmInsns) {
+            os.write(toByteArray());
+        } else {
+            putClassFile(os);
+        }
+    }
+
+    /**
+     * Writes the bytecode of the class that was build with this class writer
+     * to the given channel. See {@link #write(OutputStream)}.
+     * 
+     * @param channel
+     *            the channel to which the class file must be written.
+     * @throws IOException
+     *             if an error occurs while writing to the given channel.
+     */
+    public void write(final WritableByteChannel channel) throws IOException {
+        write(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Writes the bytecode of the class that was build with this class writer
+     * at the current position of the given buffer, and advances this position
+     * past the class file. See {@link #write(OutputStream)}.
+     * 
+     * @param buffer
+     *            the buffer to which the class file must be written.
+     * @throws java.nio.BufferOverflowException
+     *             if there is not enough remaining space in the buffer.
+     */
+    public void write(final ByteBuffer buffer) {
+        try {
+            write(new OutputStream() {
+                @Override
+                public void write(final int b) {
+                    buffer.put((byte) b);
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) {
+                    buffer.put(b, off, len);
+                }
+            });
+        } catch (IOException e) {
+            // cannot happen, ByteBuffer.put does not throw IOException
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the bytecode of the class that was build with this class writer.
+     * 
+     * @param os
+     *            the stream to which the class file must be written, or
+     *            <tt>null</tt> to build the whole class file in memory.
+     * @return a byte vector containing the whole class file if os is
+     *         <tt>null</tt>. Otherwise the content of the returned vector is
+     *         unspecified.
+     * @throws IOException
+     *             if an error occurs while writing to the given stream.
+     */
+    private ByteVector putClassFile(final OutputStream os)
+            throws IOException {
         if (index > 0xFFFF) {
             throw new RuntimeException("Class file too large!");
         }
@@ -938,10 +1123,17 @@ public class ClassWriter extends ClassVisitor {
         }
         size += pool.length;
         // allocates a byte vector of this size, in order to avoid unnecessary
-        // arraycopy operations in the ByteVector.enlarge() method
-        ByteVector out = new ByteVector(size);
-        out.putInt(0xCAFEBABE).putInt(version);
-        out.putShort(index).putByteArray(pool.data, 0, pool.length);
+        // arraycopy operations in the ByteVector.enlarge() method (if the
+        // class is written to a stream, the vector is flushed after each
+        // field and method, and is therefore much smaller)
+        ByteVector out = new ByteVector(os == null ? size : 1024);
+        out.putInt(0xCAFEBABE).putInt(version).putShort(index);
+        if (os == null) {
+            out.putByteArray(pool.data, 0, pool.length);
+        } else {
+            flush(out, os);
+            os.write(pool.data, 0, pool.length);
+        }
         int mask = Opcodes.ACC_DEPRECATED | ACC_SYNTHETIC_ATTRIBUTE
                 | ((access & ACC_SYNTHETIC_ATTRIBUTE) / TO_ACC_SYNTHETIC);
         out.putShort(access & ~mask).putShort(name).putShort(superName);
@@ -953,12 +1145,14 @@ public class ClassWriter extends ClassVisitor {
         fb = firstField;
         while (fb != null) {
             fb.put(out);
+            flush(out, os);
             fb = (FieldWriter) fb.fv;
         }
         out.putShort(nbMethods);
         mb = firstMethod;
         while (mb != null) {
             mb.put(out);
+            flush(out, os);
             mb = (MethodWriter) mb.mv;
         }
         out.putShort(attributeCount);
@@ -1021,30 +1215,97 @@ public class ClassWriter extends ClassVisitor {
         if (attrs != null) {
             attrs.put(this, null, 0, -1, -1, out);
         }
-        if (hasAsmInsns) {
-            boolean hasFrames = false;
-            mb = firstMethod;
-            while (mb != null) {
-                hasFrames |= mb.frameCount > 0;
-                mb = (MethodWriter) mb.mv;
-            }
-            anns = null;
-            ianns = null;
-            attrs = null;
-            moduleWriter = null;
-            firstField = null;
-            lastField = null;
-            firstMethod = null;
-            lastMethod = null;
-            compute = 
-                hasFrames ? MethodWriter.INSERTED_FRAMES : MethodWriter.NOTHING;
-            hasAsmInsns = false;
-            new ClassReader(out.data).accept(this, 
-                    (hasFrames ? ClassReader.EXPAND_FRAMES : 0)
-                    | ClassReader.EXPAND_ASM_INSNS);
-            return toByteArray();
+        flush(out, os);
+        return out;
+    }
+
+    /**
+     * Resets this class writer so that it can be used to generate a new class.
+     * After this method has been called, this class writer behaves exactly as
+     * a new class writer created with the same flags (and the same
+     * {@link #setClassHierarchy class hierarchy}), and produces exactly the
+     * same bytecode, but it reuses the storage allocated for the constant pool
+     * of the previous class and for its hash table. This avoids these
+     * allocations when many classes are generated in sequence. A class writer
+     * must not be reset while it is used, for instance between the
+     * {@link #visit visit} and {@link #toByteArray toByteArray} calls of a
+     * class generation.
+     */
+    public void reset() {
+        cr = null;
+        version = 0;
+        index = 1;
+        pool.length = 0;
+        Arrays.fill(items, null);
+        Arrays.fill(hashes, -1);
+        itemCount = 0;
+        poolReader = null;
+        unindexedTags = 0;
+        if (typeTable != null) {
+            Arrays.fill(typeTable, null);
+        }
+        typeCount = 0;
+        access = 0;
+        name = 0;
+        thisName = null;
+        signature = 0;
+        superName = 0;
+        interfaceCount = 0;
+        interfaces = null;
+        sourceFile = 0;
+        sourceDebug = null;
+        moduleWriter = null;
+        enclosingMethodOwner = 0;
+        enclosingMethod = 0;
+        anns = null;
+        ianns = null;
+        tanns = null;
+        itanns = null;
+        attrs = null;
+        innerClassesCount = 0;
+        innerClasses = null;
+        bootstrapMethodsCount = 0;
+        bootstrapMethods = null;
+        firstField = null;
+        lastField = null;
+        firstMethod = null;
+        lastMethod = null;
+        compute = initialCompute;
+        hasAsmInsns = false;
+    }
+
+    /**
+     * Resets this class writer so that it can be used to generate a new class
+     * from the given class reader. After this method has been called, this
+     * class writer behaves exactly as a class writer created with
+     * {@link #ClassWriter(ClassReader, int)}, with this class reader and the
+     * flags of this class writer. See {@link #reset()}.
+     * 
+     * @param classReader
+     *            the {@link ClassReader} used to read the original class.
+     */
+    public void reset(final ClassReader classReader) {
+        reset();
+        classReader.copyPool(this);
+        this.cr = classReader;
+    }
+
+    /**
+     * Writes the given byte vector to the given stream, and then empties it.
+     * 
+     * @param out
+     *            a byte vector.
+     * @param os
+     *            a stream, or <tt>null</tt> to leave the byte vector unchanged.
+     * @throws IOException
+     *             if an error occurs while writing to the given stream.
+     */
+    private static void flush(final ByteVector out, final OutputStream os)
+            throws IOException {
+        if (os != null) {
+            os.write(out.data, 0, out.length);
+            out.length = 0;
         }
-        return out.data;
     }
 
     // ------------------------------------------------------------------------
@@ -1349,6 +1610,10 @@ public class ClassWriter extends ClassVisitor {
      */
     Item newInvokeDynamicItem(final String name, final String desc,
             final Handle bsm, final Object... bsmArgs) {
+        if (poolReader != null) {
+            // the BSM items are added at the same time as the INDY items
+            indexPool(INDY);
+        }
         // cache for performance
         ByteVector bootstrapMethods = this.bootstrapMethods;
         if (bootstrapMethods == null) {
@@ -1373,22 +1638,24 @@ public class ClassWriter extends ClassVisitor {
         byte[] data = bootstrapMethods.data;
         int length = (1 + 1 + argsLength) << 1; // (bsm + argCount + arguments)
         hashCode &= 0x7FFFFFFF;
-        Item result = items[hashCode % items.length];
-        loop: while (result != null) {
-            if (result.type != BSM || result.hashCode != hashCode) {
-                result = result.next;
+        Item result = null;
+        int[] hashes = this.hashes;
+        int mask = hashes.length - 1;
+        loop: for (int i = hashCode & mask; hashes[i] != -1;
+                i = (i + 1) & mask) {
+            if (hashes[i] != hashCode || items[i].type != BSM) {
                 continue;
             }
 
             // because the data encode the size of the argument
             // we don't need to test if these size are equals
-            int resultPosition = result.intVal;
+            int resultPosition = items[i].intVal;
             for (int p = 0; p < length; p++) {
                 if (data[position + p] != data[resultPosition + p]) {
-                    result = result.next;
                     continue loop;
                 }
             }
+            result = items[i];
             break;
         }
 
@@ -1735,12 +2002,14 @@ public class ClassWriter extends ClassVisitor {
 
     /**
      * Returns the common super type of the two given types. The default
-     * implementation of this method <i>loads</i> the two given classes and uses
-     * the java.lang.Class methods to find the common super class. It can be
-     * overridden to compute this common super type in other ways, in particular
-     * without actually loading any class, or to take into account the class
-     * that is currently being generated by this ClassWriter, which can of
-     * course not be loaded since it is under construction.
+     * implementation of this method uses the {@link ClassHierarchy} set with
+     * {@link #setClassHierarchy setClassHierarchy} if there is one. Otherwise
+     * it <i>loads</i> the two given classes and uses the java.lang.Class
+     * methods to find the common super class. It can be overridden to compute
+     * this common super type in other ways, in particular without actually
+     * loading any class, or to take into account the class that is currently
+     * being generated by this ClassWriter, which can of course not be loaded
+     * since it is under construction.
      * 
      * @param type1
      *            the internal name of a class.
@@ -1750,6 +2019,9 @@ public class ClassWriter extends ClassVisitor {
      *         classes.
      */
     protected String getCommonSuperClass(final String type1, final String type2) {
+        if (classHierarchy != null) {
+            return classHierarchy.getCommonSuperClass(type1, type2);
+        }
         Class<?> c, d;
         ClassLoader classLoader = getClass().getClassLoader();
         try {
@@ -1784,11 +2056,47 @@ public class ClassWriter extends ClassVisitor {
      *         item, or <tt>null</tt> if there is no such item.
      */
     private Item get(final Item key) {
-        Item i = items[key.hashCode % items.length];
-        while (i != null && (i.type != key.type || !key.isEqualTo(i))) {
-            i = i.next;
+        if (poolReader != null) {
+            indexPool(key.type);
+        }
+        int hashCode = key.hashCode;
+        int[] hashes = this.hashes;
+        int mask = hashes.length - 1;
+        for (int i = hashCode & mask; hashes[i] != -1; i = (i + 1) & mask) {
+            if (hashes[i] == hashCode) {
+                Item item = items[i];
+                if (item.type == key.type && key.isEqualTo(item)) {
+                    return item;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the items of the given type that come from the constant pool of
+     * {@link #poolReader} to the constant pool's hash table, if this has not
+     * already been done.
+     * 
+     * @param type
+     *            the type of an item (see {@link Item#type}).
+     */
+    private void indexPool(final int type) {
+        int tag;
+        if (type <= HANDLE_BASE) {
+            tag = type;
+        } else if (type < TYPE_NORMAL) {
+            tag = HANDLE;
+        } else {
+            return;
+        }
+        if ((unindexedTags & (1 << tag)) != 0) {
+            unindexedTags &= ~(1 << tag);
+            poolReader.copyPool(this, tag);
+            if (unindexedTags == 0) {
+                poolReader = null;
+            }
         }
-        return i;
     }
 
     /**
@@ -1798,27 +2106,91 @@ public class ClassWriter extends ClassVisitor {
      * @param i
      *            the item to be added to the constant pool's hash table.
      */
-    private void put(final Item i) {
-        if (index + typeCount > threshold) {
-            int ll = items.length;
-            int nl = ll * 2 + 1;
-            Item[] newItems = new Item[nl];
-            for (int l = ll - 1; l >= 0; --l) {
-                Item j = items[l];
-                while (j != null) {
-                    int index = j.hashCode % newItems.length;
-                    Item k = j.next;
-                    j.next = newItems[index];
-                    newItems[index] = j;
-                    j = k;
+    void put(final Item i) {
+        if (itemCount >= threshold) {
+            Item[] oldItems = items;
+            int nl = oldItems.length * 2;
+            items = new Item[nl];
+            hashes = new int[nl];
+            Arrays.fill(hashes, -1);
+            threshold = (int) (nl * 0.75);
+            for (int l = 0; l < oldItems.length; ++l) {
+                if (oldItems[l] != null) {
+                    insert(oldItems[l]);
                 }
             }
-            items = newItems;
-            threshold = (int) (nl * 0.75);
         }
-        int index = i.hashCode % items.length;
-        i.next = items[index];
-        items[index] = i;
+        insert(i);
+        ++itemCount;
+    }
+
+    /**
+     * Puts the given item in the constant pool's hash table, in place of an
+     * equal item if the hash table already contains one. This method is used
+     * to copy the constant pool of an existing class, which can contain
+     * duplicate items: lookups then return the last of these duplicates.
+     * 
+     * @param item
+     *            the item to be added to the constant pool's hash table.
+     */
+    void putOrReplace(final Item item) {
+        int hashCode = item.hashCode;
+        int[] hashes = this.hashes;
+        int mask = hashes.length - 1;
+        for (int i = hashCode & mask; hashes[i] != -1; i = (i + 1) & mask) {
+            Item other = items[i];
+            if (hashes[i] == hashCode && other.type == item.type) {
+                if (item.type == BSM ? isSameBootstrapMethod(item.intVal,
+                        other.intVal) : item.isEqualTo(other)) {
+                    items[i] = item;
+                    return;
+                }
+            }
+        }
+        put(item);
+    }
+
+    /**
+     * Returns whether the two given bootstrap methods of
+     * {@link #bootstrapMethods} are equal.
+     * 
+     * @param position1
+     *            the position of a bootstrap method in bootstrapMethods.
+     * @param position2
+     *            the position of another bootstrap method in bootstrapMethods.
+     * @return <tt>true</tt> if the two bootstrap methods have the same method
+     *         handle and the same arguments.
+     */
+    private boolean isSameBootstrapMethod(final int position1,
+            final int position2) {
+        byte[] data = bootstrapMethods.data;
+        // the number of arguments is the second short of each bootstrap method
+        int length = (2 + (((data[position1 + 2] & 0xFF) << 8)
+                | (data[position1 + 3] & 0xFF))) << 1;
+        for (int p = 0; p < length; p++) {
+            if (data[position1 + p] != data[position2 + p]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inserts the given item in the first free slot of its probe sequence in
+     * the constant pool's hash table. The hash table must have a free slot.
+     * 
+     * @param item
+     *            the item to be inserted in the constant pool's hash table.
+     */
+    private void insert(final Item item) {
+        int[] hashes = this.hashes;
+        int mask = hashes.length - 1;
+        int i = item.hashCode & mask;
+        while (hashes[i] != -1) {
+            i = (i + 1) & mask;
+        }
+        hashes[i] = item.hashCode;
+        items[i] = item;
     }
 
     /**
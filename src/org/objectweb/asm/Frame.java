@@ -833,7 +833,8 @@ class Frame {
     private void pop(final String desc) {
         char c = desc.charAt(0);
         if (c == '(') {
-            pop((Type.getArgumentsAndReturnSizes(desc) >> 2) - 1);
+            int size = TypeCache.getShared().getArgumentsAndReturnSizes(desc);
+            pop((size >> 2) - 1);
         } else if (c == 'J' || c == 'D') {
             pop(2);
         } else {
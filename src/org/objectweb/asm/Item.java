@@ -100,12 +100,6 @@ final class Item {
      */
     int hashCode;
 
-    /**
-     * Link to another constant pool item, used for collision lists in the
-     * constant pool's hash table.
-     */
-    Item next;
-
     /**
      * Constructs an uninitialized {@link Item}.
      */
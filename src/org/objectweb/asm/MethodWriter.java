@@ -482,7 +482,8 @@ class MethodWriter extends MethodVisitor {
         this.compute = compute;
         if (compute != NOTHING) {
             // updates maxLocals
-            int size = Type.getArgumentsAndReturnSizes(descriptor) >> 2;
+            int size = TypeCache.getShared().getArgumentsAndReturnSizes(
+                    descriptor) >> 2;
             if ((access & Opcodes.ACC_STATIC) != 0) {
                 --size;
             }
@@ -914,7 +915,8 @@ class MethodWriter extends MethodVisitor {
                 if (argSize == 0) {
                     // the above sizes have not been computed yet,
                     // so we compute them...
-                    argSize = Type.getArgumentsAndReturnSizes(desc);
+                    argSize = TypeCache.getShared()
+                            .getArgumentsAndReturnSizes(desc);
                     // ... and we save them in order
                     // not to recompute them in the future
                     i.intVal = argSize;
@@ -935,7 +937,8 @@ class MethodWriter extends MethodVisitor {
         // adds the instruction to the bytecode of the method
         if (opcode == Opcodes.INVOKEINTERFACE) {
             if (argSize == 0) {
-                argSize = Type.getArgumentsAndReturnSizes(desc);
+                argSize = TypeCache.getShared()
+                        .getArgumentsAndReturnSizes(desc);
                 i.intVal = argSize;
             }
             code.put12(Opcodes.INVOKEINTERFACE, i.index).put11(argSize >> 2, 0);
@@ -966,7 +969,8 @@ class MethodWriter extends MethodVisitor {
                 if (argSize == 0) {
                     // the above sizes have not been computed yet,
                     // so we compute them...
-                    argSize = Type.getArgumentsAndReturnSizes(desc);
+                    argSize = TypeCache.getShared()
+                            .getArgumentsAndReturnSizes(desc);
                     // ... and we save them in order
                     // not to recompute them in the future
                     i.intVal = argSize;
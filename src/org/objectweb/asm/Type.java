@@ -165,10 +165,12 @@ public class Type {
     private final int sort;
 
     /**
-     * A buffer containing the internal name of this Java type. This field is
-     * only used for reference types.
+     * A string containing the internal name of this Java type. This field is
+     * only used for reference types. It is the string from which this type was
+     * created (a type descriptor, a method descriptor or an internal name), so
+     * that no characters need to be copied when a type is created.
      */
-    private final char[] buf;
+    private final String buf;
 
     /**
      * The offset of the internal name of this Java type in {@link #buf buf} or,
@@ -193,13 +195,13 @@ public class Type {
      * @param sort
      *            the sort of the reference type to be constructed.
      * @param buf
-     *            a buffer containing the descriptor of the previous type.
+     *            a string containing the descriptor of the previous type.
      * @param off
-     *            the offset of this descriptor in the previous buffer.
+     *            the offset of this descriptor in the previous string.
      * @param len
      *            the length of this descriptor.
      */
-    private Type(final int sort, final char[] buf, final int off, final int len) {
+    private Type(final int sort, final String buf, final int off, final int len) {
         this.sort = sort;
         this.buf = buf;
         this.off = off;
@@ -214,7 +216,7 @@ public class Type {
      * @return the Java type corresponding to the given type descriptor.
      */
     public static Type getType(final String typeDescriptor) {
-        return getType(typeDescriptor.toCharArray(), 0);
+        return getType(typeDescriptor, 0);
     }
 
     /**
@@ -225,8 +227,8 @@ public class Type {
      * @return the Java type corresponding to the given internal name.
      */
     public static Type getObjectType(final String internalName) {
-        char[] buf = internalName.toCharArray();
-        return new Type(buf[0] == '[' ? ARRAY : OBJECT, buf, 0, buf.length);
+        return new Type(internalName.charAt(0) == '[' ? ARRAY : OBJECT,
+                internalName, 0, internalName.length());
     }
 
     /**
@@ -238,7 +240,7 @@ public class Type {
      * @return the Java type corresponding to the given method descriptor.
      */
     public static Type getMethodType(final String methodDescriptor) {
-        return getType(methodDescriptor.toCharArray(), 0);
+        return getType(methodDescriptor, 0);
     }
 
     /**
@@ -322,15 +324,15 @@ public class Type {
      *         method descriptor.
      */
     public static Type[] getArgumentTypes(final String methodDescriptor) {
-        char[] buf = methodDescriptor.toCharArray();
+        String buf = methodDescriptor;
         int off = 1;
         int size = 0;
         while (true) {
-            char car = buf[off++];
+            char car = buf.charAt(off++);
             if (car == ')') {
                 break;
             } else if (car == 'L') {
-                while (buf[off++] != ';') {
+                while (buf.charAt(off++) != ';') {
                 }
                 ++size;
             } else if (car != '[') {
@@ -340,7 +342,7 @@ public class Type {
         Type[] args = new Type[size];
         off = 1;
         size = 0;
-        while (buf[off] != ')') {
+        while (buf.charAt(off) != ')') {
             args[size] = getType(buf, off);
             off += args[size].len + (args[size].sort == OBJECT ? 2 : 0);
             size += 1;
@@ -376,14 +378,14 @@ public class Type {
      *         method descriptor.
      */
     public static Type getReturnType(final String methodDescriptor) {
-        char[] buf = methodDescriptor.toCharArray();
+        String buf = methodDescriptor;
         int off = 1;
         while (true) {
-            char car = buf[off++];
+            char car = buf.charAt(off++);
             if (car == ')') {
                 return getType(buf, off);
             } else if (car == 'L') {
-                while (buf[off++] != ';') {
+                while (buf.charAt(off++) != ';') {
                 }
             }
         }
@@ -447,14 +449,14 @@ public class Type {
      * descriptor itself.
      * 
      * @param buf
-     *            a buffer containing a type descriptor.
+     *            a string containing a type descriptor.
      * @param off
-     *            the offset of this descriptor in the previous buffer.
+     *            the offset of this descriptor in the previous string.
      * @return the Java type corresponding to the given type descriptor.
      */
-    private static Type getType(final char[] buf, final int off) {
+    private static Type getType(final String buf, final int off) {
         int len;
-        switch (buf[off]) {
+        switch (buf.charAt(off)) {
         case 'V':
             return VOID_TYPE;
         case 'Z':
@@ -475,25 +477,25 @@ public class Type {
             return DOUBLE_TYPE;
         case '[':
             len = 1;
-            while (buf[off + len] == '[') {
+            while (buf.charAt(off + len) == '[') {
                 ++len;
             }
-            if (buf[off + len] == 'L') {
+            if (buf.charAt(off + len) == 'L') {
                 ++len;
-                while (buf[off + len] != ';') {
+                while (buf.charAt(off + len) != ';') {
                     ++len;
                 }
             }
             return new Type(ARRAY, buf, off, len + 1);
         case 'L':
             len = 1;
-            while (buf[off + len] != ';') {
+            while (buf.charAt(off + len) != ';') {
                 ++len;
             }
             return new Type(OBJECT, buf, off + 1, len - 1);
             // case '(':
         default:
-            return new Type(METHOD, buf, off, buf.length - off);
+            return new Type(METHOD, buf, off, buf.length() - off);
         }
     }
 
@@ -522,7 +524,7 @@ public class Type {
      */
     public int getDimensions() {
         int i = 1;
-        while (buf[off + i] == '[') {
+        while (buf.charAt(off + i) == '[') {
             ++i;
         }
         return i;
@@ -571,7 +573,7 @@ public class Type {
             }
             return sb.toString();
         case OBJECT:
-            return new String(buf, off, len).replace('/', '.');
+            return buf.substring(off, off + len).replace('/', '.');
         default:
             return null;
         }
@@ -586,7 +588,7 @@ public class Type {
      * @return the internal name of the class corresponding to this object type.
      */
     public String getInternalName() {
-        return new String(buf, off, len);
+        return buf.substring(off, off + len);
     }
 
     /**
@@ -634,6 +636,14 @@ public class Type {
      * @return the descriptor corresponding to this Java type.
      */
     public String getDescriptor() {
+        if (sort == ARRAY || sort == METHOD) {
+            // returns the original string if this type spans all of it
+            return buf.substring(off, off + len);
+        } else if (sort == OBJECT && off > 0 && off + len < buf.length()) {
+            // the 'L' and ';' around the internal name are in buf if this type
+            // was created from a descriptor
+            return buf.substring(off - 1, off + len + 1);
+        }
         StringBuilder buf = new StringBuilder();
         getDescriptor(buf);
         return buf.toString();
@@ -676,10 +686,10 @@ public class Type {
             buf.append((char) ((off & 0xFF000000) >>> 24));
         } else if (sort == OBJECT) {
             buf.append('L');
-            buf.append(this.buf, off, len);
+            buf.append(this.buf, off, off + len);
             buf.append(';');
         } else { // sort == ARRAY || sort == METHOD
-            buf.append(this.buf, off, len);
+            buf.append(this.buf, off, off + len);
         }
     }
 
@@ -868,11 +878,7 @@ public class Type {
             if (len != t.len) {
                 return false;
             }
-            for (int i = off, j = t.off, end = i + len; i < end; i++, j++) {
-                if (buf[i] != t.buf[j]) {
-                    return false;
-                }
-            }
+            return buf.regionMatches(off, t.buf, t.off, len);
         }
         return true;
     }
@@ -887,7 +893,7 @@ public class Type {
         int hc = 13 * sort;
         if (sort >= ARRAY) {
             for (int i = off, end = i + len; i < end; i++) {
-                hc = 17 * (hc + buf[i]);
+                hc = 17 * (hc + buf.charAt(i));
             }
         }
         return hc;
@@ -0,0 +1,326 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A cache of parsed method descriptors. This cache interns the argument and
+ * return types of method descriptors, as well as the size of their arguments
+ * and return value, so that parsing the same descriptor several times returns
+ * the same {@link Type} objects, without allocating new arrays and new
+ * {@link Type} instances. A cache can be shared between several threads.
+ * 
+ * <p>
+ * The size of a cache is bounded by its capacity: a newly parsed descriptor
+ * replaces the one which was previously stored in the same slot, if any. The
+ * argument and return types of a descriptor are only parsed when they are
+ * first requested, so that looking up the argument and return sizes of a
+ * cached descriptor does not allocate anything. The number of hits and
+ * misses of a cache, which is only counted if {@link #setCountersEnabled
+ * enabled}, can be used to choose its capacity.
+ * The {@link #getShared shared} cache is used by the ASM classes which parse
+ * the descriptor of each method instruction, such as {@link MethodWriter}.
+ * 
+ * <p>
+ * The arrays returned by this cache are shared between all its callers. They
+ * must not be modified.
+ */
+public class TypeCache {
+
+    /**
+     * The default capacity of a {@link TypeCache}.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * The cache used by the ASM classes which parse method descriptors.
+     */
+    private static final TypeCache SHARED = new TypeCache();
+
+    /**
+     * The parsed method descriptors, indexed by the hash code of their
+     * descriptor. The length of this array is a power of two.
+     */
+    private final AtomicReferenceArray<Entry> entries;
+
+    /**
+     * The number of lookups that found their descriptor in this cache.
+     */
+    private final AtomicLong hits;
+
+    /**
+     * The number of lookups that had to parse their descriptor.
+     */
+    private final AtomicLong misses;
+
+    /**
+     * Whether the lookups must update {@link #hits} and {@link #misses}.
+     */
+    private boolean countersEnabled;
+
+    /**
+     * Constructs a new, empty {@link TypeCache} with the default capacity.
+     */
+    public TypeCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty {@link TypeCache}.
+     * 
+     * @param capacity
+     *            the maximum number of method descriptors in this cache. This
+     *            number is rounded up to a power of two.
+     */
+    public TypeCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        int n = 1;
+        while (n < capacity) {
+            n <<= 1;
+        }
+        entries = new AtomicReferenceArray<Entry>(n);
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+    }
+
+    /**
+     * Returns the cache used by the ASM classes which parse method
+     * descriptors.
+     * 
+     * @return the cache used by the ASM classes which parse method
+     *         descriptors.
+     */
+    public static TypeCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the Java types corresponding to the argument types of the given
+     * method descriptor.
+     * 
+     * @param methodDescriptor
+     *            a method descriptor.
+     * @return the Java types corresponding to the argument types of the given
+     *         method descriptor. This array must not be modified.
+     */
+    public Type[] getArgumentTypes(final String methodDescriptor) {
+        Entry e = get(methodDescriptor);
+        Type[] argumentTypes = e.argumentTypes;
+        if (argumentTypes == null) {
+            argumentTypes = Type.getArgumentTypes(methodDescriptor);
+            e.argumentTypes = argumentTypes;
+        }
+        return argumentTypes;
+    }
+
+    /**
+     * Returns the Java type corresponding to the return type of the given
+     * method descriptor.
+     * 
+     * @param methodDescriptor
+     *            a method descriptor.
+     * @return the Java type corresponding to the return type of the given
+     *         method descriptor.
+     */
+    public Type getReturnType(final String methodDescriptor) {
+        Entry e = get(methodDescriptor);
+        Type returnType = e.returnType;
+        if (returnType == null) {
+            returnType = Type.getReturnType(methodDescriptor);
+            e.returnType = returnType;
+        }
+        return returnType;
+    }
+
+    /**
+     * Computes the size of the arguments and of the return value of a method.
+     * 
+     * @param methodDescriptor
+     *            a method descriptor.
+     * @return the same value as
+     *         {@link Type#getArgumentsAndReturnSizes(String)}.
+     */
+    public int getArgumentsAndReturnSizes(final String methodDescriptor) {
+        return get(methodDescriptor).sizes;
+    }
+
+    /**
+     * Returns the maximum number of method descriptors in this cache.
+     * 
+     * @return the maximum number of method descriptors in this cache.
+     */
+    public int getCapacity() {
+        return entries.length();
+    }
+
+    /**
+     * Returns the number of method descriptors in this cache.
+     * 
+     * @return the number of method descriptors in this cache.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < entries.length(); ++i) {
+            if (entries.get(i) != null) {
+                ++size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Enables or disables the counting of cache hits and misses. Counting is
+     * disabled by default, because it makes all the threads which use the
+     * same cache update the same counters. This method should be called
+     * before the cache is used by several threads.
+     * 
+     * @param enabled
+     *            whether the cache hits and misses must be counted.
+     */
+    public void setCountersEnabled(final boolean enabled) {
+        countersEnabled = enabled;
+    }
+
+    /**
+     * Returns the number of lookups that found their descriptor in this cache,
+     * since this cache was created or since the last call to
+     * {@link #resetCounters resetCounters}. Only the lookups done while the
+     * counters are {@link #setCountersEnabled enabled} are counted.
+     * 
+     * @return the number of cache hits.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that did not find their descriptor in this
+     * cache, since this cache was created or since the last call to
+     * {@link #resetCounters resetCounters}. Only the lookups done while the
+     * counters are {@link #setCountersEnabled enabled} are counted.
+     * 
+     * @return the number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Resets the hit and miss counters of this cache to 0.
+     */
+    public void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * Removes all the method descriptors from this cache.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length(); ++i) {
+            entries.set(i, null);
+        }
+    }
+
+    /**
+     * Returns the parsed form of the given method descriptor, parsing it if it
+     * is not already in this cache.
+     * 
+     * @param methodDescriptor
+     *            a method descriptor.
+     * @return the parsed form of the given method descriptor.
+     */
+    private Entry get(final String methodDescriptor) {
+        int h = methodDescriptor.hashCode();
+        h ^= h >>> 16;
+        int index = h & (entries.length() - 1);
+        Entry e = entries.get(index);
+        if (e != null && e.hashCode == h
+                && e.methodDescriptor.equals(methodDescriptor)) {
+            if (countersEnabled) {
+                hits.incrementAndGet();
+            }
+            return e;
+        }
+        if (countersEnabled) {
+            misses.incrementAndGet();
+        }
+        e = new Entry(methodDescriptor, h);
+        entries.set(index, e);
+        return e;
+    }
+
+    /**
+     * A parsed method descriptor. The argument and return types are computed
+     * lazily. They are stored in volatile fields so that they are safely
+     * published to other threads, which at worst compute them again.
+     */
+    private static final class Entry {
+
+        /**
+         * The method descriptor.
+         */
+        final String methodDescriptor;
+
+        /**
+         * The (spread) hash code of {@link #methodDescriptor}.
+         */
+        final int hashCode;
+
+        /**
+         * The argument types of the method descriptor, or <tt>null</tt> if
+         * they have not been computed yet.
+         */
+        volatile Type[] argumentTypes;
+
+        /**
+         * The return type of the method descriptor, or <tt>null</tt> if it has
+         * not been computed yet.
+         */
+        volatile Type returnType;
+
+        /**
+         * The size of the arguments and of the return value of the method
+         * descriptor, in the format of
+         * {@link Type#getArgumentsAndReturnSizes(String)}.
+         */
+        final int sizes;
+
+        Entry(final String methodDescriptor, final int hashCode) {
+            this.methodDescriptor = methodDescriptor;
+            this.hashCode = hashCode;
+            sizes = Type.getArgumentsAndReturnSizes(methodDescriptor);
+        }
+    }
+}
@@ -39,6 +39,7 @@ import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
+import org.objectweb.asm.TypeCache;
 
 /**
  * A {@link MethodVisitor} that keeps track of stack map frame changes between
@@ -181,7 +182,7 @@ public class AnalyzerAdapter extends MethodVisitor {
                 locals.add(owner);
             }
         }
-        Type[] types = Type.getArgumentTypes(desc);
+        Type[] types = TypeCache.getShared().getArgumentTypes(desc);
         for (int i = 0; i < types.length; ++i) {
             Type type = types[i];
             switch (type.getSort()) {
@@ -563,12 +564,8 @@ public class AnalyzerAdapter extends MethodVisitor {
     private void pop(final String desc) {
         char c = desc.charAt(0);
         if (c == '(') {
-            int n = 0;
-            Type[] types = Type.getArgumentTypes(desc);
-            for (int i = 0; i < types.length; ++i) {
-                n += types[i].getSize();
-            }
-            pop(n);
+            int size = TypeCache.getShared().getArgumentsAndReturnSizes(desc);
+            pop((size >> 2) - 1);
         } else if (c == 'J' || c == 'D') {
             pop(2);
         } else {
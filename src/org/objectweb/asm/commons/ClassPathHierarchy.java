@@ -0,0 +1,337 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.objectweb.asm.commons;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.objectweb.asm.ClassHierarchy;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * A {@link ClassHierarchy} that reads the class hierarchy information from the
+ * class files found in a class path made of jars and directories, without
+ * loading any class into the JVM. Only the header of each class file (access
+ * flags, super class and interfaces) is used. This information is parsed
+ * lazily, when a class is first requested, and is kept in a bounded cache
+ * whose least recently used entries are evicted first. Classes which are not
+ * found in the class path are searched as resources of a class loader (by
+ * default the system class loader), which gives access to the JDK classes.
+ *
+ * <p>
+ * Instances of this class can be shared between threads, for instance between
+ * several {@link org.objectweb.asm.ClassWriter ClassWriter} used in parallel.
+ * Subclasses can override {@link #getClassBytes getClassBytes} to provide the
+ * content of classes which are not in the class path, such as classes being
+ * generated.
+ */
+public class ClassPathHierarchy extends ClassHierarchy implements Closeable {
+
+    /**
+     * The default maximum number of classes kept in the cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 16384;
+
+    /**
+     * The jars and directories of the class path.
+     */
+    private final File[] classPath;
+
+    /**
+     * The opened jars of the class path, lazily created. The element at index
+     * i corresponds to classPath[i], and is <tt>null</tt> for directories.
+     */
+    private ZipFile[] zips;
+
+    /**
+     * Whether {@link #close close} has been called. Guarded by this object.
+     */
+    private boolean closed;
+
+    /**
+     * The class loader used to find the classes which are not in the class
+     * path, or <tt>null</tt>.
+     */
+    private final ClassLoader loader;
+
+    /**
+     * The header information of the recently used classes, indexed by
+     * internal name. Accesses to this map must be synchronized on it.
+     */
+    private final Map<String, TypeInfo> cache;
+
+    /**
+     * Constructs a new {@link ClassPathHierarchy}.
+     *
+     * @param classPath
+     *            a list of jars and directories, separated with
+     *            {@link File#pathSeparator}.
+     */
+    public ClassPathHierarchy(final String classPath) {
+        this(split(classPath), ClassLoader.getSystemClassLoader(),
+                DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructs a new {@link ClassPathHierarchy}.
+     *
+     * @param classPath
+     *            the jars and directories where the classes must be searched.
+     * @param loader
+     *            the class loader whose resources must be used for the
+     *            classes which are not in the class path, or <tt>null</tt>.
+     *            This class loader is only used to read class files, and not
+     *            to load classes.
+     * @param cacheSize
+     *            the maximum number of classes kept in the cache.
+     */
+    public ClassPathHierarchy(final File[] classPath, final ClassLoader loader,
+            final int cacheSize) {
+        this.classPath = classPath.clone();
+        this.loader = loader;
+        this.cache = new LinkedHashMap<String, TypeInfo>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, TypeInfo> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @Override
+    public String getSuperName(final String type) {
+        return getTypeInfo(type).superName;
+    }
+
+    @Override
+    public String[] getInterfaces(final String type) {
+        return getTypeInfo(type).interfaces;
+    }
+
+    @Override
+    public boolean isInterface(final String type) {
+        return (getTypeInfo(type).access & Opcodes.ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * Closes the jars of the class path opened by this object. After this
+     * method has been called, only the classes already in the cache can be
+     * used: the other ones cause an {@link IllegalStateException}.
+     *
+     * @throws IOException
+     *             if a jar cannot be closed.
+     */
+    public void close() throws IOException {
+        ZipFile[] z;
+        synchronized (this) {
+            z = zips;
+            zips = null;
+            closed = true;
+        }
+        if (z != null) {
+            for (int i = 0; i < z.length; ++i) {
+                if (z[i] != null) {
+                    z[i].close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the content of the given class file.
+     *
+     * @param type
+     *            the internal name of a class.
+     * @return the content of the corresponding class file, or <tt>null</tt> if
+     *         it cannot be found.
+     * @throws IOException
+     *             if the class file cannot be read.
+     * @throws IllegalStateException
+     *             if this object has been closed.
+     */
+    protected byte[] getClassBytes(final String type) throws IOException {
+        String name = type + ".class";
+        ZipFile[] z = getZips();
+        for (int i = 0; i < classPath.length; ++i) {
+            InputStream is = null;
+            if (z[i] == null) {
+                File f = new File(classPath[i], name);
+                if (f.isFile()) {
+                    is = new FileInputStream(f);
+                }
+            } else {
+                ZipEntry e = z[i].getEntry(name);
+                if (e != null) {
+                    is = z[i].getInputStream(e);
+                }
+            }
+            if (is != null) {
+                return readClass(is);
+            }
+        }
+        if (loader != null) {
+            InputStream is = loader.getResourceAsStream(name);
+            if (is != null) {
+                return readClass(is);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the header information of the given class, reading it from the
+     * class path if it is not in the cache.
+     *
+     * @param type
+     *            the internal name of a class.
+     * @return the header information of the given class.
+     */
+    private TypeInfo getTypeInfo(final String type) {
+        TypeInfo info;
+        synchronized (cache) {
+            info = cache.get(type);
+        }
+        if (info == null) {
+            // the class file is read outside the lock, so that concurrent
+            // lookups of other classes are not blocked. At worst the same
+            // class is read several times concurrently, with equal results.
+            byte[] b;
+            try {
+                b = getClassBytes(type);
+            } catch (IOException e) {
+                throw new RuntimeException(e.toString());
+            }
+            if (b == null) {
+                throw new RuntimeException("Class not found: " + type);
+            }
+            ClassReader cr = new ClassReader(b);
+            info = new TypeInfo(cr.getAccess(), cr.getSuperName(),
+                    cr.getInterfaces());
+            synchronized (cache) {
+                cache.put(type, info);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Returns the opened jars of the class path, opening them if necessary.
+     *
+     * @return the opened jars of the class path.
+     * @throws IOException
+     *             if a jar cannot be opened.
+     * @throws IllegalStateException
+     *             if this object has been closed.
+     */
+    private synchronized ZipFile[] getZips() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("ClassPathHierarchy closed");
+        }
+        if (zips == null) {
+            ZipFile[] z = new ZipFile[classPath.length];
+            for (int i = 0; i < classPath.length; ++i) {
+                if (!classPath[i].isDirectory() && classPath[i].exists()) {
+                    z[i] = new ZipFile(classPath[i]);
+                }
+            }
+            zips = z;
+        }
+        return zips;
+    }
+
+    private static byte[] readClass(final InputStream is) throws IOException {
+        try {
+            byte[] b = new byte[is.available() > 0 ? is.available() : 1024];
+            int len = 0;
+            while (true) {
+                int n = is.read(b, len, b.length - len);
+                if (n == -1) {
+                    break;
+                }
+                len += n;
+                if (len == b.length) {
+                    byte[] c = new byte[b.length * 2];
+                    System.arraycopy(b, 0, c, 0, len);
+                    b = c;
+                }
+            }
+            if (len < b.length) {
+                byte[] c = new byte[len];
+                System.arraycopy(b, 0, c, 0, len);
+                b = c;
+            }
+            return b;
+        } finally {
+            is.close();
+        }
+    }
+
+    private static File[] split(final String classPath) {
+        List<File> files = new ArrayList<File>();
+        StringTokenizer st = new StringTokenizer(classPath, File.pathSeparator);
+        while (st.hasMoreTokens()) {
+            files.add(new File(st.nextToken()));
+        }
+        return files.toArray(new File[files.size()]);
+    }
+
+    /**
+     * The header information of a class.
+     */
+    private static final class TypeInfo {
+
+        final int access;
+
+        final String superName;
+
+        final String[] interfaces;
+
+        TypeInfo(final int access, final String superName,
+                final String[] interfaces) {
+            this.access = access;
+            this.superName = superName;
+            this.interfaces = interfaces;
+        }
+    }
+}
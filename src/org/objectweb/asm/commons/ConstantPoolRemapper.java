@@ -0,0 +1,907 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.objectweb.asm.commons;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * A class file remapper which works at the constant pool level. The result of
+ * {@link #remap remap} is equivalent to the class produced by a
+ * {@link ClassRemapper} between a {@link ClassReader} and a
+ * {@link ClassWriter}, but it is computed without decoding and re-encoding the
+ * methods' code. Indeed the class names, member names and descriptors used by
+ * the bytecode instructions are stored in constant pool entries, which can be
+ * remapped in place. More precisely:
+ * 
+ * <ul>
+ * <li>the class bytes are copied as is, including the code of the methods and
+ * the attributes which are not known by this class;</li>
+ * <li>the Class, Fieldref, Methodref, InterfaceMethodref, MethodType and
+ * InvokeDynamic constant pool entries, and the name, descriptor and signature
+ * indexes of the fields, methods, local variables, annotations and enclosing
+ * method of the class, are changed in place to reference new constant pool
+ * entries, when their value is changed by the {@link Remapper};</li>
+ * <li>these new CONSTANT_Utf8 and CONSTANT_NameAndType entries are appended at
+ * the end of the constant pool. The original entries are never changed, since
+ * they can be shared by several references with different remapped values
+ * (e.g. a CONSTANT_Utf8 used both as a class name and as a string constant).
+ * The entries which are no longer used are not removed.</li>
+ * </ul>
+ * 
+ * Classes which cannot be remapped this way (module-info classes, or classes
+ * with unknown constant pool entries) are remapped with a {@link ClassRemapper}
+ * instead. A {@link ConstantPoolRemapper} can be used to remap several
+ * classes, but not concurrently.
+ */
+public class ConstantPoolRemapper {
+
+    /**
+     * The type of CONSTANT_Utf8 constant pool items.
+     */
+    private static final int UTF8 = 1;
+
+    /**
+     * The type of CONSTANT_Integer constant pool items.
+     */
+    private static final int INT = 3;
+
+    /**
+     * The type of CONSTANT_Float constant pool items.
+     */
+    private static final int FLOAT = 4;
+
+    /**
+     * The type of CONSTANT_Long constant pool items.
+     */
+    private static final int LONG = 5;
+
+    /**
+     * The type of CONSTANT_Double constant pool items.
+     */
+    private static final int DOUBLE = 6;
+
+    /**
+     * The type of CONSTANT_Class constant pool items.
+     */
+    private static final int CLASS = 7;
+
+    /**
+     * The type of CONSTANT_String constant pool items.
+     */
+    private static final int STR = 8;
+
+    /**
+     * The type of CONSTANT_Fieldref constant pool items.
+     */
+    private static final int FIELD = 9;
+
+    /**
+     * The type of CONSTANT_Methodref constant pool items.
+     */
+    private static final int METH = 10;
+
+    /**
+     * The type of CONSTANT_InterfaceMethodref constant pool items.
+     */
+    private static final int IMETH = 11;
+
+    /**
+     * The type of CONSTANT_NameAndType constant pool items.
+     */
+    private static final int NAME_TYPE = 12;
+
+    /**
+     * The type of CONSTANT_MethodHandle constant pool items.
+     */
+    private static final int HANDLE = 15;
+
+    /**
+     * The type of CONSTANT_MethodType constant pool items.
+     */
+    private static final int MTYPE = 16;
+
+    /**
+     * The type of CONSTANT_InvokeDynamic constant pool items.
+     */
+    private static final int INDY = 18;
+
+    /**
+     * The remapper used to remap the classes.
+     */
+    private final Remapper remapper;
+
+    /**
+     * The class being remapped.
+     */
+    private ClassReader cr;
+
+    /**
+     * A buffer used to read the strings of {@link #cr}.
+     */
+    private char[] buf;
+
+    /**
+     * The number of entries in the remapped constant pool, plus one.
+     */
+    private int count;
+
+    /**
+     * The new constant pool entries, appended to the original ones.
+     */
+    private ByteArrayOutputStream pool;
+
+    /**
+     * A stream writing to {@link #pool}.
+     */
+    private DataOutputStream out;
+
+    /**
+     * The new index of each CONSTANT_Utf8 entry of {@link #cr}, when used as a
+     * field descriptor, or 0 if it has not been computed yet.
+     */
+    private int[] descs;
+
+    /**
+     * The new index of each CONSTANT_Utf8 entry of {@link #cr}, when used as a
+     * method descriptor, or 0 if it has not been computed yet.
+     */
+    private int[] methodDescs;
+
+    /**
+     * The index of the CONSTANT_Utf8 entries of the remapped constant pool,
+     * indexed by their value. Lazily computed by {@link #newUTF8 newUTF8}.
+     */
+    private Map<String, Integer> utf8s;
+
+    /**
+     * The index of the CONSTANT_NameAndType entries of the remapped constant
+     * pool, indexed by the index of their name and descriptor (packed in an
+     * int). This is an open addressing hash table, whose even elements are
+     * the keys (0 for empty slots) and whose odd elements are the
+     * corresponding values. Lazily computed by {@link #newNameType
+     * newNameType}.
+     */
+    private int[] nameTypes;
+
+    /**
+     * The number of entries in {@link #nameTypes}.
+     */
+    private int nameTypeCount;
+
+    /**
+     * The changes to be made to the class bytes. Each change is made of two
+     * ints: the offset of an unsigned short in the bytes of {@link #cr}, and
+     * its new value.
+     */
+    private int[] patches;
+
+    /**
+     * The number of ints in {@link #patches}.
+     */
+    private int patchCount;
+
+    /**
+     * Constructs a new {@link ConstantPoolRemapper}.
+     * 
+     * @param remapper
+     *            the remapper to be used to remap the classes.
+     */
+    public ConstantPoolRemapper(final Remapper remapper) {
+        this.remapper = remapper;
+    }
+
+    /**
+     * Remaps the given class.
+     * 
+     * @param classReader
+     *            the class to be remapped.
+     * @return the bytes of the remapped class.
+     */
+    public byte[] remap(final ClassReader classReader) {
+        if (!isSupported(classReader)) {
+            return remapWithVisitors(classReader);
+        }
+        cr = classReader;
+        buf = new char[classReader.getMaxStringLength()];
+        count = classReader.getItemCount();
+        pool = new ByteArrayOutputStream();
+        out = new DataOutputStream(pool);
+        descs = new int[count];
+        methodDescs = new int[count];
+        patches = new int[32];
+        patchCount = 0;
+        try {
+            byte[] b = remapClass();
+            if (count > 0xFFFF) {
+                return remapWithVisitors(classReader);
+            }
+            return b;
+        } finally {
+            cr = null;
+            buf = null;
+            pool = null;
+            out = null;
+            descs = null;
+            methodDescs = null;
+            utf8s = null;
+            nameTypes = null;
+            patches = null;
+        }
+    }
+
+    /**
+     * Returns whether the given class can be remapped at the constant pool
+     * level.
+     * 
+     * @param cr
+     *            a class.
+     * @return <tt>true</tt> if the given class is not a module-info class and
+     *         contains only known constant pool entries.
+     */
+    private static boolean isSupported(final ClassReader cr) {
+        if ((cr.getAccess() & Opcodes.ACC_MODULE) != 0) {
+            return false;
+        }
+        for (int i = 1; i < cr.getItemCount(); ++i) {
+            switch (cr.readByte(cr.getItem(i) - 1)) {
+            case LONG:
+            case DOUBLE:
+                ++i;
+                break;
+            case UTF8:
+            case INT:
+            case FLOAT:
+            case CLASS:
+            case STR:
+            case FIELD:
+            case METH:
+            case IMETH:
+            case NAME_TYPE:
+            case HANDLE:
+            case MTYPE:
+            case INDY:
+                break;
+            default:
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remaps the given class with a {@link ClassRemapper}.
+     * 
+     * @param cr
+     *            the class to be remapped.
+     * @return the bytes of the remapped class.
+     */
+    private byte[] remapWithVisitors(final ClassReader cr) {
+        ClassWriter cw = new ClassWriter(0);
+        cr.accept(new ClassRemapper(cw, remapper), 0);
+        return cw.toByteArray();
+    }
+
+    /**
+     * Remaps the class {@link #cr}.
+     * 
+     * @return the bytes of the remapped class.
+     */
+    private byte[] remapClass() {
+        ClassReader cr = this.cr;
+
+        // remaps the constant pool entries in place
+        int n = cr.getItemCount();
+        for (int i = 1; i < n; ++i) {
+            int u = cr.getItem(i);
+            switch (cr.readByte(u - 1)) {
+            case CLASS: {
+                String name = cr.readUTF8(u, buf);
+                String newName = remapper.mapType(name);
+                if (!newName.equals(name)) {
+                    patch(u, newUTF8(newName));
+                }
+                break;
+            }
+            case FIELD:
+            case METH:
+            case IMETH: {
+                String owner = cr.readClass(u, buf);
+                int nameType = cr.getItem(cr.readUnsignedShort(u + 2));
+                String name = cr.readUTF8(nameType, buf);
+                String desc = cr.readUTF8(nameType + 2, buf);
+                if (cr.readByte(u - 1) == FIELD) {
+                    remapNameType(u + 2, nameType,
+                            remapper.mapFieldName(owner, name, desc),
+                            mapDesc(nameType + 2));
+                } else {
+                    remapNameType(u + 2, nameType,
+                            remapper.mapMethodName(owner, name, desc),
+                            mapMethodDesc(nameType + 2));
+                }
+                break;
+            }
+            case INDY: {
+                int nameType = cr.getItem(cr.readUnsignedShort(u + 2));
+                String name = cr.readUTF8(nameType, buf);
+                String desc = cr.readUTF8(nameType + 2, buf);
+                remapNameType(u + 2, nameType,
+                        remapper.mapInvokeDynamicMethodName(name, desc),
+                        mapMethodDesc(nameType + 2));
+                break;
+            }
+            case MTYPE:
+                remap(u, mapMethodDesc(u));
+                break;
+            case LONG:
+            case DOUBLE:
+                ++i;
+                break;
+            }
+        }
+
+        // remaps the fields, the methods and the class attributes
+        String className = cr.getClassName();
+        int header = cr.header;
+        int u = header + 8 + 2 * cr.readUnsignedShort(header + 6);
+        for (int i = cr.readUnsignedShort(u); i > 0; --i) {
+            u = remapMember(u + 2, className, false) - 2;
+        }
+        u += 2;
+        for (int i = cr.readUnsignedShort(u); i > 0; --i) {
+            u = remapMember(u + 2, className, true) - 2;
+        }
+        int end = remapAttributes(u + 2, false);
+
+        // builds the remapped class
+        byte[] b = cr.b;
+        byte[] entries = pool.toByteArray();
+        int start = cr.getItem(1) - 11;
+        int extra = entries.length;
+        byte[] result = new byte[end - start + extra];
+        System.arraycopy(b, start, result, 0, header - start);
+        System.arraycopy(entries, 0, result, header - start, extra);
+        System.arraycopy(b, header, result, header - start + extra, end
+                - header);
+        result[8] = (byte) (count >>> 8);
+        result[9] = (byte) count;
+        for (int i = 0; i < patchCount; i += 2) {
+            int offset = patches[i] - start;
+            if (patches[i] >= header) {
+                offset += extra;
+            }
+            result[offset] = (byte) (patches[i + 1] >>> 8);
+            result[offset + 1] = (byte) patches[i + 1];
+        }
+        return result;
+    }
+
+    /**
+     * Remaps a field or a method.
+     * 
+     * @param u
+     *            the start offset of the field_info or method_info structure.
+     * @param owner
+     *            the internal name of the class.
+     * @param method
+     *            <tt>true</tt> for a method, <tt>false</tt> for a field.
+     * @return the offset of the first byte following the field or method.
+     */
+    private int remapMember(final int u, final String owner,
+            final boolean method) {
+        String name = cr.readUTF8(u + 2, buf);
+        String desc = cr.readUTF8(u + 4, buf);
+        String newName;
+        if (method) {
+            newName = remapper.mapMethodName(owner, name, desc);
+            remap(u + 4, mapMethodDesc(u + 4));
+        } else {
+            newName = remapper.mapFieldName(owner, name, desc);
+            remap(u + 4, mapDesc(u + 4));
+        }
+        if (!newName.equals(name)) {
+            patch(u + 2, newUTF8(newName));
+        }
+        return remapAttributes(u + 6, !method);
+    }
+
+    /**
+     * Remaps some attributes.
+     * 
+     * @param u
+     *            the start offset of an attributes_count field, followed by
+     *            the corresponding attributes.
+     * @param typeSignature
+     *            <tt>true</tt> if the Signature attribute, if any, contains a
+     *            field type signature, or <tt>false</tt> if it contains a class
+     *            or method signature.
+     * @return the offset of the first byte following the attributes.
+     */
+    private int remapAttributes(int u, final boolean typeSignature) {
+        ClassReader cr = this.cr;
+        int n = cr.readUnsignedShort(u);
+        u += 2;
+        for (; n > 0; --n) {
+            String attrName = cr.readUTF8(u, buf);
+            int v = u + 6;
+            if ("Code".equals(attrName)) {
+                v += 8 + cr.readInt(v + 4);
+                v += 2 + 8 * cr.readUnsignedShort(v);
+                remapAttributes(v, true);
+            } else if ("Signature".equals(attrName)) {
+                remapSignature(v, typeSignature);
+            } else if ("LocalVariableTable".equals(attrName)) {
+                for (int i = cr.readUnsignedShort(v); i > 0; --i) {
+                    remap(v + 8, mapDesc(v + 8));
+                    v += 10;
+                }
+            } else if ("LocalVariableTypeTable".equals(attrName)) {
+                for (int i = cr.readUnsignedShort(v); i > 0; --i) {
+                    remapSignature(v + 8, true);
+                    v += 10;
+                }
+            } else if ("RuntimeVisibleAnnotations".equals(attrName)
+                    || "RuntimeInvisibleAnnotations".equals(attrName)) {
+                remapAnnotations(v);
+            } else if ("RuntimeVisibleTypeAnnotations".equals(attrName)
+                    || "RuntimeInvisibleTypeAnnotations".equals(attrName)) {
+                remapTypeAnnotations(v);
+            } else if ("RuntimeVisibleParameterAnnotations".equals(attrName)
+                    || "RuntimeInvisibleParameterAnnotations"
+                            .equals(attrName)) {
+                v += 1;
+                for (int i = cr.readByte(v - 1); i > 0; --i) {
+                    v = remapAnnotations(v);
+                }
+            } else if ("AnnotationDefault".equals(attrName)) {
+                remapElementValue(v);
+            } else if ("EnclosingMethod".equals(attrName)) {
+                int nameType = cr.readUnsignedShort(v + 2);
+                if (nameType != 0) {
+                    String owner = cr.readClass(v, buf);
+                    nameType = cr.getItem(nameType);
+                    String name = cr.readUTF8(nameType, buf);
+                    String desc = cr.readUTF8(nameType + 2, buf);
+                    remapNameType(v + 2, nameType,
+                            remapper.mapMethodName(owner, name, desc),
+                            mapMethodDesc(nameType + 2));
+                }
+            }
+            u += 6 + cr.readInt(u + 2);
+        }
+        return u;
+    }
+
+    /**
+     * Remaps some annotations.
+     * 
+     * @param u
+     *            the start offset of a num_annotations field, followed by the
+     *            corresponding annotations.
+     * @return the offset of the first byte following the annotations.
+     */
+    private int remapAnnotations(int u) {
+        int n = cr.readUnsignedShort(u);
+        u += 2;
+        for (; n > 0; --n) {
+            u = remapAnnotation(u);
+        }
+        return u;
+    }
+
+    /**
+     * Remaps some type annotations.
+     * 
+     * @param u
+     *            the start offset of a num_annotations field, followed by the
+     *            corresponding type annotations.
+     * @return the offset of the first byte following the annotations.
+     */
+    private int remapTypeAnnotations(int u) {
+        ClassReader cr = this.cr;
+        int n = cr.readUnsignedShort(u);
+        u += 2;
+        for (; n > 0; --n) {
+            // skips the target_info structure
+            switch (cr.readByte(u)) {
+            case 0x00: // CLASS_TYPE_PARAMETER
+            case 0x01: // METHOD_TYPE_PARAMETER
+            case 0x16: // METHOD_FORMAL_PARAMETER
+                u += 2;
+                break;
+            case 0x13: // FIELD
+            case 0x14: // METHOD_RETURN
+            case 0x15: // METHOD_RECEIVER
+                u += 1;
+                break;
+            case 0x40: // LOCAL_VARIABLE
+            case 0x41: // RESOURCE_VARIABLE
+                u += 3 + 6 * cr.readUnsignedShort(u + 1);
+                break;
+            case 0x11: // CLASS_TYPE_PARAMETER_BOUND
+            case 0x12: // METHOD_TYPE_PARAMETER_BOUND
+                u += 3;
+                break;
+            case 0x47: // CAST
+            case 0x48: // CONSTRUCTOR_INVOCATION_TYPE_ARGUMENT
+            case 0x49: // METHOD_INVOCATION_TYPE_ARGUMENT
+            case 0x4A: // CONSTRUCTOR_REFERENCE_TYPE_ARGUMENT
+            case 0x4B: // METHOD_REFERENCE_TYPE_ARGUMENT
+                u += 4;
+                break;
+            // case 0x10: // CLASS_EXTENDS
+            // case 0x17: // THROWS
+            // case 0x42: // EXCEPTION_PARAMETER
+            // case 0x43: // INSTANCEOF
+            // case 0x44: // NEW
+            // case 0x45: // CONSTRUCTOR_REFERENCE
+            // case 0x46: // METHOD_REFERENCE
+            default:
+                u += 3;
+                break;
+            }
+            // skips the type_path structure
+            u += 1 + 2 * cr.readByte(u);
+            u = remapAnnotation(u);
+        }
+        return u;
+    }
+
+    /**
+     * Remaps an annotation.
+     * 
+     * @param u
+     *            the start offset of an annotation structure.
+     * @return the offset of the first byte following the annotation.
+     */
+    private int remapAnnotation(int u) {
+        remap(u, mapDesc(u));
+        int n = cr.readUnsignedShort(u + 2);
+        u += 4;
+        for (; n > 0; --n) {
+            u = remapElementValue(u + 2);
+        }
+        return u;
+    }
+
+    /**
+     * Remaps an annotation element value.
+     * 
+     * @param u
+     *            the start offset of an element_value structure.
+     * @return the offset of the first byte following the element value.
+     */
+    private int remapElementValue(int u) {
+        switch (cr.readByte(u)) {
+        case 'e':
+            remap(u + 1, mapDesc(u + 1));
+            return u + 5;
+        case 'c':
+            remap(u + 1, mapDesc(u + 1));
+            return u + 3;
+        case '@':
+            return remapAnnotation(u + 1);
+        case '[':
+            int n = cr.readUnsignedShort(u + 1);
+            u += 3;
+            for (; n > 0; --n) {
+                u = remapElementValue(u);
+            }
+            return u;
+        default:
+            return u + 3;
+        }
+    }
+
+    /**
+     * Remaps a signature.
+     * 
+     * @param u
+     *            the offset of the index of a CONSTANT_Utf8 entry containing a
+     *            signature.
+     * @param typeSignature
+     *            <tt>true</tt> for a field type signature, <tt>false</tt> for
+     *            a class or method signature.
+     */
+    private void remapSignature(final int u, final boolean typeSignature) {
+        String signature = cr.readUTF8(u, buf);
+        String newSignature = remapper.mapSignature(signature, typeSignature);
+        if (!newSignature.equals(signature)) {
+            patch(u, newUTF8(newSignature));
+        }
+    }
+
+    /**
+     * Makes a reference to a CONSTANT_NameAndType entry reference a new entry,
+     * if the name or descriptor of this entry are remapped.
+     * 
+     * @param u
+     *            the offset of the index of a CONSTANT_NameAndType entry.
+     * @param nameType
+     *            the start offset of this entry, plus one.
+     * @param newName
+     *            the remapped name.
+     * @param newDesc
+     *            the index of the remapped descriptor.
+     */
+    private void remapNameType(final int u, final int nameType,
+            final String newName, final int newDesc) {
+        int name = cr.readUnsignedShort(nameType);
+        int newNameIndex = name;
+        if (!newName.equals(cr.readUTF8(nameType, buf))) {
+            newNameIndex = newUTF8(newName);
+        }
+        if (newNameIndex != name
+                || newDesc != cr.readUnsignedShort(nameType + 2)) {
+            patch(u, newNameType(newNameIndex, newDesc));
+        }
+    }
+
+    /**
+     * Returns the index of the CONSTANT_Utf8 entry containing the remapped
+     * value of a field descriptor.
+     * 
+     * @param u
+     *            the offset of the index of a CONSTANT_Utf8 entry containing a
+     *            field descriptor.
+     * @return the index of the CONSTANT_Utf8 entry containing the remapped
+     *         descriptor.
+     */
+    private int mapDesc(final int u) {
+        int item = cr.readUnsignedShort(u);
+        int index = descs[item];
+        if (index == 0) {
+            String desc = cr.readUTF8(u, buf);
+            String newDesc = remapper.mapDesc(desc);
+            index = newDesc.equals(desc) ? item : newUTF8(newDesc);
+            descs[item] = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the CONSTANT_Utf8 entry containing the remapped
+     * value of a method descriptor.
+     * 
+     * @param u
+     *            the offset of the index of a CONSTANT_Utf8 entry containing a
+     *            method descriptor.
+     * @return the index of the CONSTANT_Utf8 entry containing the remapped
+     *         descriptor.
+     */
+    private int mapMethodDesc(final int u) {
+        int item = cr.readUnsignedShort(u);
+        int index = methodDescs[item];
+        if (index == 0) {
+            String desc = cr.readUTF8(u, buf);
+            String newDesc = remapper.mapMethodDesc(desc);
+            index = newDesc.equals(desc) ? item : newUTF8(newDesc);
+            methodDescs[item] = index;
+        }
+        return index;
+    }
+
+    /**
+     * Changes an unsigned short value, if necessary.
+     * 
+     * @param u
+     *            the offset of an unsigned short value in the original class.
+     * @param value
+     *            the new value.
+     */
+    private void remap(final int u, final int value) {
+        if (value != cr.readUnsignedShort(u)) {
+            patch(u, value);
+        }
+    }
+
+    /**
+     * Records a change to be made to the class bytes.
+     * 
+     * @param u
+     *            the offset of an unsigned short value in the original class.
+     * @param value
+     *            the new value.
+     */
+    private void patch(final int u, final int value) {
+        if (patchCount == patches.length) {
+            int[] newPatches = new int[2 * patches.length];
+            System.arraycopy(patches, 0, newPatches, 0, patchCount);
+            patches = newPatches;
+        }
+        patches[patchCount++] = u;
+        patches[patchCount++] = value;
+    }
+
+    /**
+     * Returns the index of a CONSTANT_Utf8 entry with the given value, adding
+     * it to the constant pool if there is no such entry.
+     * 
+     * @param value
+     *            a string.
+     * @return the index of a CONSTANT_Utf8 entry containing this string.
+     */
+    private int newUTF8(final String value) {
+        if (utf8s == null) {
+            // indexes the CONSTANT_Utf8 entries referenced by the entries
+            // which can be remapped, the other ones are unlikely to be reused
+            utf8s = new HashMap<String, Integer>();
+            ClassReader cr = this.cr;
+            for (int i = 1; i < cr.getItemCount(); ++i) {
+                int u = cr.getItem(i);
+                switch (cr.readByte(u - 1)) {
+                case CLASS:
+                case MTYPE:
+                    putUTF8(u);
+                    break;
+                case NAME_TYPE:
+                    putUTF8(u);
+                    putUTF8(u + 2);
+                    break;
+                case LONG:
+                case DOUBLE:
+                    ++i;
+                    break;
+                }
+            }
+        }
+        Integer index = utf8s.get(value);
+        if (index == null) {
+            try {
+                out.writeByte(UTF8);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            index = Integer.valueOf(count++);
+            utf8s.put(value, index);
+        }
+        return index.intValue();
+    }
+
+    /**
+     * Adds a CONSTANT_Utf8 entry of the original constant pool to
+     * {@link #utf8s}.
+     * 
+     * @param u
+     *            the offset of the index of a CONSTANT_Utf8 entry.
+     */
+    private void putUTF8(final int u) {
+        utf8s.put(cr.readUTF8(u, buf),
+                Integer.valueOf(cr.readUnsignedShort(u)));
+    }
+
+    /**
+     * Returns the index of a CONSTANT_NameAndType entry with the given name
+     * and descriptor, adding it to the constant pool if there is no such
+     * entry.
+     * 
+     * @param name
+     *            the index of a CONSTANT_Utf8 entry containing a name.
+     * @param desc
+     *            the index of a CONSTANT_Utf8 entry containing a descriptor.
+     * @return the index of a CONSTANT_NameAndType entry with this name and
+     *         descriptor.
+     */
+    private int newNameType(final int name, final int desc) {
+        if (nameTypes == null) {
+            ClassReader cr = this.cr;
+            nameTypes = new int[4 * Integer.highestOneBit(cr.getItemCount())];
+            for (int i = 1; i < cr.getItemCount(); ++i) {
+                int u = cr.getItem(i);
+                switch (cr.readByte(u - 1)) {
+                case NAME_TYPE:
+                    putNameType(cr.readUnsignedShort(u) << 16
+                            | cr.readUnsignedShort(u + 2), i);
+                    break;
+                case LONG:
+                case DOUBLE:
+                    ++i;
+                    break;
+                }
+            }
+        }
+        int key = name << 16 | desc;
+        int[] nameTypes = this.nameTypes;
+        int mask = nameTypes.length - 2;
+        int h = hash(key) & mask;
+        while (nameTypes[h] != 0) {
+            if (nameTypes[h] == key) {
+                return nameTypes[h + 1];
+            }
+            h = (h + 2) & mask;
+        }
+        try {
+            out.writeByte(NAME_TYPE);
+            out.writeShort(name);
+            out.writeShort(desc);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        int index = count++;
+        putNameType(key, index);
+        return index;
+    }
+
+    /**
+     * Adds an entry to {@link #nameTypes}, resizing it if necessary.
+     * 
+     * @param key
+     *            the index of the name and descriptor of a
+     *            CONSTANT_NameAndType entry, packed in an int.
+     * @param index
+     *            the index of this CONSTANT_NameAndType entry.
+     */
+    private void putNameType(final int key, final int index) {
+        if (4 * (nameTypeCount + 1) > nameTypes.length) {
+            int[] old = nameTypes;
+            nameTypes = new int[2 * old.length];
+            nameTypeCount = 0;
+            for (int i = 0; i < old.length; i += 2) {
+                if (old[i] != 0) {
+                    putNameType(old[i], old[i + 1]);
+                }
+            }
+        }
+        int[] nameTypes = this.nameTypes;
+        int mask = nameTypes.length - 2;
+        int h = hash(key) & mask;
+        while (nameTypes[h] != 0 && nameTypes[h] != key) {
+            h = (h + 2) & mask;
+        }
+        if (nameTypes[h] == 0) {
+            ++nameTypeCount;
+        }
+        nameTypes[h] = key;
+        nameTypes[h + 1] = index;
+    }
+
+    /**
+     * Returns the hash code of a {@link #nameTypes} key. The returned value
+     * is even, so that it can be used as an index of a key in this table.
+     * 
+     * @param key
+     *            the index of the name and descriptor of a
+     *            CONSTANT_NameAndType entry, packed in an int.
+     * @return the hash code of the given key.
+     */
+    private static int hash(final int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) << 1;
+    }
+}
@@ -39,6 +39,7 @@ import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
+import org.objectweb.asm.TypeCache;
 
 /**
  * A {@link org.objectweb.asm.MethodVisitor} with convenient methods to generate
@@ -285,8 +286,8 @@ public class GeneratorAdapter extends LocalVariablesSorter {
             final int access, final String name, final String desc) {
         super(api, access, desc, mv);
         this.access = access;
-        this.returnType = Type.getReturnType(desc);
-        this.argumentTypes = Type.getArgumentTypes(desc);
+        this.returnType = TypeCache.getShared().getReturnType(desc);
+        this.argumentTypes = TypeCache.getShared().getArgumentTypes(desc);
     }
 
     /**
@@ -0,0 +1,180 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.objectweb.asm.commons;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link Remapper} using a {@link Map} to define its mapping, with the same
+ * keys as {@link SimpleRemapper}: internal class names, "owner.name" for
+ * fields, "owner.name(desc)" for methods, and ".name(desc)" for invokedynamic
+ * methods. Unlike {@link SimpleRemapper}, which concatenates a key string for
+ * each field and method name to be mapped, this remapper indexes the field
+ * and method mappings by owner, name and descriptor when it is constructed.
+ * Mapping a field or method name is then done with a few hash table lookups,
+ * without allocating any object. The given mapping is copied in the
+ * constructor, so its later changes are not taken into account. For the same
+ * reason, the cache of remapped descriptors and signatures of {@link Remapper}
+ * is enabled. Instances of this class can be shared between threads.
+ */
+public class IndexedRemapper extends Remapper {
+
+    /**
+     * A copy of the mapping given in the constructor.
+     */
+    private final Map<String, String> mapping;
+
+    /**
+     * The field mappings, indexed by owner and name.
+     */
+    private final Map<String, Map<String, String>> fields;
+
+    /**
+     * The method mappings, indexed by owner, name and descriptor. The owner of
+     * invokedynamic methods is the empty string.
+     */
+    private final Map<String, Map<String, Map<String, String>>> methods;
+
+    /**
+     * Constructs a new {@link IndexedRemapper}.
+     * 
+     * @param mapping
+     *            the mapping to be used by this remapper (see
+     *            {@link SimpleRemapper#SimpleRemapper(Map) SimpleRemapper}).
+     */
+    public IndexedRemapper(final Map<String, String> mapping) {
+        super(DEFAULT_CACHE_CAPACITY);
+        this.mapping = new HashMap<String, String>(mapping);
+        this.fields = new HashMap<String, Map<String, String>>();
+        this.methods = new HashMap<String, Map<String, Map<String, String>>>();
+        for (Map.Entry<String, String> e : mapping.entrySet()) {
+            String key = e.getKey();
+            int dot = key.indexOf('.');
+            if (dot == -1) {
+                continue;
+            }
+            String owner = key.substring(0, dot);
+            int paren = key.indexOf('(', dot);
+            if (paren == -1) {
+                get(fields, owner).put(key.substring(dot + 1), e.getValue());
+            } else {
+                get(get(methods, owner), key.substring(dot + 1, paren)).put(
+                        key.substring(paren), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Constructs a new {@link IndexedRemapper} with a single mapping.
+     * 
+     * @param oldName
+     *            the key of the mapping (see {@link SimpleRemapper}).
+     * @param newName
+     *            the value of the mapping.
+     */
+    public IndexedRemapper(final String oldName, final String newName) {
+        this(Collections.singletonMap(oldName, newName));
+    }
+
+    @Override
+    public String mapMethodName(final String owner, final String name,
+            final String desc) {
+        String s = get(methods, owner, name, desc);
+        return s == null ? name : s;
+    }
+
+    @Override
+    public String mapInvokeDynamicMethodName(final String name,
+            final String desc) {
+        String s = get(methods, "", name, desc);
+        return s == null ? name : s;
+    }
+
+    @Override
+    public String mapFieldName(final String owner, final String name,
+            final String desc) {
+        Map<String, String> names = fields.get(owner);
+        String s = names == null ? null : names.get(name);
+        return s == null ? name : s;
+    }
+
+    @Override
+    public String map(final String key) {
+        return mapping.get(key);
+    }
+
+    /**
+     * Returns the value of the given key in the given map, creating it if
+     * necessary.
+     * 
+     * @param map
+     *            a map of maps.
+     * @param key
+     *            a key of this map.
+     * @return the value of the given key in the given map.
+     */
+    private static <T> Map<String, T> get(
+            final Map<String, Map<String, T>> map, final String key) {
+        Map<String, T> value = map.get(key);
+        if (value == null) {
+            value = new HashMap<String, T>();
+            map.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the new name of the given method.
+     * 
+     * @param methods
+     *            the method mappings, indexed by owner, name and descriptor.
+     * @param owner
+     *            the owner of the method.
+     * @param name
+     *            the name of the method.
+     * @param desc
+     *            the descriptor of the method.
+     * @return the new name of the given method, or <tt>null</tt> if there is
+     *         no mapping for it.
+     */
+    private static String get(
+            final Map<String, Map<String, Map<String, String>>> methods,
+            final String owner, final String name, final String desc) {
+        Map<String, Map<String, String>> names = methods.get(owner);
+        if (names == null) {
+            return null;
+        }
+        Map<String, String> descs = names.get(name);
+        return descs == null ? null : descs.get(desc);
+    }
+}
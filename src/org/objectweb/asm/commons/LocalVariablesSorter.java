@@ -34,6 +34,7 @@ import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
+import org.objectweb.asm.TypeCache;
 import org.objectweb.asm.TypePath;
 
 /**
@@ -113,11 +114,8 @@ public class LocalVariablesSorter extends MethodVisitor {
     protected LocalVariablesSorter(final int api, final int access,
             final String desc, final MethodVisitor mv) {
         super(api, mv);
-        Type[] args = Type.getArgumentTypes(desc);
-        nextLocal = (Opcodes.ACC_STATIC & access) == 0 ? 1 : 0;
-        for (int i = 0; i < args.length; i++) {
-            nextLocal += args[i].getSize();
-        }
+        int size = TypeCache.getShared().getArgumentsAndReturnSizes(desc) >> 2;
+        nextLocal = (Opcodes.ACC_STATIC & access) == 0 ? size : size - 1;
         firstLocal = nextLocal;
     }
 
@@ -30,6 +30,8 @@
 
 package org.objectweb.asm.commons;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.signature.SignatureReader;
@@ -46,22 +48,109 @@ import org.objectweb.asm.signature.SignatureWriter;
  * <li>{@link #mapMethodName(String, String, String)} - map method name</li>
  * </ul>
  * 
+ * Subclasses whose mapping does not change over time can also enable a cache
+ * of the remapped descriptors and signatures, with the
+ * {@link #Remapper(int)} constructor. The same descriptors and signatures are
+ * then remapped only once, instead of being parsed and rebuilt each time they
+ * are used. This cache is bounded, and can be used by several threads
+ * concurrently.
+ * 
  * @author Eugene Kuleshov
  */
 public abstract class Remapper {
 
+    /**
+     * The default capacity of the cache of remapped descriptors and
+     * signatures.
+     */
+    protected static final int DEFAULT_CACHE_CAPACITY = 4096;
+
+    /**
+     * The kind of the cache entries for {@link #mapDesc mapDesc}.
+     */
+    private static final int DESC = 0;
+
+    /**
+     * The kind of the cache entries for {@link #mapMethodDesc mapMethodDesc}.
+     */
+    private static final int METHOD_DESC = 1;
+
+    /**
+     * The kind of the cache entries for {@link #mapSignature mapSignature},
+     * for class and method signatures.
+     */
+    private static final int SIGNATURE = 2;
+
+    /**
+     * The kind of the cache entries for {@link #mapSignature mapSignature},
+     * for field type signatures.
+     */
+    private static final int TYPE_SIGNATURE = 3;
+
+    /**
+     * The cache of the remapped descriptors and signatures, or <tt>null</tt>
+     * if it is disabled. This is a direct mapped cache: an entry whose hash
+     * code is h is stored at index <tt>h &amp; (cache.length() - 1)</tt>,
+     * replacing the previous entry at this index, if any.
+     */
+    private final AtomicReferenceArray<CacheEntry> cache;
+
+    /**
+     * Constructs a new {@link Remapper}, without a cache of the remapped
+     * descriptors and signatures.
+     */
+    protected Remapper() {
+        cache = null;
+    }
+
+    /**
+     * Constructs a new {@link Remapper} with a cache of the remapped
+     * descriptors and signatures. <i>This cache must only be used if the
+     * mapping of the types does not change over time, i.e. if
+     * {@link #map(String) map} always returns the same value for the same
+     * argument</i>.
+     * 
+     * @param cacheCapacity
+     *            the maximum number of descriptors and signatures in the cache
+     *            (see {@link #DEFAULT_CACHE_CAPACITY}). This number is rounded
+     *            up to a power of two.
+     */
+    protected Remapper(final int cacheCapacity) {
+        if (cacheCapacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        int n = 1;
+        while (n < cacheCapacity) {
+            n <<= 1;
+        }
+        cache = new AtomicReferenceArray<CacheEntry>(n);
+    }
+
     public String mapDesc(String desc) {
+        if (cache == null) {
+            return doMapDesc(desc);
+        }
+        String s = getCached(DESC, desc);
+        return s != null ? s : putCached(DESC, desc, doMapDesc(desc));
+    }
+
+    private String doMapDesc(String desc) {
         Type t = Type.getType(desc);
         switch (t.getSort()) {
         case Type.ARRAY:
-            String s = mapDesc(t.getElementType().getDescriptor());
+            String elementDesc = t.getElementType().getDescriptor();
+            String s = mapDesc(elementDesc);
+            if (s.equals(elementDesc)) {
+                return desc;
+            }
             for (int i = 0; i < t.getDimensions(); ++i) {
                 s = '[' + s;
             }
             return s;
         case Type.OBJECT:
-            String newType = map(t.getInternalName());
-            if (newType != null) {
+            String internalName = t.getInternalName();
+            String newType = map(internalName);
+            if (newType != null && !newType.equals(internalName)) {
                 return 'L' + newType + ';';
             }
         }
@@ -116,7 +205,15 @@ public abstract class Remapper {
         if ("()V".equals(desc)) {
             return desc;
         }
+        if (cache == null) {
+            return doMapMethodDesc(desc);
+        }
+        String s = getCached(METHOD_DESC, desc);
+        return s != null ? s : putCached(METHOD_DESC, desc,
+                doMapMethodDesc(desc));
+    }
 
+    private String doMapMethodDesc(String desc) {
         Type[] args = Type.getArgumentTypes(desc);
         StringBuilder sb = new StringBuilder("(");
         for (int i = 0; i < args.length; i++) {
@@ -125,10 +222,11 @@ public abstract class Remapper {
         Type returnType = Type.getReturnType(desc);
         if (returnType == Type.VOID_TYPE) {
             sb.append(")V");
-            return sb.toString();
+        } else {
+            sb.append(')').append(mapDesc(returnType.getDescriptor()));
         }
-        sb.append(')').append(mapDesc(returnType.getDescriptor()));
-        return sb.toString();
+        String s = sb.toString();
+        return s.equals(desc) ? desc : s;
     }
 
     public Object mapValue(Object value) {
@@ -157,6 +255,16 @@ public abstract class Remapper {
         if (signature == null) {
             return null;
         }
+        if (cache == null) {
+            return doMapSignature(signature, typeSignature);
+        }
+        int kind = typeSignature ? TYPE_SIGNATURE : SIGNATURE;
+        String s = getCached(kind, signature);
+        return s != null ? s : putCached(kind, signature, doMapSignature(
+                signature, typeSignature));
+    }
+
+    private String doMapSignature(String signature, boolean typeSignature) {
         SignatureReader r = new SignatureReader(signature);
         SignatureWriter w = new SignatureWriter();
         SignatureVisitor a = createSignatureRemapper(w);
@@ -165,7 +273,8 @@ public abstract class Remapper {
         } else {
             r.accept(a);
         }
-        return w.toString();
+        String s = w.toString();
+        return s.equals(signature) ? signature : s;
     }
 
     /**
@@ -257,4 +366,85 @@ public abstract class Remapper {
     public String map(String typeName) {
         return typeName;
     }
+
+    /**
+     * Returns the remapped value of the given descriptor or signature, if it
+     * is in the cache.
+     * 
+     * @param kind
+     *            the kind of the given string ({@link #DESC},
+     *            {@link #METHOD_DESC}, {@link #SIGNATURE} or
+     *            {@link #TYPE_SIGNATURE}).
+     * @param key
+     *            a descriptor or signature.
+     * @return the remapped value of the given descriptor or signature, or
+     *         <tt>null</tt> if it is not in the cache.
+     */
+    private String getCached(final int kind, final String key) {
+        int h = key.hashCode() + kind;
+        h ^= h >>> 16;
+        CacheEntry e = cache.get(h & (cache.length() - 1));
+        if (e != null && e.hashCode == h && e.kind == kind
+                && e.key.equals(key)) {
+            return e.value;
+        }
+        return null;
+    }
+
+    /**
+     * Puts the remapped value of the given descriptor or signature in the
+     * cache.
+     * 
+     * @param kind
+     *            the kind of the given string (see {@link #getCached
+     *            getCached}).
+     * @param key
+     *            a descriptor or signature.
+     * @param value
+     *            the remapped value of this descriptor or signature.
+     * @return the given value.
+     */
+    private String putCached(final int kind, final String key,
+            final String value) {
+        int h = key.hashCode() + kind;
+        h ^= h >>> 16;
+        cache.set(h & (cache.length() - 1), new CacheEntry(kind, key, h,
+                value));
+        return value;
+    }
+
+    /**
+     * A remapped descriptor or signature. Entries are immutable, so that they
+     * can be shared between threads without synchronization.
+     */
+    private static final class CacheEntry {
+
+        /**
+         * The kind of {@link #key}.
+         */
+        final int kind;
+
+        /**
+         * The descriptor or signature.
+         */
+        final String key;
+
+        /**
+         * The (spread) hash code of {@link #key} and {@link #kind}.
+         */
+        final int hashCode;
+
+        /**
+         * The remapped value of {@link #key}.
+         */
+        final String value;
+
+        CacheEntry(final int kind, final String key, final int hashCode,
+                final String value) {
+            this.kind = kind;
+            this.key = key;
+            this.hashCode = hashCode;
+            this.value = value;
+        }
+    }
 }
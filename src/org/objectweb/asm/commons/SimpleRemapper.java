@@ -34,7 +34,9 @@ import java.util.Collections;
 import java.util.Map;
 
 /**
- * A {@link Remapper} using a {@link Map} to define its mapping.
+ * A {@link Remapper} using a {@link Map} to define its mapping. See also
+ * {@link IndexedRemapper}, which uses the same mapping keys but does not
+ * allocate a key string for each field or method name to be mapped.
  *
  * @author Eugene Kuleshov
  */
@@ -0,0 +1,713 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * A jar to jar transformation pipeline. The class files of the source jar are
+ * decompressed, transformed and compressed again by a pool of worker threads,
+ * while the entries of the destination jar are written by the calling thread,
+ * in the same order as in the source jar. The other entries are copied as is,
+ * without being decompressed. The number of entries which are being
+ * transformed, or which are waiting to be written, is bounded, so that the
+ * memory used by a transformation does not depend on the size of the jar.
+ * 
+ * <p>
+ * The transformation applied to each class is defined by overriding
+ * {@link #createClassVisitor createClassVisitor} or, for more control,
+ * {@link #transform(String, byte[]) transform}. These methods are called
+ * concurrently from several threads, and must therefore not share any mutable
+ * state without synchronization.
+ * 
+ * <p>
+ * Only the ZIP features used by the jar tool are supported: ZIP64 archives,
+ * and encrypted or multi-volume archives are not.
+ */
+public class JarTransformer {
+
+    /**
+     * The signature of a local file header.
+     */
+    private static final int LOCAL_HEADER = 0x04034b50;
+
+    /**
+     * The signature of a central directory file header.
+     */
+    private static final int CENTRAL_HEADER = 0x02014b50;
+
+    /**
+     * The signature of the end of central directory record.
+     */
+    private static final int END_HEADER = 0x06054b50;
+
+    /**
+     * The general purpose flag indicating that the crc and sizes of an entry
+     * are given in a data descriptor following its data.
+     */
+    private static final int DATA_DESCRIPTOR_FLAG = 8;
+
+    /**
+     * The compression method of entries which are not compressed.
+     */
+    private static final int STORED = 0;
+
+    /**
+     * The compression method of compressed entries.
+     */
+    private static final int DEFLATED = 8;
+
+    /**
+     * The maximum total size, in bytes, of the uncompressed class files that
+     * are being transformed or that are waiting to be written.
+     */
+    private static final long MAX_PENDING_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The number of worker threads used to transform the class files.
+     */
+    private final int threads;
+
+    /**
+     * The maximum number of entries that are being transformed or that are
+     * waiting to be written.
+     */
+    private final int maxPendingEntries;
+
+    /**
+     * The cache of the transformed class files. May be <tt>null</tt>.
+     */
+    private TransformationCache cache;
+
+    /**
+     * Constructs a new {@link JarTransformer} using one worker thread per
+     * available processor.
+     */
+    public JarTransformer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new {@link JarTransformer}.
+     * 
+     * @param threads
+     *            the number of worker threads used to transform the class
+     *            files.
+     */
+    public JarTransformer(final int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.threads = threads;
+        this.maxPendingEntries = 4 * threads;
+    }
+
+    /**
+     * Sets the cache used to avoid transforming the same class files again.
+     * The fingerprint of this cache must identify the transformation
+     * implemented by this jar transformer.
+     * 
+     * @param cache
+     *            a transformation cache, or <tt>null</tt> to transform all the
+     *            class files.
+     */
+    public void setCache(final TransformationCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the class visitor that must be used to transform a class. The
+     * default implementation of this method returns the given class visitor,
+     * i.e. it does not transform classes.
+     * 
+     * @param cv
+     *            the class visitor to which the transformed class must be
+     *            sent. This is a {@link ClassWriter}.
+     * @return the class visitor to which the original class must be sent.
+     */
+    protected ClassVisitor createClassVisitor(final ClassVisitor cv) {
+        return cv;
+    }
+
+    /**
+     * Transforms a class file. The default implementation of this method sends
+     * the class to the class visitor returned by {@link #createClassVisitor
+     * createClassVisitor}, itself connected to a {@link ClassWriter} sharing
+     * the constant pool of the original class.
+     * 
+     * @param name
+     *            the name of the jar entry containing the class.
+     * @param b
+     *            the content of the class file.
+     * @return the transformed class file.
+     */
+    protected byte[] transform(final String name, final byte[] b) {
+        ClassReader cr = new ClassReader(b);
+        ClassWriter cw = new ClassWriter(cr, 0);
+        cr.accept(createClassVisitor(cw), 0);
+        return cw.toByteArray();
+    }
+
+    /**
+     * Transforms the classes of a jar.
+     * 
+     * @param src
+     *            the source jar.
+     * @param dst
+     *            the destination jar. Must be different from src.
+     * @throws IOException
+     *             if a file can't be read or written, if the source jar is
+     *             not a supported ZIP archive, or if a class can't be
+     *             transformed.
+     * @throws IllegalArgumentException
+     *             if src and dst denote the same file.
+     */
+    public void transform(final File src, final File dst) throws IOException {
+        if (src.getCanonicalFile().equals(dst.getCanonicalFile())) {
+            throw new IllegalArgumentException(
+                    "The source and destination jars must be different: "
+                            + src);
+        }
+        RandomAccessFile in = new RandomAccessFile(src, "r");
+        try {
+            RandomAccessFile out = new RandomAccessFile(dst, "rw");
+            try {
+                out.setLength(0);
+                ExecutorService executor = Executors
+                        .newFixedThreadPool(threads);
+                try {
+                    transform(in, out.getChannel(), executor);
+                } finally {
+                    executor.shutdownNow();
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Transforms the classes of a jar.
+     * 
+     * @param in
+     *            the source jar.
+     * @param out
+     *            the destination jar.
+     * @param executor
+     *            the executor used to transform the class files.
+     * @throws IOException
+     *             if a file can't be read or written, if the source jar is
+     *             not a supported ZIP archive, or if a class can't be
+     *             transformed.
+     */
+    private void transform(final RandomAccessFile in, final FileChannel out,
+            final ExecutorService executor) throws IOException {
+        ArrayList<Entry> entries = readCentralDirectory(in);
+        FileChannel channel = in.getChannel();
+        LinkedList<Future<Entry>> pending = new LinkedList<Future<Entry>>();
+        long pendingSize = 0;
+        ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+        for (int i = 0; i < entries.size(); ++i) {
+            final Entry e = entries.get(i);
+            e.dataOffset = getDataOffset(in, e);
+            Future<Entry> f;
+            if (e.isClass()) {
+                if (e.size > Integer.MAX_VALUE || e.csize > Integer.MAX_VALUE
+                        || (e.method != STORED && e.method != DEFLATED)) {
+                    throw new IOException("Unsupported class entry "
+                            + e.getName());
+                }
+                e.data = new byte[(int) e.csize];
+                in.seek(e.dataOffset);
+                in.readFully(e.data);
+                while (!pending.isEmpty()
+                        && pendingSize + e.size > MAX_PENDING_SIZE) {
+                    pendingSize -= write(pending.removeFirst(), out, channel,
+                            centralDirectory);
+                }
+                e.pendingSize = e.size;
+                pendingSize += e.size;
+                f = executor.submit(new Callable<Entry>() {
+                    public Entry call() throws Exception {
+                        return transform(e);
+                    }
+                });
+            } else {
+                FutureTask<Entry> t = new FutureTask<Entry>(e);
+                t.run();
+                f = t;
+            }
+            pending.addLast(f);
+            if (pending.size() >= maxPendingEntries) {
+                pendingSize -= write(pending.removeFirst(), out, channel,
+                        centralDirectory);
+            }
+        }
+        while (!pending.isEmpty()) {
+            write(pending.removeFirst(), out, channel, centralDirectory);
+        }
+        long offset = out.position();
+        write(out, centralDirectory.toByteArray());
+        byte[] b = new byte[22];
+        putInt(b, 0, END_HEADER);
+        putShort(b, 8, entries.size());
+        putShort(b, 10, entries.size());
+        putInt(b, 12, out.position() - offset);
+        putInt(b, 16, checkOffset(offset));
+        write(out, b);
+    }
+
+    /**
+     * Decompresses, transforms and compresses a class file. The transformed
+     * class file is taken from, or stored in, the cache if there is one.
+     * 
+     * @param e
+     *            the entry containing the class file.
+     * @return the given entry, updated to contain the transformed class file.
+     * @throws IOException
+     *             if the cache can't be read or written.
+     * @throws DataFormatException
+     *             if the class file is not correctly compressed.
+     */
+    Entry transform(final Entry e) throws IOException, DataFormatException {
+        byte[] b = e.data;
+        if (e.method == DEFLATED) {
+            Inflater inflater = new Inflater(true);
+            try {
+                // an extra byte is needed by the inflater in nowrap mode
+                byte[] input = new byte[b.length + 1];
+                System.arraycopy(b, 0, input, 0, b.length);
+                inflater.setInput(input);
+                b = new byte[(int) e.size];
+                int n = 0;
+                while (n < b.length && !inflater.finished()) {
+                    int k = inflater.inflate(b, n, b.length - n);
+                    if (k == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    n += k;
+                }
+                if (n != b.length) {
+                    throw new DataFormatException("Truncated entry");
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+        byte[] t = cache == null ? null : cache.get(b);
+        if (t == null) {
+            t = transform(e.getName(), b);
+            if (cache != null) {
+                cache.put(b, t);
+            }
+        }
+        b = t;
+        CRC32 crc = new CRC32();
+        crc.update(b);
+        e.crc = crc.getValue();
+        e.size = b.length;
+        if (e.method == DEFLATED) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION,
+                    true);
+            try {
+                deflater.setInput(b);
+                deflater.finish();
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(
+                        b.length / 2 + 64);
+                byte[] buf = new byte[8192];
+                while (!deflater.finished()) {
+                    bos.write(buf, 0, deflater.deflate(buf));
+                }
+                b = bos.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+        e.data = b;
+        e.csize = b.length;
+        return e;
+    }
+
+    /**
+     * Writes an entry in the destination jar.
+     * 
+     * @param f
+     *            the entry to be written.
+     * @param out
+     *            the destination jar.
+     * @param in
+     *            the source jar.
+     * @param centralDirectory
+     *            where the central directory header of the entry must be
+     *            written.
+     * @return the {@link Entry#pendingSize pendingSize} of the entry.
+     * @throws IOException
+     *             if the entry can't be transformed or written.
+     */
+    private static long write(final Future<Entry> f, final FileChannel out,
+            final FileChannel in, final ByteArrayOutputStream centralDirectory)
+            throws IOException {
+        Entry e;
+        try {
+            e = f.get();
+        } catch (InterruptedException ex) {
+            IOException ioe = new IOException("Interrupted");
+            ioe.initCause(ex);
+            throw ioe;
+        } catch (ExecutionException ex) {
+            IOException ioe = new IOException(ex.getCause().toString());
+            ioe.initCause(ex.getCause());
+            throw ioe;
+        }
+        if (e.csize > 0xFFFFFFFFL || e.size > 0xFFFFFFFFL) {
+            throw new IOException("Entry too large " + e.getName());
+        }
+        long offset = out.position();
+        int flags = e.flags & ~DATA_DESCRIPTOR_FLAG;
+
+        byte[] b = new byte[30 + e.name.length + e.extra.length];
+        putInt(b, 0, LOCAL_HEADER);
+        putShort(b, 4, e.versionNeeded);
+        putShort(b, 6, flags);
+        putShort(b, 8, e.method);
+        putInt(b, 10, e.time);
+        putInt(b, 14, e.crc);
+        putInt(b, 18, e.csize);
+        putInt(b, 22, e.size);
+        putShort(b, 26, e.name.length);
+        putShort(b, 28, e.extra.length);
+        System.arraycopy(e.name, 0, b, 30, e.name.length);
+        System.arraycopy(e.extra, 0, b, 30 + e.name.length, e.extra.length);
+        write(out, b);
+        if (e.data == null) {
+            long n = 0;
+            while (n < e.csize) {
+                long k = in.transferTo(e.dataOffset + n, e.csize - n, out);
+                if (k <= 0) {
+                    throw new IOException("Truncated entry " + e.getName());
+                }
+                n += k;
+            }
+        } else {
+            write(out, e.data);
+            e.data = null;
+        }
+
+        b = new byte[46 + e.name.length + e.extra.length + e.comment.length];
+        putInt(b, 0, CENTRAL_HEADER);
+        putShort(b, 4, e.versionMadeBy);
+        putShort(b, 6, e.versionNeeded);
+        putShort(b, 8, flags);
+        putShort(b, 10, e.method);
+        putInt(b, 12, e.time);
+        putInt(b, 16, e.crc);
+        putInt(b, 20, e.csize);
+        putInt(b, 24, e.size);
+        putShort(b, 28, e.name.length);
+        putShort(b, 30, e.extra.length);
+        putShort(b, 32, e.comment.length);
+        putShort(b, 36, e.internalAttributes);
+        putInt(b, 38, e.externalAttributes);
+        putInt(b, 42, checkOffset(offset));
+        System.arraycopy(e.name, 0, b, 46, e.name.length);
+        System.arraycopy(e.extra, 0, b, 46 + e.name.length, e.extra.length);
+        System.arraycopy(e.comment, 0, b, 46 + e.name.length + e.extra.length,
+                e.comment.length);
+        centralDirectory.write(b, 0, b.length);
+        return e.pendingSize;
+    }
+
+    /**
+     * Reads the central directory of a jar.
+     * 
+     * @param in
+     *            a jar.
+     * @return the entries of the jar, in the order of its central directory.
+     * @throws IOException
+     *             if the jar can't be read or is not a supported ZIP archive.
+     */
+    private static ArrayList<Entry> readCentralDirectory(
+            final RandomAccessFile in) throws IOException {
+        // the end of central directory record is followed by a comment of at
+        // most 65535 bytes
+        long length = in.length();
+        int n = (int) Math.min(length, 22 + 65535);
+        byte[] b = new byte[n];
+        in.seek(length - n);
+        in.readFully(b);
+        int end = n - 22;
+        while (end >= 0
+                && (getInt(b, end) != END_HEADER
+                        || end + 22 + getShort(b, end + 20) != n)) {
+            --end;
+        }
+        if (end < 0) {
+            throw new IOException("Not a ZIP archive");
+        }
+        int count = getShort(b, end + 10);
+        long size = getInt(b, end + 12);
+        long offset = getInt(b, end + 16);
+        if (getShort(b, end + 4) != 0 || getShort(b, end + 6) != 0
+                || getShort(b, end + 8) != count) {
+            throw new IOException("Multi-volume archives are not supported");
+        }
+        if (count == 0xFFFF || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL
+                || offset + size > length) {
+            throw new IOException("ZIP64 archives are not supported");
+        }
+
+        b = new byte[(int) size];
+        in.seek(offset);
+        in.readFully(b);
+        ArrayList<Entry> entries = new ArrayList<Entry>(count);
+        int u = 0;
+        for (int i = 0; i < count; ++i) {
+            if (u + 46 > b.length || getInt(b, u) != CENTRAL_HEADER) {
+                throw new IOException("Invalid central directory");
+            }
+            Entry e = new Entry();
+            e.versionMadeBy = getShort(b, u + 4);
+            e.versionNeeded = getShort(b, u + 6);
+            e.flags = getShort(b, u + 8);
+            e.method = getShort(b, u + 10);
+            e.time = getInt(b, u + 12);
+            e.crc = getInt(b, u + 16);
+            e.csize = getInt(b, u + 20);
+            e.size = getInt(b, u + 24);
+            e.internalAttributes = getShort(b, u + 36);
+            e.externalAttributes = getInt(b, u + 38);
+            e.offset = getInt(b, u + 42);
+            if ((e.flags & 1) != 0) {
+                throw new IOException("Encrypted entries are not supported");
+            }
+            int nameLength = getShort(b, u + 28);
+            int extraLength = getShort(b, u + 30);
+            int commentLength = getShort(b, u + 32);
+            u += 46;
+            e.name = copy(b, u, nameLength);
+            u += nameLength;
+            e.extra = copy(b, u, extraLength);
+            u += extraLength;
+            e.comment = copy(b, u, commentLength);
+            u += commentLength;
+            entries.add(e);
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the offset of the data of an entry in a jar.
+     * 
+     * @param in
+     *            a jar.
+     * @param e
+     *            an entry of this jar.
+     * @return the offset of the data of the given entry in the given jar.
+     * @throws IOException
+     *             if the jar can't be read or is not a valid ZIP archive.
+     */
+    private static long getDataOffset(final RandomAccessFile in, final Entry e)
+            throws IOException {
+        byte[] b = new byte[30];
+        in.seek(e.offset);
+        in.readFully(b);
+        if (getInt(b, 0) != LOCAL_HEADER) {
+            throw new IOException("Invalid local header " + e.getName());
+        }
+        long offset = e.offset + 30 + getShort(b, 26) + getShort(b, 28);
+        if (offset + e.csize > in.length()) {
+            throw new IOException("Truncated entry " + e.getName());
+        }
+        return offset;
+    }
+
+    /**
+     * Checks that an offset in the destination jar can be stored without the
+     * ZIP64 extensions.
+     * 
+     * @param offset
+     *            an offset in the destination jar.
+     * @return the given offset.
+     * @throws IOException
+     *             if the offset is too large.
+     */
+    private static long checkOffset(final long offset) throws IOException {
+        if (offset > 0xFFFFFFFFL) {
+            throw new IOException("Destination jar too large");
+        }
+        return offset;
+    }
+
+    private static void write(final FileChannel out, final byte[] b)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(b);
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    private static byte[] copy(final byte[] b, final int offset,
+            final int length) throws IOException {
+        if (offset + length > b.length) {
+            throw new IOException("Invalid central directory");
+        }
+        byte[] c = new byte[length];
+        System.arraycopy(b, offset, c, 0, length);
+        return c;
+    }
+
+    private static int getShort(final byte[] b, final int index) {
+        return (b[index] & 0xFF) | ((b[index + 1] & 0xFF) << 8);
+    }
+
+    private static long getInt(final byte[] b, final int index) {
+        return getShort(b, index) | ((long) getShort(b, index + 2) << 16);
+    }
+
+    private static void putShort(final byte[] b, final int index,
+            final int s) {
+        b[index] = (byte) s;
+        b[index + 1] = (byte) (s >>> 8);
+    }
+
+    private static void putInt(final byte[] b, final int index, final long i) {
+        putShort(b, index, (int) i);
+        putShort(b, index + 2, (int) (i >>> 16));
+    }
+
+    /**
+     * An entry of a jar.
+     */
+    static final class Entry implements Callable<Entry> {
+
+        byte[] name;
+
+        byte[] extra;
+
+        byte[] comment;
+
+        int versionMadeBy;
+
+        int versionNeeded;
+
+        int flags;
+
+        int method;
+
+        /**
+         * The MS-DOS time and date of this entry.
+         */
+        long time;
+
+        long crc;
+
+        /**
+         * The compressed size of this entry.
+         */
+        long csize;
+
+        /**
+         * The uncompressed size of this entry.
+         */
+        long size;
+
+        int internalAttributes;
+
+        long externalAttributes;
+
+        /**
+         * The offset of the local header of this entry in the source jar.
+         */
+        long offset;
+
+        /**
+         * The offset of the data of this entry in the source jar.
+         */
+        long dataOffset;
+
+        /**
+         * The data of this entry, or <tt>null</tt> if it must be copied from
+         * the source jar.
+         */
+        byte[] data;
+
+        /**
+         * The uncompressed size of this entry in the source jar if it is
+         * transformed, 0 otherwise.
+         */
+        long pendingSize;
+
+        String getName() {
+            try {
+                return new String(name, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        boolean isClass() {
+            int n = name.length;
+            return n > 6 && name[n - 6] == '.' && name[n - 5] == 'c'
+                    && name[n - 4] == 'l' && name[n - 3] == 'a'
+                    && name[n - 2] == 's' && name[n - 1] == 's';
+        }
+
+        /**
+         * Returns this entry. Used for the entries which are copied as is.
+         */
+        public Entry call() {
+            return this;
+        }
+    }
+}
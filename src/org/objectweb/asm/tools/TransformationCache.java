@@ -0,0 +1,619 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * An on-disk cache of class file transformations. The key of a cache entry is
+ * the SHA-1 digest of the original class file and of a fingerprint of the
+ * transformation (which must change each time the transformation, or its
+ * configuration, changes). The value of a cache entry is the transformed class
+ * file. A cache can be set on a {@link JarTransformer} so that unchanged
+ * classes are not parsed nor transformed again.
+ * 
+ * <p>
+ * The cache is stored in two files in a directory. The "data" file contains
+ * the transformed class files, one after the other. The "index" file is a
+ * memory mapped hash table from keys to the position, length, checksum and
+ * last access time of the corresponding values in the data file. When the
+ * size of the data file would exceed the maximum size of the cache, the least
+ * recently used entries are removed, and the data file is compacted, until
+ * the size of the cache is half of its maximum size.
+ * 
+ * <p>
+ * The methods of this class can be called from several threads concurrently.
+ * The lookups read the cached values outside of any lock, except while the
+ * data file is being compacted. A cache directory can only be used by one
+ * instance of this class at a time, which is enforced with a file lock.
+ */
+public class TransformationCache implements Closeable {
+
+    /**
+     * The magic number of the index file.
+     */
+    private static final int MAGIC = 0x41534D43;
+
+    /**
+     * The version of the cache format.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * The size of the header of the index file. The header contains the magic
+     * number, the version, the capacity of the hash table, the number of
+     * entries, the size of the data file and the current access time.
+     */
+    private static final int HEADER_SIZE = 32;
+
+    /**
+     * The size of a key, i.e. of a SHA-1 digest.
+     */
+    private static final int KEY_SIZE = 20;
+
+    /**
+     * The size of a slot of the hash table. Each slot contains a key, the
+     * position, length and CRC32 of the corresponding value in the data file,
+     * and its last access time. Empty slots have a 0 access time.
+     */
+    private static final int SLOT_SIZE = 44;
+
+    /**
+     * The position of the value offset in a slot.
+     */
+    private static final int OFFSET = KEY_SIZE;
+
+    /**
+     * The position of the value length in a slot.
+     */
+    private static final int LENGTH = KEY_SIZE + 8;
+
+    /**
+     * The position of the value CRC32 in a slot.
+     */
+    private static final int CRC = KEY_SIZE + 12;
+
+    /**
+     * The position of the last access time in a slot.
+     */
+    private static final int STAMP = KEY_SIZE + 16;
+
+    /**
+     * The initial capacity of the hash table.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The fingerprint of the transformation, encoded in UTF-8.
+     */
+    private final byte[] fingerprint;
+
+    /**
+     * The maximum size of the data file.
+     */
+    private final long maxSize;
+
+    /**
+     * The index file.
+     */
+    private final RandomAccessFile indexFile;
+
+    /**
+     * The data file.
+     */
+    private final RandomAccessFile dataFile;
+
+    /**
+     * The lock preventing other processes from using the cache directory.
+     */
+    private final FileLock lock;
+
+    /**
+     * The lock preventing the data file from being compacted while values
+     * are read from it. The index, and the fields below, are guarded by this
+     * object instead.
+     */
+    private final ReadWriteLock dataLock = new ReentrantReadWriteLock();
+
+    /**
+     * The number of compactions of the data file. Incremented while holding
+     * the write lock of {@link #dataLock}, so that a value whose position was
+     * looked up before a compaction is not read after it.
+     */
+    private volatile int compactions;
+
+    /**
+     * The memory mapped content of the index file.
+     */
+    private MappedByteBuffer index;
+
+    /**
+     * The number of slots of the hash table. Always a power of two.
+     */
+    private int capacity;
+
+    /**
+     * The number of entries in the cache.
+     */
+    private int count;
+
+    /**
+     * The size of the used part of the data file.
+     */
+    private long dataSize;
+
+    /**
+     * The current access time. Incremented at each access. This is a long so
+     * that it never wraps around, since 0 denotes empty slots.
+     */
+    private long clock;
+
+    /**
+     * Opens or creates a transformation cache.
+     * 
+     * @param dir
+     *            the directory containing the cache files. It is created if it
+     *            does not exist.
+     * @param fingerprint
+     *            a fingerprint of the transformation whose results are cached.
+     *            This fingerprint must change each time the transformation,
+     *            or its configuration, changes.
+     * @param maxSize
+     *            the maximum size, in bytes, of the cached class files.
+     * @throws IOException
+     *             if the cache files can't be created or read, or if the cache
+     *             is already used by another process.
+     */
+    public TransformationCache(final File dir, final String fingerprint,
+            final long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        this.fingerprint = fingerprint.getBytes("UTF-8");
+        this.maxSize = maxSize;
+        this.indexFile = new RandomAccessFile(new File(dir, "index"), "rw");
+        RandomAccessFile data = null;
+        FileLock lock = null;
+        try {
+            try {
+                lock = indexFile.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+                // the cache is already used in this virtual machine
+            }
+            if (lock == null) {
+                throw new IOException("Cache " + dir + " is already used");
+            }
+            data = new RandomAccessFile(new File(dir, "data"), "rw");
+            this.lock = lock;
+            this.dataFile = data;
+            open();
+        } catch (IOException e) {
+            if (data != null) {
+                data.close();
+            }
+            indexFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the transformed class file corresponding to the given class.
+     * 
+     * @param b
+     *            the content of a class file.
+     * @return the cached transformed class file corresponding to b, or
+     *         <tt>null</tt> if there is no such class file in this cache.
+     * @throws IOException
+     *             if the cache files can't be read.
+     */
+    public byte[] get(final byte[] b) throws IOException {
+        byte[] key = getKey(b);
+        long offset;
+        int length;
+        int checksum;
+        int generation;
+        synchronized (this) {
+            generation = compactions;
+            int slot = find(key);
+            if (getStamp(slot) == 0) {
+                return null;
+            }
+            int pos = HEADER_SIZE + slot * SLOT_SIZE;
+            offset = index.getLong(pos + OFFSET);
+            length = index.getInt(pos + LENGTH);
+            checksum = index.getInt(pos + CRC);
+            if (offset + length > dataSize) {
+                return null;
+            }
+        }
+        byte[] value = new byte[length];
+        dataLock.readLock().lock();
+        try {
+            if (compactions != generation) {
+                // the value has been moved, or removed, in the meantime
+                return null;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(value);
+            FileChannel channel = dataFile.getChannel();
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, offset + buf.position()) < 0) {
+                    return null;
+                }
+            }
+        } finally {
+            dataLock.readLock().unlock();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(value);
+        if ((int) crc.getValue() != checksum) {
+            // the data was not completely written, or was corrupted
+            return null;
+        }
+        synchronized (this) {
+            int slot = find(key);
+            if (getStamp(slot) != 0) {
+                index.putLong(HEADER_SIZE + slot * SLOT_SIZE + STAMP, ++clock);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Stores the transformed class file corresponding to the given class.
+     * 
+     * @param b
+     *            the content of a class file.
+     * @param value
+     *            the transformed class file corresponding to b.
+     * @throws IOException
+     *             if the cache files can't be written.
+     */
+    public void put(final byte[] b, final byte[] value) throws IOException {
+        byte[] key = getKey(b);
+        CRC32 crc = new CRC32();
+        crc.update(value);
+        synchronized (this) {
+            if (value.length > maxSize / 2) {
+                return;
+            }
+            if (dataSize + value.length > maxSize) {
+                evict(maxSize / 2 - value.length);
+            }
+            if (2 * (count + 1) > capacity) {
+                rebuild(2 * capacity, getSlots());
+            }
+            int slot = find(key);
+            if (getStamp(slot) == 0) {
+                ++count;
+            }
+            // values are appended after the used part of the data file,
+            // which is not read concurrently
+            ByteBuffer buf = ByteBuffer.wrap(value);
+            FileChannel channel = dataFile.getChannel();
+            while (buf.hasRemaining()) {
+                channel.write(buf, dataSize + buf.position());
+            }
+            int pos = HEADER_SIZE + slot * SLOT_SIZE;
+            index.position(pos);
+            index.put(key);
+            index.putLong(dataSize);
+            index.putInt(value.length);
+            index.putInt((int) crc.getValue());
+            index.putLong(++clock);
+            dataSize += value.length;
+            writeHeader();
+        }
+    }
+
+    /**
+     * Writes the cache to disk and closes its files.
+     * 
+     * @throws IOException
+     *             if the cache files can't be written.
+     */
+    public synchronized void close() throws IOException {
+        try {
+            writeHeader();
+            index.force();
+            lock.release();
+        } finally {
+            try {
+                dataFile.close();
+            } finally {
+                indexFile.close();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Implementation details
+    // ------------------------------------------------------------------------
+
+    /**
+     * Reads the header of the index file, or initializes the cache files if
+     * the index file is empty or was created with a different format.
+     * 
+     * @throws IOException
+     *             if the cache files can't be read or written.
+     */
+    private void open() throws IOException {
+        long length = indexFile.length();
+        if (length >= HEADER_SIZE) {
+            indexFile.seek(0);
+            int magic = indexFile.readInt();
+            int version = indexFile.readInt();
+            capacity = indexFile.readInt();
+            count = indexFile.readInt();
+            dataSize = indexFile.readLong();
+            clock = indexFile.readLong();
+            if (magic == MAGIC && version == VERSION && capacity > 0
+                    && (capacity & (capacity - 1)) == 0
+                    && length == HEADER_SIZE + (long) capacity * SLOT_SIZE
+                    && dataSize <= dataFile.length()) {
+                index = map(length);
+                return;
+            }
+        }
+        // the index file is truncated before being mapped, because a mapped
+        // file can't be truncated on some platforms
+        capacity = INITIAL_CAPACITY;
+        length = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+        indexFile.setLength(0);
+        indexFile.setLength(length);
+        index = map(length);
+        count = 0;
+        dataSize = 0;
+        clock = 0;
+        dataFile.setLength(0);
+        writeHeader();
+    }
+
+    /**
+     * Maps the index file in memory.
+     * 
+     * @param length
+     *            the length of the index file.
+     * @return the memory mapped content of the index file.
+     * @throws IOException
+     *             if the index file can't be mapped.
+     */
+    private MappedByteBuffer map(final long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Cache index too large");
+        }
+        return indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                length);
+    }
+
+    private void writeHeader() {
+        index.putInt(0, MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(8, capacity);
+        index.putInt(12, count);
+        index.putLong(16, dataSize);
+        index.putLong(24, clock);
+    }
+
+    /**
+     * Returns the cache key corresponding to the given class.
+     * 
+     * @param b
+     *            the content of a class file.
+     * @return the SHA-1 digest of the fingerprint and of the given class.
+     */
+    private byte[] getKey(final byte[] b) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        md.update(fingerprint);
+        md.update(b);
+        return md.digest();
+    }
+
+    /**
+     * Returns the slot of the hash table containing the given key.
+     * 
+     * @param key
+     *            a cache key.
+     * @return the slot containing this key or, if there is no such slot, the
+     *         empty slot where this key must be inserted.
+     */
+    private int find(final byte[] key) {
+        int slot = ((key[0] & 0xFF) | (key[1] & 0xFF) << 8
+                | (key[2] & 0xFF) << 16 | key[3] << 24) & (capacity - 1);
+        while (getStamp(slot) != 0 && !hasKey(slot, key)) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+        return slot;
+    }
+
+    private boolean hasKey(final int slot, final byte[] key) {
+        int pos = HEADER_SIZE + slot * SLOT_SIZE;
+        for (int i = 0; i < KEY_SIZE; ++i) {
+            if (index.get(pos + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long getStamp(final int slot) {
+        return index.getLong(HEADER_SIZE + slot * SLOT_SIZE + STAMP);
+    }
+
+    /**
+     * Returns the slots of the hash table which are not empty.
+     * 
+     * @return the content of the non empty slots of the hash table.
+     */
+    private byte[][] getSlots() {
+        byte[][] slots = new byte[count][SLOT_SIZE];
+        int n = 0;
+        for (int i = 0; i < capacity && n < count; ++i) {
+            if (getStamp(i) != 0) {
+                index.position(HEADER_SIZE + i * SLOT_SIZE);
+                index.get(slots[n++]);
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Resizes the hash table and reinserts the given slots in it.
+     * 
+     * @param newCapacity
+     *            the new capacity of the hash table.
+     * @param slots
+     *            the slots to be inserted in the new hash table.
+     * @throws IOException
+     *             if the index file can't be resized.
+     */
+    private void rebuild(final int newCapacity, final byte[][] slots)
+            throws IOException {
+        long length = HEADER_SIZE + (long) newCapacity * SLOT_SIZE;
+        if (newCapacity != capacity) {
+            indexFile.setLength(length);
+            index = map(length);
+            capacity = newCapacity;
+        }
+        byte[] zeros = new byte[SLOT_SIZE];
+        index.position(HEADER_SIZE);
+        for (int i = 0; i < capacity; ++i) {
+            index.put(zeros);
+        }
+        byte[] key = new byte[KEY_SIZE];
+        for (int i = 0; i < slots.length; ++i) {
+            System.arraycopy(slots[i], 0, key, 0, KEY_SIZE);
+            index.position(HEADER_SIZE + find(key) * SLOT_SIZE);
+            index.put(slots[i]);
+        }
+        count = slots.length;
+        writeHeader();
+    }
+
+    /**
+     * Removes the least recently used entries, and compacts the data file,
+     * until the size of the data file is at most the given size.
+     * 
+     * @param size
+     *            the maximum size of the data file after eviction.
+     * @throws IOException
+     *             if the cache files can't be read or written.
+     */
+    private void evict(final long size) throws IOException {
+        final byte[][] slots = getSlots();
+        Integer[] order = new Integer[slots.length];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(final Integer i, final Integer j) {
+                long si = ByteBuffer.wrap(slots[i]).getLong(STAMP);
+                long sj = ByteBuffer.wrap(slots[j]).getLong(STAMP);
+                return si > sj ? -1 : (si == sj ? 0 : 1);
+            }
+        });
+        long kept = 0;
+        int n = 0;
+        while (n < order.length) {
+            int length = ByteBuffer.wrap(slots[order[n]]).getInt(LENGTH);
+            if (kept + length > size) {
+                break;
+            }
+            kept += length;
+            ++n;
+        }
+        // the access times are renumbered from 1, in the same order
+        byte[][] keptSlots = new byte[n][];
+        for (int i = 0; i < n; ++i) {
+            keptSlots[i] = slots[order[i]];
+            ByteBuffer.wrap(keptSlots[i]).putLong(STAMP, n - i);
+        }
+        clock = n;
+        // the kept entries are moved to the beginning of the data file by
+        // increasing offset, so that an entry never overwrites the entries
+        // which have not been moved yet
+        Arrays.sort(keptSlots, new Comparator<byte[]>() {
+            public int compare(final byte[] s, final byte[] t) {
+                long os = ByteBuffer.wrap(s).getLong(OFFSET);
+                long ot = ByteBuffer.wrap(t).getLong(OFFSET);
+                return os < ot ? -1 : (os == ot ? 0 : 1);
+            }
+        });
+        long offset = 0;
+        byte[] buf = new byte[0];
+        dataLock.writeLock().lock();
+        try {
+            ++compactions;
+            for (int i = 0; i < n; ++i) {
+                ByteBuffer slot = ByteBuffer.wrap(keptSlots[i]);
+                long oldOffset = slot.getLong(OFFSET);
+                int length = slot.getInt(LENGTH);
+                if (oldOffset != offset) {
+                    if (buf.length < length) {
+                        buf = new byte[length];
+                    }
+                    dataFile.seek(oldOffset);
+                    dataFile.readFully(buf, 0, length);
+                    dataFile.seek(offset);
+                    dataFile.write(buf, 0, length);
+                    slot.putLong(OFFSET, offset);
+                }
+                offset += length;
+            }
+            dataSize = offset;
+            dataFile.setLength(offset);
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+        rebuild(capacity, keptSlots);
+    }
+}
@@ -162,9 +162,10 @@ public abstract class AbstractInsnNode {
 
     /**
      * Index of this instruction in the list to which it belongs. The value of
-     * this field is correct only when {@link InsnList#cache} is not null. A
-     * value of -1 indicates that this instruction does not belong to any
-     * {@link InsnList}.
+     * this field is meaningful only when {@link InsnList#cache} is not null,
+     * and can then be slightly wrong if instructions have been inserted or
+     * removed before this one (see {@link InsnList#indexOf}). A value of -1
+     * indicates that this instruction does not belong to any {@link InsnList}.
      */
     int index;
 
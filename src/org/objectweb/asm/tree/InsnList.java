@@ -57,10 +57,28 @@ public class InsnList {
 
     /**
      * A cache of the instructions of this list. This cache is used to improve
-     * the performance of the {@link #get} method.
+     * the performance of the {@link #get} and {@link #indexOf} methods. Once
+     * built, it is kept up to date by the methods that modify the list, and
+     * its length can be greater than the size of the list.
      */
     AbstractInsnNode[] cache;
 
+    /**
+     * The index in {@link #cache} from which the {@link AbstractInsnNode#index
+     * index} fields of the instructions may be wrong. This is the case after
+     * an instruction has been inserted or removed before them. A wrong index
+     * is corrected lazily, by searching the instruction in {@link #cache}
+     * around its previous index.
+     */
+    private int staleIndex;
+
+    /**
+     * The maximum distance at which a moved instruction is searched in the
+     * cache, around its previous index. Beyond this distance all the wrong
+     * indexes are recomputed.
+     */
+    private static final int MAX_SEARCH_DISTANCE = 32;
+
     /**
      * Returns the number of instructions in this list.
      * 
@@ -94,7 +112,7 @@ public class InsnList {
      * Returns the instruction whose index is given. This method builds a cache
      * of the instructions in this list to avoid scanning the whole list each
      * time it is called. Once the cache is built, this method run in constant
-     * time. This cache is invalidated by all the methods that modify the list.
+     * time. This cache is updated by all the methods that modify the list.
      * 
      * @param index
      *            the index of the instruction that must be returned.
@@ -107,7 +125,7 @@ public class InsnList {
             throw new IndexOutOfBoundsException();
         }
         if (cache == null) {
-            cache = toArray();
+            buildCache();
         }
         return cache[index];
     }
@@ -133,8 +151,12 @@ public class InsnList {
      * Returns the index of the given instruction in this list. This method
      * builds a cache of the instruction indexes to avoid scanning the whole
      * list each time it is called. Once the cache is built, this method run in
-     * constant time. The cache is invalidated by all the methods that modify
-     * the list.
+     * constant time, if the list is not modified. After an instruction has
+     * been inserted or removed, the index of the following instructions is
+     * updated lazily: this method then runs in a time proportional to the
+     * number of instructions inserted or removed before the given instruction
+     * since they were last indexed (or in linear time, if this number is
+     * large).
      * 
      * @param insn
      *            an instruction <i>of this list</i>.
@@ -145,9 +167,9 @@ public class InsnList {
      */
     public int indexOf(final AbstractInsnNode insn) {
         if (cache == null) {
-            cache = toArray();
+            buildCache();
         }
-        return insn.index;
+        return position(insn);
     }
 
     /**
@@ -200,9 +222,108 @@ public class InsnList {
             elem.index = i++;
             elem = elem.next;
         }
+        staleIndex = size;
         return insns;
     }
 
+    /**
+     * Builds the cache of the instructions of this list.
+     */
+    private void buildCache() {
+        cache = toArray();
+    }
+
+    /**
+     * Returns the index of the given instruction in {@link #cache}, and
+     * corrects its {@link AbstractInsnNode#index index} field if necessary.
+     * The cache must not be <tt>null</tt>.
+     * 
+     * @param insn
+     *            an instruction of this list.
+     * @return the index of the given instruction in this list, or -1 if it
+     *         does not belong to any list.
+     */
+    private int position(final AbstractInsnNode insn) {
+        int i = insn.index;
+        if (i < 0) {
+            return -1;
+        }
+        if (i < size && cache[i] == insn) {
+            return i;
+        }
+        // the instruction has moved since it was last indexed, by as many
+        // slots as the number of instructions inserted or removed before it
+        if (i >= size) {
+            i = size - 1;
+        }
+        for (int d = 0; d <= MAX_SEARCH_DISTANCE; ++d) {
+            int j = i + d;
+            if (j < size && cache[j] == insn) {
+                insn.index = j;
+                return j;
+            }
+            j = i - d;
+            if (j >= 0 && cache[j] == insn) {
+                insn.index = j;
+                return j;
+            }
+        }
+        for (int j = staleIndex; j < size; ++j) {
+            cache[j].index = j;
+        }
+        staleIndex = size;
+        return insn.index;
+    }
+
+    /**
+     * Opens a gap of the given length in {@link #cache}, at the given index.
+     * The size of this list must already include the new instructions.
+     * 
+     * @param index
+     *            the index of the first instruction to be inserted.
+     * @param length
+     *            the number of instructions to be inserted.
+     */
+    private void openGap(final int index, final int length) {
+        int oldSize = size - length;
+        if (size > cache.length) {
+            AbstractInsnNode[] newCache = new AbstractInsnNode[Math.max(
+                    2 * cache.length, size)];
+            System.arraycopy(cache, 0, newCache, 0, index);
+            System.arraycopy(cache, index, newCache, index + length, oldSize
+                    - index);
+            cache = newCache;
+        } else {
+            System.arraycopy(cache, index, cache, index + length, oldSize
+                    - index);
+        }
+        if (index + length < size && index + length < staleIndex) {
+            staleIndex = index + length;
+        }
+    }
+
+    /**
+     * Updates {@link #cache} after some instructions have been inserted in
+     * this list. The size of this list must already include the new
+     * instructions.
+     * 
+     * @param index
+     *            the index of the first inserted instruction.
+     * @param insn
+     *            the first inserted instruction.
+     * @param length
+     *            the number of inserted instructions.
+     */
+    private void cacheInsert(final int index, AbstractInsnNode insn,
+            final int length) {
+        openGap(index, length);
+        for (int i = index; i < index + length; ++i) {
+            cache[i] = insn;
+            insn.index = i;
+            insn = insn.next;
+        }
+    }
+
     /**
      * Replaces an instruction of this list with another instruction.
      * 
@@ -228,7 +349,7 @@ public class InsnList {
             first = insn;
         }
         if (cache != null) {
-            int index = location.index;
+            int index = position(location);
             cache[index] = insn;
             insn.index = index;
         } else {
@@ -256,8 +377,11 @@ public class InsnList {
             insn.prev = last;
         }
         last = insn;
-        cache = null;
-        insn.index = 0; // insn now belongs to an InsnList
+        if (cache != null) {
+            cacheInsert(size - 1, insn, 1);
+        } else {
+            insn.index = 0; // insn now belongs to an InsnList
+        }
     }
 
     /**
@@ -281,7 +405,9 @@ public class InsnList {
             elem.prev = last;
             last = insns.last;
         }
-        cache = null;
+        if (cache != null) {
+            cacheInsert(size - insns.size, insns.first, insns.size);
+        }
         insns.removeAll(false);
     }
 
@@ -302,8 +428,11 @@ public class InsnList {
             insn.next = first;
         }
         first = insn;
-        cache = null;
-        insn.index = 0; // insn now belongs to an InsnList
+        if (cache != null) {
+            cacheInsert(0, insn, 1);
+        } else {
+            insn.index = 0; // insn now belongs to an InsnList
+        }
     }
 
     /**
@@ -327,7 +456,9 @@ public class InsnList {
             elem.next = first;
             first = insns.first;
         }
-        cache = null;
+        if (cache != null) {
+            cacheInsert(0, insns.first, insns.size);
+        }
         insns.removeAll(false);
     }
 
@@ -343,6 +474,7 @@ public class InsnList {
      */
     public void insert(final AbstractInsnNode location,
             final AbstractInsnNode insn) {
+        int index = cache == null ? 0 : position(location) + 1;
         ++size;
         AbstractInsnNode next = location.next;
         if (next == null) {
@@ -353,8 +485,11 @@ public class InsnList {
         location.next = insn;
         insn.next = next;
         insn.prev = location;
-        cache = null;
-        insn.index = 0; // insn now belongs to an InsnList
+        if (cache != null) {
+            cacheInsert(index, insn, 1);
+        } else {
+            insn.index = 0; // insn now belongs to an InsnList
+        }
     }
 
     /**
@@ -371,6 +506,7 @@ public class InsnList {
         if (insns.size == 0) {
             return;
         }
+        int index = cache == null ? 0 : position(location) + 1;
         size += insns.size;
         AbstractInsnNode ifirst = insns.first;
         AbstractInsnNode ilast = insns.last;
@@ -383,7 +519,9 @@ public class InsnList {
         location.next = ifirst;
         ilast.next = next;
         ifirst.prev = location;
-        cache = null;
+        if (cache != null) {
+            cacheInsert(index, ifirst, insns.size);
+        }
         insns.removeAll(false);
     }
 
@@ -399,6 +537,7 @@ public class InsnList {
      */
     public void insertBefore(final AbstractInsnNode location,
             final AbstractInsnNode insn) {
+        int index = cache == null ? 0 : position(location);
         ++size;
         AbstractInsnNode prev = location.prev;
         if (prev == null) {
@@ -409,8 +548,11 @@ public class InsnList {
         location.prev = insn;
         insn.next = location;
         insn.prev = prev;
-        cache = null;
-        insn.index = 0; // insn now belongs to an InsnList
+        if (cache != null) {
+            cacheInsert(index, insn, 1);
+        } else {
+            insn.index = 0; // insn now belongs to an InsnList
+        }
     }
 
     /**
@@ -428,6 +570,7 @@ public class InsnList {
         if (insns.size == 0) {
             return;
         }
+        int index = cache == null ? 0 : position(location);
         size += insns.size;
         AbstractInsnNode ifirst = insns.first;
         AbstractInsnNode ilast = insns.last;
@@ -440,7 +583,9 @@ public class InsnList {
         location.prev = ilast;
         ilast.next = location;
         ifirst.prev = prev;
-        cache = null;
+        if (cache != null) {
+            cacheInsert(index, ifirst, insns.size);
+        }
         insns.removeAll(false);
     }
 
@@ -451,6 +596,7 @@ public class InsnList {
      *            the instruction <i>of this list</i> that must be removed.
      */
     public void remove(final AbstractInsnNode insn) {
+        int index = cache == null ? 0 : position(insn);
         --size;
         AbstractInsnNode next = insn.next;
         AbstractInsnNode prev = insn.prev;
@@ -471,7 +617,13 @@ public class InsnList {
                 next.prev = prev;
             }
         }
-        cache = null;
+        if (cache != null) {
+            System.arraycopy(cache, index + 1, cache, index, size - index);
+            cache[size] = null;
+            if (index < size && index < staleIndex) {
+                staleIndex = index;
+            }
+        }
         insn.index = -1; // insn no longer belongs to an InsnList
         insn.prev = null;
         insn.next = null;
@@ -588,20 +740,14 @@ public class InsnList {
             if (next == null) {
                 return size();
             }
-            if (cache == null) {
-                cache = toArray();
-            }
-            return next.index;
+            return indexOf(next);
         }
 
         public int previousIndex() {
             if (prev == null) {
                 return -1;
             }
-            if (cache == null) {
-                cache = toArray();
-            }
-            return prev.index;
+            return indexOf(prev);
         }
 
         public void add(Object o) {
@@ -31,6 +31,7 @@ package org.objectweb.asm.tree.analysis;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -58,6 +59,31 @@ import org.objectweb.asm.tree.VarInsnNode;
  */
 public class Analyzer<V extends Value> implements Opcodes {
 
+    /**
+     * Worklist order in which the last queued instruction is analyzed first.
+     * This is the default order.
+     * 
+     * @see #setWorklistOrder
+     */
+    public static final int LIFO = 0;
+
+    /**
+     * Worklist order in which the queued instruction which comes first in the
+     * reverse postorder of the control flow graph is analyzed first.
+     * 
+     * @see #setWorklistOrder
+     */
+    public static final int REVERSE_POSTORDER = 1;
+
+    /**
+     * Worklist order in which the strongly connected components of the
+     * control flow graph are analyzed one after the other, in topological
+     * order, and in reverse postorder inside each component.
+     * 
+     * @see #setWorklistOrder
+     */
+    public static final int SCC_ORDER = 2;
+
     private final Interpreter<V> interpreter;
 
     private int n;
@@ -76,6 +102,80 @@ public class Analyzer<V extends Value> implements Opcodes {
 
     private int top;
 
+    /**
+     * The order in which the queued instructions are analyzed. See
+     * {@link #setWorklistOrder}.
+     */
+    private int worklistOrder;
+
+    /**
+     * The priority of each instruction in the worklist (the instruction with
+     * the smallest value is analyzed first), or <tt>null</tt> to use the
+     * {@link #LIFO} order. If not null, {@link #queue} is a binary heap.
+     */
+    private int[] priorities;
+
+    /**
+     * The number of instructions executed during the last analysis.
+     */
+    private int iterations;
+
+    /**
+     * Whether frames must only be stored at the beginning of basic blocks,
+     * for methods without subroutines. See {@link #setCompactFrames}.
+     */
+    private boolean compactFrames;
+
+    /**
+     * The instructions which begin a basic block in the last recently
+     * analyzed method, or <tt>null</tt> if {@link #frames} contains the frames
+     * of all the instructions of this method.
+     */
+    private boolean[] blockStarts;
+
+    /**
+     * The instructions of the last successfully analyzed method, or
+     * <tt>null</tt> if this method cannot be re-analyzed incrementally. See
+     * {@link #reanalyze reanalyze}.
+     */
+    private AbstractInsnNode[] analyzedInsns;
+
+    /**
+     * The last successfully analyzed method.
+     */
+    private MethodNode analyzedMethod;
+
+    /**
+     * The owner of the last successfully analyzed method.
+     */
+    private String analyzedOwner;
+
+    /**
+     * The maximum number of local variables of the last successfully analyzed
+     * method, at the time of its analysis.
+     */
+    private int analyzedMaxLocals;
+
+    /**
+     * The maximum stack size of the last successfully analyzed method, at the
+     * time of its analysis.
+     */
+    private int analyzedMaxStack;
+
+    /**
+     * The try catch blocks of the last successfully analyzed method, at the
+     * time of its analysis.
+     */
+    private TryCatchBlockNode[] analyzedTryCatchBlocks;
+
+    /**
+     * The jump targets of the instructions of the last successfully analyzed
+     * method, at the time of its analysis. The element at index i is a
+     * LabelNode if analyzedInsns[i] is a jump instruction, a LabelNode[] if it
+     * is a switch instruction, and <tt>null</tt> otherwise.
+     */
+    private Object[] analyzedTargets;
+
     /**
      * Constructs a new {@link Analyzer}.
      * 
@@ -87,6 +187,54 @@ public class Analyzer<V extends Value> implements Opcodes {
         this.interpreter = interpreter;
     }
 
+    /**
+     * Sets whether frames must be stored for all instructions, or only at the
+     * beginning of basic blocks. In the later case, which is only used for
+     * methods without JSR instructions, the analysis stores and merges frames
+     * only at the first instruction of each basic block, and the memory used
+     * by the analysis is much smaller for large methods. The array returned
+     * by {@link #analyze analyze} then contains only these frames, the other
+     * ones being <tt>null</tt>. The frame of any instruction can be computed
+     * on demand with {@link #getFrame getFrame}, and {@link #getFrames
+     * getFrames} computes and returns the frames of all the instructions.
+     * 
+     * @param compactFrames
+     *            <tt>true</tt> to store frames only at the beginning of basic
+     *            blocks, <tt>false</tt> to store them for all instructions
+     *            (the default).
+     */
+    public void setCompactFrames(final boolean compactFrames) {
+        this.compactFrames = compactFrames;
+    }
+
+    /**
+     * Sets the order in which the instructions whose frame has changed are
+     * analyzed. This order does not change the result of the analysis, but
+     * changes the number of times each instruction is executed before a fix
+     * point is reached. The {@link #REVERSE_POSTORDER} and {@link #SCC_ORDER}
+     * orders compute a {@link ControlFlowGraph} for each analyzed method, and
+     * usually reduce the number of iterations for methods with loops.
+     * 
+     * @param worklistOrder
+     *            {@link #LIFO} (the default), {@link #REVERSE_POSTORDER} or
+     *            {@link #SCC_ORDER}.
+     */
+    public void setWorklistOrder(final int worklistOrder) {
+        this.worklistOrder = worklistOrder;
+    }
+
+    /**
+     * Returns the number of instructions executed during the last analysis.
+     * This number is greater than the number of reachable instructions if
+     * some instructions had to be analyzed several times before their frames
+     * became stable (e.g. in loops).
+     * 
+     * @return the number of instructions executed during the last analysis.
+     */
+    public int getIterationCount() {
+        return iterations;
+    }
+
     /**
      * Analyzes the given method.
      * 
@@ -98,13 +246,17 @@ public class Analyzer<V extends Value> implements Opcodes {
      *         instruction of the method. The size of the returned array is
      *         equal to the number of instructions (and labels) of the method. A
      *         given frame is <tt>null</tt> if and only if the corresponding
-     *         instruction cannot be reached (dead code).
+     *         instruction cannot be reached (dead code), or, if compact frames
+     *         are used (see {@link #setCompactFrames setCompactFrames}), if
+     *         the instruction does not begin a basic block.
      * @throws AnalyzerException
      *             if a problem occurs during the analysis.
      */
     @SuppressWarnings("unchecked")
     public Frame<V>[] analyze(final String owner, final MethodNode m)
             throws AnalyzerException {
+        blockStarts = null;
+        analyzedInsns = null;
         if ((m.access & (ACC_ABSTRACT | ACC_NATIVE)) != 0) {
             frames = (Frame<V>[]) new Frame<?>[0];
             return frames;
@@ -117,27 +269,25 @@ public class Analyzer<V extends Value> implements Opcodes {
         queued = new boolean[n];
         queue = new int[n];
         top = 0;
+        iterations = 0;
+        priorities = null;
+        if (worklistOrder != LIFO && n > 0) {
+            priorities = computePriorities(new ControlFlowGraph(m));
+        }
 
-        // computes exception handlers for each instruction
-        for (int i = 0; i < m.tryCatchBlocks.size(); ++i) {
-            TryCatchBlockNode tcb = m.tryCatchBlocks.get(i);
-            int begin = insns.indexOf(tcb.start);
-            int end = insns.indexOf(tcb.end);
-            for (int j = begin; j < end; ++j) {
-                List<TryCatchBlockNode> insnHandlers = handlers[j];
-                if (insnHandlers == null) {
-                    insnHandlers = new ArrayList<TryCatchBlockNode>();
-                    handlers[j] = insnHandlers;
-                }
-                insnHandlers.add(tcb);
-            }
+        findHandlers(m);
+
+        if (compactFrames) {
+            blockStarts = findBlockStarts(m);
         }
 
         // computes the subroutine for each instruction:
         Subroutine main = new Subroutine(null, m.maxLocals, null);
         List<AbstractInsnNode> subroutineCalls = new ArrayList<AbstractInsnNode>();
         Map<LabelNode, Subroutine> subroutineHeads = new HashMap<LabelNode, Subroutine>();
-        findSubroutine(0, main, subroutineCalls);
+        if (blockStarts == null) {
+            findSubroutine(0, main, subroutineCalls);
+        }
         while (!subroutineCalls.isEmpty()) {
             JumpInsnNode jsr = (JumpInsnNode) subroutineCalls.remove(0);
             Subroutine sub = subroutineHeads.get(jsr.label);
@@ -156,8 +306,370 @@ public class Analyzer<V extends Value> implements Opcodes {
         }
 
         // initializes the data structures for the control flow analysis
-        Frame<V> current = newFrame(m.maxLocals, m.maxStack);
+        Frame<V> current = newEntryFrame(owner, m);
+        Frame<V> handler = newFrame(m.maxLocals, m.maxStack);
+        merge(0, current, null);
+
+        init(owner, m);
+
+        if (blockStarts != null) {
+            analyzeBlocks(current, handler);
+            return frames;
+        }
+        analyzeInstructions(m, current, handler);
+        if (subroutineHeads.isEmpty()) {
+            saveState(owner, m);
+        }
+        return frames;
+    }
+
+    /**
+     * Re-analyzes the given method after some local modifications of its
+     * instructions. This method must be called after {@link #analyze analyze}
+     * has been called successfully with the same method, and after some
+     * instructions of this method have been inserted, removed or replaced
+     * (e.g. with {@link org.objectweb.asm.tree.InsnList#set InsnList.set}).
+     * The frames of the instructions which cannot be reached from the
+     * modified instructions are reused as is, and only the other instructions
+     * are analyzed again. The inserted, removed and replaced instructions are
+     * detected automatically, but the instructions which are modified in
+     * place (e.g. by changing the var field of a VarInsnNode) must be given
+     * explicitly.
+     * 
+     * <p>
+     * The {@link #init init} method is not called again, and the
+     * {@link #newControlFlowEdge newControlFlowEdge} and
+     * {@link #newControlFlowExceptionEdge newControlFlowExceptionEdge}
+     * methods are only called for the re-analyzed instructions. If the
+     * method was not the last analyzed method, or if its try catch blocks,
+     * its maximum stack size or its maximum number of local variables were
+     * changed, or if it contains subroutines, or if compact frames are used,
+     * the method is fully analyzed again.
+     * 
+     * @param owner
+     *            the internal name of the class to which the method belongs.
+     * @param m
+     *            the method to be re-analyzed.
+     * @param changed
+     *            the instructions of this method which have been modified in
+     *            place since the last analysis.
+     * @return the symbolic state of the execution stack frame at each bytecode
+     *         instruction of the method (see {@link #analyze analyze}).
+     * @throws AnalyzerException
+     *             if a problem occurs during the analysis.
+     */
+    @SuppressWarnings("unchecked")
+    public Frame<V>[] reanalyze(final String owner, final MethodNode m,
+            final AbstractInsnNode... changed) throws AnalyzerException {
+        if (!canReanalyze(owner, m)) {
+            return analyze(owner, m);
+        }
+        AbstractInsnNode[] oldInsns = analyzedInsns;
+        Frame<V>[] oldFrames = frames;
+        analyzedInsns = null;
+
+        // maps the old frames to the new instruction indices, and finds the
+        // instructions whose predecessor or successor in the list changed
+        AbstractInsnNode[] newInsns = m.instructions.toArray();
+        Map<AbstractInsnNode, Integer> oldIndices =
+                new IdentityHashMap<AbstractInsnNode, Integer>();
+        for (int i = 0; i < oldInsns.length; ++i) {
+            oldIndices.put(oldInsns[i], Integer.valueOf(i));
+        }
+        n = newInsns.length;
+        insns = m.instructions;
+        frames = (Frame<V>[]) new Frame<?>[n];
+        boolean[] modified = new boolean[n];
+        boolean[] kept = new boolean[oldInsns.length];
+        for (int i = 0; i < n; ++i) {
+            Integer index = oldIndices.get(newInsns[i]);
+            if (index == null) {
+                modified[i] = true;
+                continue;
+            }
+            int j = index.intValue();
+            kept[j] = true;
+            AbstractInsnNode oldPrev = j > 0 ? oldInsns[j - 1] : null;
+            AbstractInsnNode oldNext = j + 1 < oldInsns.length ? oldInsns[j + 1]
+                    : null;
+            AbstractInsnNode newPrev = i > 0 ? newInsns[i - 1] : null;
+            AbstractInsnNode newNext = i + 1 < n ? newInsns[i + 1] : null;
+            modified[i] = oldPrev != newPrev || oldNext != newNext;
+            frames[i] = oldFrames[j];
+        }
+        for (int i = 0; i < changed.length; ++i) {
+            modified[insns.indexOf(changed[i])] = true;
+        }
+
+        // the old successors of the removed instructions, and of the
+        // instructions modified in place, may have lost an incoming edge, and
+        // then their merged frames are no longer valid
+        for (int j = 0; j < oldInsns.length; ++j) {
+            if (!kept[j]) {
+                invalidateOldSuccessors(j, oldInsns, oldIndices, kept,
+                        modified);
+            }
+        }
+        for (int i = 0; i < changed.length; ++i) {
+            Integer index = oldIndices.get(changed[i]);
+            if (index != null) {
+                invalidateOldSuccessors(index.intValue(), oldInsns,
+                        oldIndices, kept, modified);
+            }
+        }
+
+        // invalidates the frames of all the instructions reachable from the
+        // modified ones. invalidFrom[b] is the first instruction of block b
+        // whose frame is invalid, or -1 if all its frames are still valid.
+        ControlFlowGraph cfg = new ControlFlowGraph(m);
+        int nBlocks = cfg.getBlockCount();
+        int[] invalidFrom = new int[nBlocks];
+        for (int b = 0; b < nBlocks; ++b) {
+            invalidFrom[b] = -1;
+        }
+        // a block can be pushed twice: once partially, and once fully invalid
+        int[] stack = new int[2 * nBlocks];
+        int stackSize = 0;
+        for (int i = 0; i < n; ++i) {
+            int b = cfg.getBlock(i);
+            if (modified[i] && invalidFrom[b] == -1) {
+                invalidFrom[b] = i;
+                stack[stackSize++] = b;
+            }
+        }
+        while (stackSize > 0) {
+            int b = stack[--stackSize];
+            for (int i = 0; i < cfg.getSuccessorCount(b); ++i) {
+                int s = cfg.getSuccessor(b, i);
+                if (invalidFrom[s] != cfg.getBlockStart(s)) {
+                    invalidFrom[s] = cfg.getBlockStart(s);
+                    stack[stackSize++] = s;
+                }
+            }
+        }
+        for (int b = 0; b < nBlocks; ++b) {
+            if (invalidFrom[b] != -1) {
+                for (int i = invalidFrom[b]; i < cfg.getBlockEnd(b); ++i) {
+                    frames[i] = null;
+                }
+            }
+        }
+
+        // initializes the data structures for the control flow analysis
+        handlers = (List<TryCatchBlockNode>[]) new List<?>[n];
+        subroutines = new Subroutine[n];
+        queued = new boolean[n];
+        queue = new int[n];
+        top = 0;
+        iterations = 0;
+        priorities = null;
+        if (worklistOrder != LIFO && n > 0) {
+            priorities = computePriorities(cfg);
+        }
+        findHandlers(m);
+        Frame<V> current = newEntryFrame(owner, m);
         Frame<V> handler = newFrame(m.maxLocals, m.maxStack);
+
+        // re-analyzes the invalidated instructions, starting from the entry
+        // frame and from the valid instructions which precede them
+        if (n > 0 && invalidFrom[0] == 0) {
+            merge(0, current, null);
+        }
+        for (int b = 0; b < nBlocks; ++b) {
+            if (invalidFrom[b] == -1) {
+                continue;
+            }
+            int start = cfg.getBlockStart(b);
+            if (invalidFrom[b] != start) {
+                enqueueValid(start, invalidFrom[b]);
+                continue;
+            }
+            for (int i = 0; i < cfg.getPredecessorCount(b); ++i) {
+                int p = cfg.getPredecessor(b, i);
+                if (invalidFrom[p] == -1) {
+                    enqueueValid(cfg.getBlockStart(p), cfg.getBlockEnd(p));
+                }
+            }
+        }
+        analyzeInstructions(m, current, handler);
+        saveState(owner, m);
+        return frames;
+    }
+
+    /**
+     * Marks as modified the instructions which were successors of the given
+     * instruction at the time of the last analysis, and which are still in
+     * the method.
+     * 
+     * @param j
+     *            the index of an instruction in the last analyzed
+     *            instructions.
+     * @param oldInsns
+     *            the last analyzed instructions.
+     * @param oldIndices
+     *            the indices of the last analyzed instructions.
+     * @param kept
+     *            which last analyzed instructions are still in the method.
+     * @param modified
+     *            the modified instructions, indexed by their new index.
+     */
+    private void invalidateOldSuccessors(final int j,
+            final AbstractInsnNode[] oldInsns,
+            final Map<AbstractInsnNode, Integer> oldIndices,
+            final boolean[] kept, final boolean[] modified) {
+        if (j + 1 < oldInsns.length) {
+            invalidate(oldInsns[j + 1], oldIndices, kept, modified);
+        }
+        Object targets = analyzedTargets[j];
+        if (targets instanceof LabelNode) {
+            invalidate((LabelNode) targets, oldIndices, kept, modified);
+        } else if (targets != null) {
+            LabelNode[] labels = (LabelNode[]) targets;
+            for (int i = 0; i < labels.length; ++i) {
+                invalidate(labels[i], oldIndices, kept, modified);
+            }
+        }
+        for (int i = 0; i < analyzedTryCatchBlocks.length; ++i) {
+            TryCatchBlockNode tcb = analyzedTryCatchBlocks[i];
+            Integer start = oldIndices.get(tcb.start);
+            Integer end = oldIndices.get(tcb.end);
+            if (start != null && end != null && start.intValue() <= j
+                    && j < end.intValue()) {
+                invalidate(tcb.handler, oldIndices, kept, modified);
+            }
+        }
+    }
+
+    private void invalidate(final AbstractInsnNode insn,
+            final Map<AbstractInsnNode, Integer> oldIndices,
+            final boolean[] kept, final boolean[] modified) {
+        Integer index = oldIndices.get(insn);
+        if (index != null && kept[index.intValue()]) {
+            modified[insns.indexOf(insn)] = true;
+        }
+    }
+
+    /**
+     * Adds to the worklist the instructions of a valid sequence of
+     * instructions which can have an invalid successor. These are the last
+     * instruction of the sequence, and the instructions covered by an
+     * exception handler.
+     * 
+     * @param start
+     *            the first instruction of the sequence (inclusive).
+     * @param end
+     *            the last instruction of the sequence (exclusive).
+     */
+    private void enqueueValid(final int start, final int end) {
+        for (int j = start; j < end; ++j) {
+            if (frames[j] != null && !queued[j]
+                    && (j == end - 1 || handlers[j] != null)) {
+                enqueue(j);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given method can be incrementally re-analyzed.
+     * 
+     * @param owner
+     *            the internal name of the class to which the method belongs.
+     * @param m
+     *            a method.
+     * @return <tt>true</tt> if the given method is the last successfully
+     *         analyzed method, and if the data saved during this analysis is
+     *         still valid.
+     */
+    private boolean canReanalyze(final String owner, final MethodNode m) {
+        if (analyzedInsns == null || analyzedMethod != m || compactFrames
+                || !owner.equals(analyzedOwner)
+                || m.maxLocals != analyzedMaxLocals
+                || m.maxStack != analyzedMaxStack
+                || m.tryCatchBlocks.size() != analyzedTryCatchBlocks.length) {
+            return false;
+        }
+        for (int i = 0; i < analyzedTryCatchBlocks.length; ++i) {
+            if (m.tryCatchBlocks.get(i) != analyzedTryCatchBlocks[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Saves the data needed to re-analyze the given method.
+     * 
+     * @param owner
+     *            the internal name of the class to which the method belongs.
+     * @param m
+     *            the method which has just been analyzed.
+     */
+    private void saveState(final String owner, final MethodNode m) {
+        analyzedInsns = m.instructions.toArray();
+        analyzedMethod = m;
+        analyzedOwner = owner;
+        analyzedMaxLocals = m.maxLocals;
+        analyzedMaxStack = m.maxStack;
+        analyzedTryCatchBlocks = m.tryCatchBlocks
+                .toArray(new TryCatchBlockNode[m.tryCatchBlocks.size()]);
+        analyzedTargets = new Object[analyzedInsns.length];
+        for (int i = 0; i < analyzedInsns.length; ++i) {
+            AbstractInsnNode insn = analyzedInsns[i];
+            if (insn instanceof JumpInsnNode) {
+                analyzedTargets[i] = ((JumpInsnNode) insn).label;
+            } else if (insn instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode tsi = (TableSwitchInsnNode) insn;
+                analyzedTargets[i] = getTargets(tsi.dflt, tsi.labels);
+            } else if (insn instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode lsi = (LookupSwitchInsnNode) insn;
+                analyzedTargets[i] = getTargets(lsi.dflt, lsi.labels);
+            }
+        }
+    }
+
+    private static LabelNode[] getTargets(final LabelNode dflt,
+            final List<LabelNode> labels) {
+        LabelNode[] targets = new LabelNode[labels.size() + 1];
+        targets[0] = dflt;
+        for (int i = 0; i < labels.size(); ++i) {
+            targets[i + 1] = labels.get(i);
+        }
+        return targets;
+    }
+
+    /**
+     * Computes the exception handlers of each instruction of the given method.
+     * 
+     * @param m
+     *            the method to be analyzed.
+     */
+    private void findHandlers(final MethodNode m) {
+        for (int i = 0; i < m.tryCatchBlocks.size(); ++i) {
+            TryCatchBlockNode tcb = m.tryCatchBlocks.get(i);
+            int begin = insns.indexOf(tcb.start);
+            int end = insns.indexOf(tcb.end);
+            for (int j = begin; j < end; ++j) {
+                List<TryCatchBlockNode> insnHandlers = handlers[j];
+                if (insnHandlers == null) {
+                    insnHandlers = new ArrayList<TryCatchBlockNode>();
+                    handlers[j] = insnHandlers;
+                }
+                insnHandlers.add(tcb);
+            }
+        }
+    }
+
+    /**
+     * Returns the frame at the beginning of the given method.
+     * 
+     * @param owner
+     *            the internal name of the class to which the method belongs.
+     * @param m
+     *            the method to be analyzed.
+     * @return the frame at the beginning of the given method.
+     */
+    private Frame<V> newEntryFrame(final String owner, final MethodNode m) {
+        Frame<V> current = newFrame(m.maxLocals, m.maxStack);
         current.setReturn(interpreter.newValue(Type.getReturnType(m.desc)));
         Type[] args = Type.getArgumentTypes(m.desc);
         int local = 0;
@@ -174,16 +686,29 @@ public class Analyzer<V extends Value> implements Opcodes {
         while (local < m.maxLocals) {
             current.setLocal(local++, interpreter.newValue(null));
         }
-        merge(0, current, null);
-
-        init(owner, m);
+        return current;
+    }
 
-        // control flow analysis
+    /**
+     * Performs the control flow analysis, until the worklist is empty.
+     * 
+     * @param m
+     *            the method to be analyzed.
+     * @param current
+     *            a frame used to execute the instructions.
+     * @param handler
+     *            a frame used to compute the frames of exception handlers.
+     * @throws AnalyzerException
+     *             if a problem occurs during the analysis.
+     */
+    private void analyzeInstructions(final MethodNode m,
+            final Frame<V> current, final Frame<V> handler)
+            throws AnalyzerException {
         while (top > 0) {
-            int insn = queue[--top];
+            int insn = dequeue();
             Frame<V> f = frames[insn];
             Subroutine subroutine = subroutines[insn];
-            queued[insn] = false;
+            ++iterations;
 
             AbstractInsnNode insnNode = null;
             try {
@@ -298,8 +823,288 @@ public class Analyzer<V extends Value> implements Opcodes {
                         + insn + ": " + e.getMessage(), e);
             }
         }
+    }
+
+    /**
+     * Returns the instructions which begin a basic block in the given method.
+     * 
+     * @param m
+     *            a method.
+     * @return the instructions which begin a basic block in the given method,
+     *         or <tt>null</tt> if this method contains JSR instructions.
+     */
+    private boolean[] findBlockStarts(final MethodNode m) {
+        boolean[] starts = new boolean[n];
+        if (n > 0) {
+            starts[0] = true;
+        }
+        for (int i = 0; i < m.tryCatchBlocks.size(); ++i) {
+            starts[insns.indexOf(m.tryCatchBlocks.get(i).handler)] = true;
+        }
+        AbstractInsnNode insnNode = insns.getFirst();
+        for (int i = 0; i < n; ++i, insnNode = insnNode.getNext()) {
+            int insnOpcode = insnNode.getOpcode();
+            if (insnNode instanceof JumpInsnNode) {
+                if (insnOpcode == JSR) {
+                    return null;
+                }
+                starts[insns.indexOf(((JumpInsnNode) insnNode).label)] = true;
+            } else if (insnNode instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode lsi = (LookupSwitchInsnNode) insnNode;
+                starts[insns.indexOf(lsi.dflt)] = true;
+                for (int j = 0; j < lsi.labels.size(); ++j) {
+                    starts[insns.indexOf(lsi.labels.get(j))] = true;
+                }
+            } else if (insnNode instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode tsi = (TableSwitchInsnNode) insnNode;
+                starts[insns.indexOf(tsi.dflt)] = true;
+                for (int j = 0; j < tsi.labels.size(); ++j) {
+                    starts[insns.indexOf(tsi.labels.get(j))] = true;
+                }
+            } else if (insnOpcode != RET && insnOpcode != ATHROW
+                    && (insnOpcode < IRETURN || insnOpcode > RETURN)) {
+                continue;
+            }
+            if (i + 1 < n) {
+                starts[i + 1] = true;
+            }
+        }
+        return starts;
+    }
 
-        return frames;
+    /**
+     * Performs the control flow analysis by storing and merging frames only
+     * at the beginning of basic blocks. Each queued basic block is executed
+     * from its first to its last instruction, and the resulting frame is
+     * merged into the frames of its successors.
+     * 
+     * @param current
+     *            a frame used to execute the instructions.
+     * @param handler
+     *            a frame used to compute the frames of exception handlers.
+     * @throws AnalyzerException
+     *             if a problem occurs during the analysis.
+     */
+    private void analyzeBlocks(final Frame<V> current, final Frame<V> handler)
+            throws AnalyzerException {
+        while (top > 0) {
+            int insn = dequeue();
+            current.init(frames[insn]);
+            boolean endOfBlock = false;
+            while (!endOfBlock) {
+                AbstractInsnNode insnNode = null;
+                try {
+                    insnNode = insns.get(insn);
+                    int insnOpcode = insnNode.getOpcode();
+                    int insnType = insnNode.getType();
+
+                    List<TryCatchBlockNode> insnHandlers = handlers[insn];
+                    if (insnHandlers != null) {
+                        for (int i = 0; i < insnHandlers.size(); ++i) {
+                            TryCatchBlockNode tcb = insnHandlers.get(i);
+                            Type type;
+                            if (tcb.type == null) {
+                                type = Type.getObjectType("java/lang/Throwable");
+                            } else {
+                                type = Type.getObjectType(tcb.type);
+                            }
+                            int jump = insns.indexOf(tcb.handler);
+                            if (newControlFlowExceptionEdge(insn, tcb)) {
+                                handler.init(current);
+                                handler.clearStack();
+                                handler.push(interpreter.newValue(type));
+                                merge(jump, handler, null);
+                            }
+                        }
+                    }
+
+                    if (insnType != AbstractInsnNode.LABEL
+                            && insnType != AbstractInsnNode.LINE
+                            && insnType != AbstractInsnNode.FRAME) {
+                        current.execute(insnNode, interpreter);
+                    }
+                    ++iterations;
+
+                    endOfBlock = true;
+                    if (insnNode instanceof JumpInsnNode) {
+                        JumpInsnNode j = (JumpInsnNode) insnNode;
+                        if (insnOpcode != GOTO) {
+                            mergeNext(insn, current);
+                        }
+                        int jump = insns.indexOf(j.label);
+                        merge(jump, current, null);
+                        newControlFlowEdge(insn, jump);
+                    } else if (insnNode instanceof LookupSwitchInsnNode) {
+                        LookupSwitchInsnNode lsi = (LookupSwitchInsnNode) insnNode;
+                        int jump = insns.indexOf(lsi.dflt);
+                        merge(jump, current, null);
+                        newControlFlowEdge(insn, jump);
+                        for (int j = 0; j < lsi.labels.size(); ++j) {
+                            jump = insns.indexOf(lsi.labels.get(j));
+                            merge(jump, current, null);
+                            newControlFlowEdge(insn, jump);
+                        }
+                    } else if (insnNode instanceof TableSwitchInsnNode) {
+                        TableSwitchInsnNode tsi = (TableSwitchInsnNode) insnNode;
+                        int jump = insns.indexOf(tsi.dflt);
+                        merge(jump, current, null);
+                        newControlFlowEdge(insn, jump);
+                        for (int j = 0; j < tsi.labels.size(); ++j) {
+                            jump = insns.indexOf(tsi.labels.get(j));
+                            merge(jump, current, null);
+                            newControlFlowEdge(insn, jump);
+                        }
+                    } else if (insnOpcode == RET) {
+                        throw new AnalyzerException(insnNode,
+                                "RET instruction outside of a sub routine");
+                    } else if (insnOpcode != ATHROW
+                            && (insnOpcode < IRETURN || insnOpcode > RETURN)) {
+                        if (insn + 1 < n && !blockStarts[insn + 1]) {
+                            newControlFlowEdge(insn, insn + 1);
+                            endOfBlock = false;
+                            ++insn;
+                        } else {
+                            mergeNext(insn, current);
+                        }
+                    }
+                } catch (AnalyzerException e) {
+                    throw new AnalyzerException(e.node, "Error at instruction "
+                            + insn + ": " + e.getMessage(), e);
+                } catch (Exception e) {
+                    throw new AnalyzerException(insnNode,
+                            "Error at instruction " + insn + ": "
+                                    + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the given frame into the frame of the instruction following the
+     * given one, in the case of compact frames.
+     * 
+     * @param insn
+     *            an instruction index.
+     * @param frame
+     *            the frame after the execution of this instruction.
+     * @throws AnalyzerException
+     *             if execution can fall off the end of the code.
+     */
+    private void mergeNext(final int insn, final Frame<V> frame)
+            throws AnalyzerException {
+        if (insn + 1 >= n) {
+            throw new AnalyzerException(null,
+                    "Execution can fall off end of the code");
+        }
+        merge(insn + 1, frame, null);
+        newControlFlowEdge(insn, insn + 1);
+    }
+
+    /**
+     * Computes the worklist priority of each instruction, from the control
+     * flow graph of the method to be analyzed.
+     * 
+     * @param cfg
+     *            the control flow graph of the method to be analyzed.
+     * @return the worklist priority of each instruction of this method.
+     */
+    private int[] computePriorities(final ControlFlowGraph cfg) {
+        int[] rpo = cfg.getReversePostorder();
+        int[] blocks = new int[cfg.getBlockCount()];
+        if (worklistOrder == SCC_ORDER) {
+            // sorts the blocks by component, and in reverse postorder inside
+            // each component (counting sort)
+            int[] start = new int[rpo.length + 1];
+            for (int i = 0; i < rpo.length; ++i) {
+                ++start[cfg.getComponent(rpo[i]) + 1];
+            }
+            for (int i = 1; i < start.length; ++i) {
+                start[i] += start[i - 1];
+            }
+            for (int i = 0; i < rpo.length; ++i) {
+                blocks[start[cfg.getComponent(rpo[i])]++] = rpo[i];
+            }
+        } else {
+            System.arraycopy(rpo, 0, blocks, 0, rpo.length);
+        }
+        int[] p = new int[n];
+        int priority = 0;
+        for (int i = 0; i < rpo.length; ++i) {
+            int b = blocks[i];
+            for (int j = cfg.getBlockStart(b); j < cfg.getBlockEnd(b); ++j) {
+                p[j] = priority++;
+            }
+        }
+        // unreachable instructions are analyzed last (they should never be
+        // queued, except if the graph is less precise than the analysis)
+        for (int b = 0; b < blocks.length; ++b) {
+            if (!cfg.isReachable(b)) {
+                for (int j = cfg.getBlockStart(b); j < cfg.getBlockEnd(b); ++j) {
+                    p[j] = priority++;
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Adds the given instruction to the worklist.
+     * 
+     * @param insn
+     *            an instruction index which is not in the worklist.
+     */
+    private void enqueue(final int insn) {
+        queued[insn] = true;
+        if (priorities == null) {
+            queue[top++] = insn;
+            return;
+        }
+        int p = priorities[insn];
+        int i = top++;
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (priorities[queue[parent]] <= p) {
+                break;
+            }
+            queue[i] = queue[parent];
+            i = parent;
+        }
+        queue[i] = insn;
+    }
+
+    /**
+     * Removes the next instruction to be analyzed from the worklist.
+     * 
+     * @return the next instruction to be analyzed.
+     */
+    private int dequeue() {
+        int insn;
+        if (priorities == null) {
+            insn = queue[--top];
+        } else {
+            insn = queue[0];
+            int last = queue[--top];
+            int p = priorities[last];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= top) {
+                    break;
+                }
+                if (child + 1 < top
+                        && priorities[queue[child + 1]] < priorities[queue[child]]) {
+                    ++child;
+                }
+                if (p <= priorities[queue[child]]) {
+                    break;
+                }
+                queue[i] = queue[child];
+                i = child;
+            }
+            queue[i] = last;
+        }
+        queued[insn] = false;
+        return insn;
     }
 
     private void findSubroutine(int insn, final Subroutine sub,
@@ -377,12 +1182,89 @@ public class Analyzer<V extends Value> implements Opcodes {
      *         equal to the number of instructions (and labels) of the method. A
      *         given frame is <tt>null</tt> if the corresponding instruction
      *         cannot be reached, or if an error occured during the analysis of
-     *         the method.
+     *         the method. If compact frames are used, the frames which are not
+     *         at the beginning of a basic block are computed by this method.
      */
+    @SuppressWarnings("unchecked")
     public Frame<V>[] getFrames() {
+        if (blockStarts != null) {
+            Frame<V>[] all = (Frame<V>[]) new Frame<?>[n];
+            for (int i = 0; i < n; ++i) {
+                if (!blockStarts[i] || frames[i] == null) {
+                    continue;
+                }
+                all[i] = frames[i];
+                Frame<V> f = newFrame(frames[i]);
+                for (int j = i + 1; j < n && !blockStarts[j]; ++j) {
+                    try {
+                        execute(f, j - 1);
+                    } catch (AnalyzerException e) {
+                        break;
+                    }
+                    all[j] = newFrame(f);
+                }
+            }
+            frames = all;
+            blockStarts = null;
+        }
         return frames;
     }
 
+    /**
+     * Returns the symbolic stack frame of the given instruction of the last
+     * recently analyzed method. If compact frames are used and if this
+     * instruction does not begin a basic block, this frame is recomputed from
+     * the frame at the beginning of its basic block.
+     * 
+     * @param insn
+     *            the index of an instruction of the last recently analyzed
+     *            method.
+     * @return the symbolic state of the execution stack frame before this
+     *         instruction is executed, or <tt>null</tt> if this instruction
+     *         cannot be reached.
+     * @throws AnalyzerException
+     *             if a problem occurs while recomputing this frame.
+     */
+    public Frame<V> getFrame(final int insn) throws AnalyzerException {
+        if (blockStarts == null || blockStarts[insn]) {
+            return frames[insn];
+        }
+        int start = insn;
+        while (!blockStarts[start]) {
+            --start;
+        }
+        if (frames[start] == null) {
+            return null;
+        }
+        Frame<V> f = newFrame(frames[start]);
+        for (int i = start; i < insn; ++i) {
+            execute(f, i);
+        }
+        return f;
+    }
+
+    /**
+     * Executes the given instruction, if it is not a pseudo instruction.
+     * 
+     * @param f
+     *            the frame in which the instruction must be executed.
+     * @param insn
+     *            the index of an instruction of the last recently analyzed
+     *            method.
+     * @throws AnalyzerException
+     *             if a problem occurs during the execution.
+     */
+    private void execute(final Frame<V> f, final int insn)
+            throws AnalyzerException {
+        AbstractInsnNode insnNode = insns.get(insn);
+        int insnType = insnNode.getType();
+        if (insnType != AbstractInsnNode.LABEL
+                && insnType != AbstractInsnNode.LINE
+                && insnType != AbstractInsnNode.FRAME) {
+            f.execute(insnNode, interpreter);
+        }
+    }
+
     /**
      * Returns the exception handlers for the given instruction.
      * 
@@ -518,8 +1400,7 @@ public class Analyzer<V extends Value> implements Opcodes {
             }
         }
         if (changes && !queued[insn]) {
-            queued[insn] = true;
-            queue[top++] = insn;
+            enqueue(insn);
         }
     }
 
@@ -543,8 +1424,7 @@ public class Analyzer<V extends Value> implements Opcodes {
             changes |= oldSubroutine.merge(subroutineBeforeJSR);
         }
         if (changes && !queued[insn]) {
-            queued[insn] = true;
-            queue[top++] = insn;
+            enqueue(insn);
         }
     }
 }
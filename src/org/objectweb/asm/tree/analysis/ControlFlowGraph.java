@@ -0,0 +1,871 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tree.analysis;
+
+import java.util.List;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+
+/**
+ * The control flow graph of a method, made of basic blocks. A basic block is a
+ * maximal sequence of consecutive instructions which can only be entered by
+ * its first instruction and which does not contain any jump, except for its
+ * last instruction. Basic blocks also begin at the start and end labels of
+ * try catch blocks, so that all the instructions of a basic block are covered
+ * by the same exception handlers. Basic blocks are numbered in the order of
+ * their first instruction, the block 0 being the entry block of the method.
+ *
+ * <p>
+ * The successors of a block are the blocks of its jump targets, the block
+ * which follows it (if the execution can continue after its last
+ * instruction), and the exception handlers which cover it. A RET instruction
+ * is approximated by edges to the instructions following all the JSR
+ * instructions of the method. The adjacency lists, the reverse postorder, the
+ * dominator tree and the loops are all stored in int arrays, and are computed
+ * once, in the constructor.
+ *
+ * <p>
+ * The dominator tree is computed with the algorithm of Cooper, Harvey and
+ * Kennedy ("A Simple, Fast Dominance Algorithm"). Loops are the natural loops
+ * of the back edges of the graph, i.e. of the edges whose target dominates
+ * their source. Irreducible loops, which do not have such a back edge, are
+ * not detected as loops. The strongly connected components of the graph, which
+ * include the irreducible loops, are also computed.
+ */
+public class ControlFlowGraph implements Opcodes {
+
+    /**
+     * The number of basic blocks.
+     */
+    private int nBlocks;
+
+    /**
+     * The index of the first instruction of each basic block, plus a last
+     * element equal to the number of instructions.
+     */
+    private int[] blockStart;
+
+    /**
+     * The basic block of each instruction.
+     */
+    private int[] insnBlock;
+
+    /**
+     * The successors of block b are succ[succStart[b]..succStart[b+1]-1].
+     */
+    private int[] succStart;
+
+    private int[] succ;
+
+    /**
+     * The predecessors of block b are pred[predStart[b]..predStart[b+1]-1].
+     */
+    private int[] predStart;
+
+    private int[] pred;
+
+    /**
+     * The reachable basic blocks, in reverse postorder.
+     */
+    private int[] rpo;
+
+    /**
+     * The index of each basic block in {@link #rpo}, or -1 for unreachable
+     * blocks.
+     */
+    private int[] rpoNumber;
+
+    /**
+     * The strongly connected component of each basic block, or -1 for
+     * unreachable blocks. The components are numbered in topological order.
+     */
+    private int[] component;
+
+    /**
+     * The immediate dominator of each basic block, or -1 for the entry block
+     * and for unreachable blocks.
+     */
+    private int[] idom;
+
+    /**
+     * The preorder and postorder numbers of each basic block in the dominator
+     * tree, used to test dominance in constant time.
+     */
+    private int[] domPre;
+
+    private int[] domPost;
+
+    /**
+     * The header of the innermost loop containing each basic block, or -1 if
+     * the block is not in a loop.
+     */
+    private int[] loopHeader;
+
+    /**
+     * The loop nesting depth of each basic block.
+     */
+    private int[] loopDepth;
+
+    /**
+     * Constructs the control flow graph of the given method.
+     *
+     * @param m
+     *            a method.
+     */
+    public ControlFlowGraph(final MethodNode m) {
+        this(m.instructions, m.tryCatchBlocks);
+    }
+
+    /**
+     * Constructs the control flow graph of the given instructions.
+     *
+     * @param insns
+     *            the instructions of a method.
+     * @param tryCatchBlocks
+     *            the try catch blocks of this method.
+     */
+    public ControlFlowGraph(final InsnList insns,
+            final List<TryCatchBlockNode> tryCatchBlocks) {
+        AbstractInsnNode[] insnArray = insns.toArray();
+        findBlocks(insns, insnArray, tryCatchBlocks);
+        findEdges(insns, insnArray, tryCatchBlocks);
+        findReversePostorder();
+        findComponents();
+        findDominators();
+        findLoops();
+    }
+
+    // ------------------------------------------------------------------------
+    // Accessors
+    // ------------------------------------------------------------------------
+
+    /**
+     * Returns the number of basic blocks of this graph.
+     *
+     * @return the number of basic blocks of this graph.
+     */
+    public int getBlockCount() {
+        return nBlocks;
+    }
+
+    /**
+     * Returns the index of the first instruction of the given basic block.
+     *
+     * @param block
+     *            a basic block.
+     * @return the index of the first instruction of the given basic block.
+     */
+    public int getBlockStart(final int block) {
+        return blockStart[block];
+    }
+
+    /**
+     * Returns the index of the instruction following the last instruction of
+     * the given basic block.
+     *
+     * @param block
+     *            a basic block.
+     * @return the index of the last instruction of the given basic block,
+     *         plus one.
+     */
+    public int getBlockEnd(final int block) {
+        return blockStart[block + 1];
+    }
+
+    /**
+     * Returns the basic block containing the given instruction.
+     *
+     * @param insn
+     *            the index of an instruction.
+     * @return the basic block containing this instruction.
+     */
+    public int getBlock(final int insn) {
+        return insnBlock[insn];
+    }
+
+    /**
+     * Returns the number of successors of the given basic block.
+     *
+     * @param block
+     *            a basic block.
+     * @return the number of successors of the given basic block.
+     */
+    public int getSuccessorCount(final int block) {
+        return succStart[block + 1] - succStart[block];
+    }
+
+    /**
+     * Returns a successor of the given basic block.
+     *
+     * @param block
+     *            a basic block.
+     * @param i
+     *            the index of the successor, between 0 and
+     *            {@link #getSuccessorCount getSuccessorCount(block)} - 1.
+     * @return the i-th successor of the given basic block.
+     */
+    public int getSuccessor(final int block, final int i) {
+        return succ[succStart[block] + i];
+    }
+
+    /**
+     * Returns the number of predecessors of the given basic block.
+     *
+     * @param block
+     *            a basic block.
+     * @return the number of predecessors of the given basic block.
+     */
+    public int getPredecessorCount(final int block) {
+        return predStart[block + 1] - predStart[block];
+    }
+
+    /**
+     * Returns a predecessor of the given basic block.
+     *
+     * @param block
+     *            a basic block.
+     * @param i
+     *            the index of the predecessor, between 0 and
+     *            {@link #getPredecessorCount getPredecessorCount(block)} - 1.
+     * @return the i-th predecessor of the given basic block.
+     */
+    public int getPredecessor(final int block, final int i) {
+        return pred[predStart[block] + i];
+    }
+
+    /**
+     * Returns the reachable basic blocks in reverse postorder. In this order
+     * a block comes before its successors, except for back edges.
+     *
+     * @return the reachable basic blocks in reverse postorder. This array
+     *         must not be modified.
+     */
+    public int[] getReversePostorder() {
+        return rpo;
+    }
+
+    /**
+     * Returns the index of the given basic block in the reverse postorder.
+     *
+     * @param block
+     *            a basic block.
+     * @return the index of the given block in {@link #getReversePostorder},
+     *         or -1 if this block is not reachable.
+     */
+    public int getReversePostorderNumber(final int block) {
+        return rpoNumber[block];
+    }
+
+    /**
+     * Returns whether the given basic block can be reached from the entry
+     * block.
+     *
+     * @param block
+     *            a basic block.
+     * @return <tt>true</tt> if the given basic block is reachable.
+     */
+    public boolean isReachable(final int block) {
+        return rpoNumber[block] != -1;
+    }
+
+    /**
+     * Returns the strongly connected component of the given basic block. The
+     * components are numbered in topological order, i.e. an edge between two
+     * blocks of different components always goes from a component to a
+     * component with a greater number.
+     *
+     * @param block
+     *            a basic block.
+     * @return the index of the strongly connected component containing the
+     *         given block, or -1 if this block is not reachable.
+     */
+    public int getComponent(final int block) {
+        return component[block];
+    }
+
+    /**
+     * Returns the immediate dominator of the given basic block.
+     *
+     * @param block
+     *            a basic block.
+     * @return the immediate dominator of the given basic block, or -1 if it is
+     *         the entry block or if it is not reachable.
+     */
+    public int getImmediateDominator(final int block) {
+        return idom[block];
+    }
+
+    /**
+     * Returns whether a basic block dominates another one, i.e. if all the
+     * paths from the entry block to the second block go through the first
+     * one. A block dominates itself.
+     *
+     * @param block1
+     *            a basic block.
+     * @param block2
+     *            another basic block.
+     * @return <tt>true</tt> if both blocks are reachable and if block1
+     *         dominates block2.
+     */
+    public boolean dominates(final int block1, final int block2) {
+        return rpoNumber[block1] != -1 && rpoNumber[block2] != -1
+                && domPre[block1] <= domPre[block2]
+                && domPost[block2] <= domPost[block1];
+    }
+
+    /**
+     * Returns whether the given basic block is the header of a loop.
+     *
+     * @param block
+     *            a basic block.
+     * @return <tt>true</tt> if the given basic block is the target of a back
+     *         edge.
+     */
+    public boolean isLoopHeader(final int block) {
+        return loopHeader[block] == block;
+    }
+
+    /**
+     * Returns the header of the innermost loop containing the given block.
+     *
+     * @param block
+     *            a basic block.
+     * @return the header of the innermost loop containing the given block
+     *         (which is the block itself if it is a loop header), or -1 if
+     *         this block is not in a loop.
+     */
+    public int getLoopHeader(final int block) {
+        return loopHeader[block];
+    }
+
+    /**
+     * Returns the loop nesting depth of the given basic block.
+     *
+     * @param block
+     *            a basic block.
+     * @return the number of loops containing the given basic block.
+     */
+    public int getLoopDepth(final int block) {
+        return loopDepth[block];
+    }
+
+    // ------------------------------------------------------------------------
+    // Graph construction
+    // ------------------------------------------------------------------------
+
+    /**
+     * Computes the basic blocks of the given instructions.
+     */
+    private void findBlocks(final InsnList insns,
+            final AbstractInsnNode[] insnArray,
+            final List<TryCatchBlockNode> tryCatchBlocks) {
+        int n = insnArray.length;
+        boolean[] starts = new boolean[n + 1];
+        starts[0] = true;
+        for (int i = 0; i < tryCatchBlocks.size(); ++i) {
+            TryCatchBlockNode tcb = tryCatchBlocks.get(i);
+            starts[insns.indexOf(tcb.start)] = true;
+            starts[insns.indexOf(tcb.end)] = true;
+            starts[insns.indexOf(tcb.handler)] = true;
+        }
+        for (int i = 0; i < n; ++i) {
+            AbstractInsnNode insn = insnArray[i];
+            if (insn instanceof JumpInsnNode) {
+                starts[insns.indexOf(((JumpInsnNode) insn).label)] = true;
+            } else if (insn instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode lsi = (LookupSwitchInsnNode) insn;
+                starts[insns.indexOf(lsi.dflt)] = true;
+                for (int j = 0; j < lsi.labels.size(); ++j) {
+                    starts[insns.indexOf(lsi.labels.get(j))] = true;
+                }
+            } else if (insn instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode tsi = (TableSwitchInsnNode) insn;
+                starts[insns.indexOf(tsi.dflt)] = true;
+                for (int j = 0; j < tsi.labels.size(); ++j) {
+                    starts[insns.indexOf(tsi.labels.get(j))] = true;
+                }
+            } else if (!isEndOfBlock(insn.getOpcode())) {
+                continue;
+            }
+            starts[i + 1] = true;
+        }
+        nBlocks = 0;
+        for (int i = 0; i < n; ++i) {
+            if (starts[i]) {
+                ++nBlocks;
+            }
+        }
+        blockStart = new int[nBlocks + 1];
+        insnBlock = new int[n];
+        int b = -1;
+        for (int i = 0; i < n; ++i) {
+            if (starts[i]) {
+                blockStart[++b] = i;
+            }
+            insnBlock[i] = b;
+        }
+        blockStart[nBlocks] = n;
+    }
+
+    /**
+     * Computes the successors and predecessors of the basic blocks.
+     */
+    private void findEdges(final InsnList insns,
+            final AbstractInsnNode[] insnArray,
+            final List<TryCatchBlockNode> tryCatchBlocks) {
+        EdgeList edges = new EdgeList(nBlocks);
+
+        // the targets of RET instructions
+        int[] returns = new int[insnArray.length];
+        int nReturns = 0;
+        for (int i = 0; i < insnArray.length; ++i) {
+            if (insnArray[i].getOpcode() == JSR && i + 1 < insnArray.length) {
+                returns[nReturns++] = insnBlock[i + 1];
+            }
+        }
+
+        for (int b = 0; b < nBlocks; ++b) {
+            int last = blockStart[b + 1] - 1;
+            AbstractInsnNode insn = insnArray[last];
+            int opcode = insn.getOpcode();
+            if (insn instanceof JumpInsnNode) {
+                edges.add(b, insnBlock[insns.indexOf(((JumpInsnNode) insn).label)]);
+                if (opcode != GOTO && last + 1 < insnArray.length) {
+                    edges.add(b, b + 1);
+                }
+            } else if (insn instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode lsi = (LookupSwitchInsnNode) insn;
+                edges.add(b, insnBlock[insns.indexOf(lsi.dflt)]);
+                for (int j = 0; j < lsi.labels.size(); ++j) {
+                    edges.add(b, insnBlock[insns.indexOf(lsi.labels.get(j))]);
+                }
+            } else if (insn instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode tsi = (TableSwitchInsnNode) insn;
+                edges.add(b, insnBlock[insns.indexOf(tsi.dflt)]);
+                for (int j = 0; j < tsi.labels.size(); ++j) {
+                    edges.add(b, insnBlock[insns.indexOf(tsi.labels.get(j))]);
+                }
+            } else if (opcode == RET) {
+                for (int j = 0; j < nReturns; ++j) {
+                    edges.add(b, returns[j]);
+                }
+            } else if (!isEndOfBlock(opcode) && last + 1 < insnArray.length) {
+                edges.add(b, b + 1);
+            }
+        }
+        for (int i = 0; i < tryCatchBlocks.size(); ++i) {
+            TryCatchBlockNode tcb = tryCatchBlocks.get(i);
+            int handler = insnBlock[insns.indexOf(tcb.handler)];
+            int end = insns.indexOf(tcb.end);
+            int j = insns.indexOf(tcb.start);
+            while (j < end) {
+                edges.add(insnBlock[j], handler);
+                j = blockStart[insnBlock[j] + 1];
+            }
+        }
+
+        // stores the successors in compressed arrays, without duplicates
+        int[] start = new int[nBlocks + 1];
+        int[] targets = edges.sort(start);
+        int[] last = new int[nBlocks];
+        for (int b = 0; b < nBlocks; ++b) {
+            last[b] = -1;
+        }
+        succStart = new int[nBlocks + 1];
+        int nEdges = 0;
+        for (int b = 0; b < nBlocks; ++b) {
+            succStart[b] = nEdges;
+            for (int i = start[b]; i < start[b + 1]; ++i) {
+                int t = targets[i];
+                if (last[t] != b) {
+                    last[t] = b;
+                    targets[nEdges++] = t;
+                }
+            }
+        }
+        succStart[nBlocks] = nEdges;
+        succ = new int[nEdges];
+        System.arraycopy(targets, 0, succ, 0, nEdges);
+
+        // computes the predecessors from the successors
+        predStart = new int[nBlocks + 1];
+        for (int i = 0; i < nEdges; ++i) {
+            ++predStart[succ[i] + 1];
+        }
+        for (int b = 0; b < nBlocks; ++b) {
+            predStart[b + 1] += predStart[b];
+        }
+        pred = new int[nEdges];
+        int[] predPos = new int[nBlocks];
+        System.arraycopy(predStart, 0, predPos, 0, nBlocks);
+        for (int b = 0; b < nBlocks; ++b) {
+            for (int i = succStart[b]; i < succStart[b + 1]; ++i) {
+                pred[predPos[succ[i]]++] = b;
+            }
+        }
+    }
+
+    /**
+     * Computes the reverse postorder of the reachable basic blocks, with an
+     * iterative depth first search.
+     */
+    private void findReversePostorder() {
+        rpoNumber = new int[nBlocks];
+        for (int b = 0; b < nBlocks; ++b) {
+            rpoNumber[b] = -1;
+        }
+        int[] postorder = new int[nBlocks];
+        int count = 0;
+        if (nBlocks > 0) {
+            // rpoNumber is used as a "visited" marker during the search
+            int[] stack = new int[nBlocks];
+            int[] next = new int[nBlocks];
+            int top = 0;
+            stack[top++] = 0;
+            rpoNumber[0] = 0;
+            while (top > 0) {
+                int b = stack[top - 1];
+                if (next[b] < getSuccessorCount(b)) {
+                    int s = getSuccessor(b, next[b]++);
+                    if (rpoNumber[s] == -1) {
+                        rpoNumber[s] = 0;
+                        stack[top++] = s;
+                    }
+                } else {
+                    postorder[count++] = b;
+                    --top;
+                }
+            }
+        }
+        rpo = new int[count];
+        for (int i = 0; i < count; ++i) {
+            int b = postorder[count - 1 - i];
+            rpo[i] = b;
+            rpoNumber[b] = i;
+        }
+    }
+
+    /**
+     * Computes the strongly connected components of the reachable blocks,
+     * with an iterative version of Tarjan's algorithm.
+     */
+    private void findComponents() {
+        component = new int[nBlocks];
+        for (int b = 0; b < nBlocks; ++b) {
+            component[b] = -1;
+        }
+        if (rpo.length == 0) {
+            return;
+        }
+        int[] index = new int[nBlocks];
+        int[] low = new int[nBlocks];
+        int[] next = new int[nBlocks];
+        boolean[] onStack = new boolean[nBlocks];
+        int[] stack = new int[nBlocks];
+        int[] calls = new int[nBlocks];
+        int top = 0;
+        int nCalls = 0;
+        int counter = 1;
+        int nComponents = 0;
+        index[0] = low[0] = counter++;
+        stack[top++] = 0;
+        onStack[0] = true;
+        calls[nCalls++] = 0;
+        while (nCalls > 0) {
+            int b = calls[nCalls - 1];
+            if (next[b] < getSuccessorCount(b)) {
+                int s = getSuccessor(b, next[b]++);
+                if (index[s] == 0) {
+                    index[s] = low[s] = counter++;
+                    stack[top++] = s;
+                    onStack[s] = true;
+                    calls[nCalls++] = s;
+                } else if (onStack[s] && index[s] < low[b]) {
+                    low[b] = index[s];
+                }
+            } else {
+                --nCalls;
+                if (low[b] == index[b]) {
+                    int s;
+                    do {
+                        s = stack[--top];
+                        onStack[s] = false;
+                        component[s] = nComponents;
+                    } while (s != b);
+                    ++nComponents;
+                }
+                if (nCalls > 0) {
+                    int c = calls[nCalls - 1];
+                    if (low[b] < low[c]) {
+                        low[c] = low[b];
+                    }
+                }
+            }
+        }
+        // Tarjan's algorithm finds the components in reverse topological order
+        for (int b = 0; b < nBlocks; ++b) {
+            if (component[b] != -1) {
+                component[b] = nComponents - 1 - component[b];
+            }
+        }
+    }
+
+    /**
+     * Computes the dominator tree with the Cooper, Harvey and Kennedy
+     * algorithm, and numbers its nodes to test dominance in constant time.
+     */
+    private void findDominators() {
+        idom = new int[nBlocks];
+        for (int b = 0; b < nBlocks; ++b) {
+            idom[b] = -1;
+        }
+        if (rpo.length == 0) {
+            domPre = domPost = new int[nBlocks];
+            return;
+        }
+        idom[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < rpo.length; ++i) {
+                int b = rpo[i];
+                int newIdom = -1;
+                for (int j = predStart[b]; j < predStart[b + 1]; ++j) {
+                    int p = pred[j];
+                    if (idom[p] != -1) {
+                        newIdom = newIdom == -1 ? p : intersect(p, newIdom);
+                    }
+                }
+                if (idom[b] != newIdom) {
+                    idom[b] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        idom[0] = -1;
+
+        // numbers the dominator tree nodes in preorder and postorder
+        int[] childStart = new int[nBlocks + 1];
+        for (int i = 1; i < rpo.length; ++i) {
+            ++childStart[idom[rpo[i]] + 1];
+        }
+        for (int b = 0; b < nBlocks; ++b) {
+            childStart[b + 1] += childStart[b];
+        }
+        int[] children = new int[rpo.length];
+        int[] childPos = new int[nBlocks];
+        System.arraycopy(childStart, 0, childPos, 0, nBlocks);
+        for (int i = 1; i < rpo.length; ++i) {
+            int b = rpo[i];
+            children[childPos[idom[b]]++] = b;
+        }
+        domPre = new int[nBlocks];
+        domPost = new int[nBlocks];
+        int[] stack = new int[nBlocks];
+        int[] next = new int[nBlocks];
+        int pre = 0;
+        int post = 0;
+        int top = 0;
+        stack[top++] = 0;
+        domPre[0] = pre++;
+        while (top > 0) {
+            int b = stack[top - 1];
+            if (childStart[b] + next[b] < childStart[b + 1]) {
+                int c = children[childStart[b] + next[b]++];
+                domPre[c] = pre++;
+                stack[top++] = c;
+            } else {
+                domPost[b] = post++;
+                --top;
+            }
+        }
+    }
+
+    /**
+     * Returns the nearest common dominator of two blocks, using the current
+     * approximation of the dominator tree.
+     */
+    private int intersect(int b1, int b2) {
+        while (b1 != b2) {
+            while (rpoNumber[b1] > rpoNumber[b2]) {
+                b1 = idom[b1];
+            }
+            while (rpoNumber[b2] > rpoNumber[b1]) {
+                b2 = idom[b2];
+            }
+        }
+        return b1;
+    }
+
+    /**
+     * Computes the natural loops and the loop nesting depth of each block.
+     * The loop headers are processed in decreasing reverse postorder, so that
+     * inner loops are found before the loops which contain them.
+     */
+    private void findLoops() {
+        loopHeader = new int[nBlocks];
+        loopDepth = new int[nBlocks];
+        int[] loopParent = new int[nBlocks];
+        for (int b = 0; b < nBlocks; ++b) {
+            loopHeader[b] = -1;
+            loopParent[b] = -1;
+        }
+        int[] work = new int[nBlocks];
+        int[] body = new int[nBlocks];
+        boolean[] inLoop = new boolean[nBlocks];
+        for (int i = rpo.length - 1; i >= 0; --i) {
+            int h = rpo[i];
+            int top = 0;
+            int size = 0;
+            inLoop[h] = true;
+            for (int j = predStart[h]; j < predStart[h + 1]; ++j) {
+                int p = pred[j];
+                if (!inLoop[p] && dominates(h, p)) {
+                    inLoop[p] = true;
+                    work[top++] = p;
+                }
+            }
+            if (top == 0 && !isSelfLoop(h)) {
+                inLoop[h] = false;
+                continue;
+            }
+            // finds the blocks of the loop by walking backward from the back
+            // edge sources up to the loop header
+            loopHeader[h] = h;
+            while (top > 0) {
+                int b = work[--top];
+                body[size++] = b;
+                if (loopHeader[b] == -1) {
+                    loopHeader[b] = h;
+                } else {
+                    // b is in an inner loop, which is nested in this loop
+                    int inner = loopHeader[b];
+                    while (loopParent[inner] != -1) {
+                        inner = loopParent[inner];
+                    }
+                    if (inner != h) {
+                        loopParent[inner] = h;
+                    }
+                }
+                for (int j = predStart[b]; j < predStart[b + 1]; ++j) {
+                    int p = pred[j];
+                    if (!inLoop[p] && isReachable(p)) {
+                        inLoop[p] = true;
+                        work[top++] = p;
+                    }
+                }
+            }
+            for (int j = 0; j < size; ++j) {
+                inLoop[body[j]] = false;
+            }
+            inLoop[h] = false;
+        }
+        for (int b = 0; b < nBlocks; ++b) {
+            int depth = 0;
+            for (int h = loopHeader[b]; h != -1; h = loopParent[h]) {
+                ++depth;
+            }
+            loopDepth[b] = depth;
+        }
+    }
+
+    private boolean isSelfLoop(final int block) {
+        for (int i = succStart[block]; i < succStart[block + 1]; ++i) {
+            if (succ[i] == block) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEndOfBlock(final int opcode) {
+        return opcode == RET || opcode == ATHROW
+                || (opcode >= IRETURN && opcode <= RETURN);
+    }
+
+    /**
+     * A list of edges, stored in two int arrays.
+     */
+    private static final class EdgeList {
+
+        int[] sources;
+
+        int[] targets;
+
+        int size;
+
+        EdgeList(final int capacity) {
+            sources = new int[Math.max(capacity, 1)];
+            targets = new int[Math.max(capacity, 1)];
+        }
+
+        void add(final int source, final int target) {
+            if (size == sources.length) {
+                int[] s = new int[2 * size];
+                int[] t = new int[2 * size];
+                System.arraycopy(sources, 0, s, 0, size);
+                System.arraycopy(targets, 0, t, 0, size);
+                sources = s;
+                targets = t;
+            }
+            sources[size] = source;
+            targets[size] = target;
+            ++size;
+        }
+
+        /**
+         * Returns the targets of the edges sorted by source. The targets of
+         * the edges of source b are stored in the returned array between the
+         * indices start[b] (inclusive) and start[b+1] (exclusive).
+         */
+        int[] sort(final int[] start) {
+            for (int i = 0; i < size; ++i) {
+                ++start[sources[i] + 1];
+            }
+            for (int b = 1; b < start.length; ++b) {
+                start[b] += start[b - 1];
+            }
+            int[] pos = new int[start.length];
+            System.arraycopy(start, 0, pos, 0, start.length);
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; ++i) {
+                sorted[pos[sources[i]]++] = targets[i];
+            }
+            return sorted;
+        }
+    }
+}
@@ -34,6 +34,7 @@ import java.util.List;
 
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
+import org.objectweb.asm.TypeCache;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.IincInsnNode;
 import org.objectweb.asm.tree.InvokeDynamicInsnNode;
@@ -61,10 +62,25 @@ public class Frame<V extends Value> {
     private V returnValue;
 
     /**
-     * The local variables and operand stack of this frame.
+     * The local variables of this frame. This array can be shared with other
+     * frames (see {@link #shared}), in which case it must be copied before
+     * being modified. Frames which only differ by their operand stack, which
+     * is very common for consecutive instructions, can thus share their local
+     * variables, which saves a lot of memory for methods with many local
+     * variables.
      */
     private V[] values;
 
+    /**
+     * Whether {@link #values} may be shared with other frames.
+     */
+    private boolean shared;
+
+    /**
+     * The operand stack of this frame.
+     */
+    private V[] stack;
+
     /**
      * The number of local variables of this frame.
      */
@@ -85,7 +101,8 @@ public class Frame<V extends Value> {
      */
     @SuppressWarnings("unchecked")
     public Frame(final int nLocals, final int nStack) {
-        this.values = (V[]) new Value[nLocals + nStack];
+        this.values = (V[]) new Value[nLocals];
+        this.stack = (V[]) new Value[nStack];
         this.locals = nLocals;
     }
 
@@ -96,7 +113,7 @@ public class Frame<V extends Value> {
      *            a frame.
      */
     public Frame(final Frame<? extends V> src) {
-        this(src.locals, src.values.length - src.locals);
+        this(0, src.stack.length);
         init(src);
     }
 
@@ -107,9 +124,19 @@ public class Frame<V extends Value> {
      *            a frame.
      * @return this frame.
      */
+    @SuppressWarnings("unchecked")
     public Frame<V> init(final Frame<? extends V> src) {
         returnValue = src.returnValue;
-        System.arraycopy(src.values, 0, values, 0, values.length);
+        // the local variables are shared, and copied only if one of the two
+        // frames is modified (see setLocal)
+        values = src.values;
+        locals = src.locals;
+        shared = true;
+        src.shared = true;
+        if (stack.length != src.stack.length) {
+            stack = (V[]) new Value[src.stack.length];
+        }
+        System.arraycopy(src.stack, 0, stack, 0, src.top);
         top = src.top;
         return this;
     }
@@ -140,7 +167,7 @@ public class Frame<V extends Value> {
      * @return the maximum stack size of this frame.
      */
     public int getMaxStackSize() {
-        return values.length - locals;
+        return stack.length;
     }
     
     /**
@@ -176,7 +203,12 @@ public class Frame<V extends Value> {
             throw new IndexOutOfBoundsException(
                     "Trying to access an inexistant local variable " + i);
         }
-        values[i] = value;
+        if (values[i] != value) {
+            if (shared) {
+                copyValues();
+            }
+            values[i] = value;
+        }
     }
 
     /**
@@ -199,7 +231,7 @@ public class Frame<V extends Value> {
      *             if the operand stack slot does not exist.
      */
     public V getStack(final int i) throws IndexOutOfBoundsException {
-        return values[i + locals];
+        return stack[i];
     }
 
     /**
@@ -221,7 +253,7 @@ public class Frame<V extends Value> {
             throw new IndexOutOfBoundsException(
                     "Cannot pop operand off an empty stack.");
         }
-        return values[--top + locals];
+        return stack[--top];
     }
 
     /**
@@ -233,11 +265,11 @@ public class Frame<V extends Value> {
      *             if the operand stack is full.
      */
     public void push(final V value) throws IndexOutOfBoundsException {
-        if (top + locals >= values.length) {
+        if (top >= stack.length) {
             throw new IndexOutOfBoundsException(
                     "Insufficient maximum stack size.");
         }
-        values[top++ + locals] = value;
+        stack[top++] = value;
     }
 
     public void execute(final AbstractInsnNode insn,
@@ -608,13 +640,14 @@ public class Frame<V extends Value> {
         case Opcodes.INVOKEINTERFACE: {
             values = new ArrayList<V>();
             String desc = ((MethodInsnNode) insn).desc;
-            for (int i = Type.getArgumentTypes(desc).length; i > 0; --i) {
+            TypeCache cache = TypeCache.getShared();
+            for (int i = cache.getArgumentTypes(desc).length; i > 0; --i) {
                 values.add(0, pop());
             }
             if (insn.getOpcode() != Opcodes.INVOKESTATIC) {
                 values.add(0, pop());
             }
-            if (Type.getReturnType(desc) == Type.VOID_TYPE) {
+            if (cache.getReturnType(desc) == Type.VOID_TYPE) {
                 interpreter.naryOperation(insn, values);
             } else {
                 push(interpreter.naryOperation(insn, values));
@@ -624,10 +657,11 @@ public class Frame<V extends Value> {
         case Opcodes.INVOKEDYNAMIC: {
             values = new ArrayList<V>();
             String desc = ((InvokeDynamicInsnNode) insn).desc;
-            for (int i = Type.getArgumentTypes(desc).length; i > 0; --i) {
+            TypeCache cache = TypeCache.getShared();
+            for (int i = cache.getArgumentTypes(desc).length; i > 0; --i) {
                 values.add(0, pop());
             }
-            if (Type.getReturnType(desc) == Type.VOID_TYPE) {
+            if (cache.getReturnType(desc) == Type.VOID_TYPE) {
                 interpreter.naryOperation(insn, values);
             } else {
                 push(interpreter.naryOperation(insn, values));
@@ -687,10 +721,23 @@ public class Frame<V extends Value> {
             throw new AnalyzerException(null, "Incompatible stack heights");
         }
         boolean changes = false;
-        for (int i = 0; i < locals + top; ++i) {
-            V v = interpreter.merge(values[i], frame.values[i]);
-            if (!v.equals(values[i])) {
-                values[i] = v;
+        // if the local variables are shared, merging them is a no-op
+        if (values != frame.values) {
+            for (int i = 0; i < locals; ++i) {
+                V v = interpreter.merge(values[i], frame.values[i]);
+                if (!v.equals(values[i])) {
+                    if (shared) {
+                        copyValues();
+                    }
+                    values[i] = v;
+                    changes = true;
+                }
+            }
+        }
+        for (int i = 0; i < top; ++i) {
+            V v = interpreter.merge(stack[i], frame.stack[i]);
+            if (!v.equals(stack[i])) {
+                stack[i] = v;
                 changes = true;
             }
         }
@@ -712,6 +759,9 @@ public class Frame<V extends Value> {
         boolean changes = false;
         for (int i = 0; i < locals; ++i) {
             if (!access[i] && !values[i].equals(frame.values[i])) {
+                if (shared) {
+                    copyValues();
+                }
                 values[i] = frame.values[i];
                 changes = true;
             }
@@ -719,6 +769,18 @@ public class Frame<V extends Value> {
         return changes;
     }
 
+    /**
+     * Replaces the shared local variables array of this frame with a copy, so
+     * that it can be modified without modifying other frames.
+     */
+    @SuppressWarnings("unchecked")
+    private void copyValues() {
+        V[] newValues = (V[]) new Value[locals];
+        System.arraycopy(values, 0, newValues, 0, locals);
+        values = newValues;
+        shared = false;
+    }
+
     /**
      * Returns a string representation of this frame.
      * 
@@ -0,0 +1,468 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tree.analysis;
+
+import java.util.List;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+/**
+ * A live variable analysis. A local variable is live at some point of a
+ * method if its current value can be read by an instruction executed later.
+ * This backward data flow analysis is solved at the basic block level, on the
+ * {@link ControlFlowGraph} of the method, with one bitset (an array of longs)
+ * per block. The live variables before and after each instruction are then
+ * recomputed on demand from the live variables at the end of its block: all
+ * the instructions of a block at once with {@link #getBlockLiveness
+ * getBlockLiveness}, in time linear in the size of the block, or a single
+ * instruction at a time with the other query methods, each of which also
+ * takes a time linear in the size of the block.
+ *
+ * <p>
+ * Long and double values use two local variable slots, which are both
+ * considered as used or defined by the instructions which load or store these
+ * values. The local variables which are live at the beginning of an exception
+ * handler are considered live at all the instructions covered by this
+ * handler.
+ */
+public class Liveness implements Opcodes {
+
+    /**
+     * The instructions of the analyzed method.
+     */
+    private final AbstractInsnNode[] insns;
+
+    /**
+     * The control flow graph of the analyzed method.
+     */
+    private final ControlFlowGraph cfg;
+
+    /**
+     * The number of longs used for each bitset.
+     */
+    private final int words;
+
+    /**
+     * The exception handler blocks of block b are
+     * handlers[handlerStart[b]..handlerStart[b+1]-1].
+     */
+    private int[] handlerStart;
+
+    private int[] handlers;
+
+    /**
+     * The variables used by each block before being defined in this block.
+     * The bitset of block b is stored at index b * words.
+     */
+    private final long[] gen;
+
+    /**
+     * The variables defined by each block.
+     */
+    private final long[] kill;
+
+    /**
+     * The live variables at the beginning of each block.
+     */
+    private final long[] liveIn;
+
+    /**
+     * The live variables at the end of each block.
+     */
+    private final long[] liveOut;
+
+    /**
+     * Computes the live variables of the given method.
+     *
+     * @param m
+     *            a method.
+     */
+    public Liveness(final MethodNode m) {
+        this(m, new ControlFlowGraph(m));
+    }
+
+    /**
+     * Computes the live variables of the given method.
+     *
+     * @param m
+     *            a method.
+     * @param cfg
+     *            the control flow graph of this method.
+     */
+    public Liveness(final MethodNode m, final ControlFlowGraph cfg) {
+        this.insns = m.instructions.toArray();
+        this.cfg = cfg;
+        int maxLocals = Math.max(m.maxLocals, 1);
+        this.words = (maxLocals + 63) >>> 6;
+        int nBlocks = cfg.getBlockCount();
+        this.gen = new long[nBlocks * words];
+        this.kill = new long[nBlocks * words];
+        this.liveIn = new long[nBlocks * words];
+        this.liveOut = new long[nBlocks * words];
+        findHandlers(m.instructions, m.tryCatchBlocks);
+        for (int b = 0; b < nBlocks; ++b) {
+            int offset = b * words;
+            for (int i = cfg.getBlockEnd(b) - 1; i >= cfg.getBlockStart(b); --i) {
+                AbstractInsnNode insn = insns[i];
+                if (isDef(insn)) {
+                    int var = getVar(insn);
+                    set(kill, offset, var);
+                    clear(gen, offset, var);
+                    if (getSize(insn) == 2) {
+                        set(kill, offset, var + 1);
+                        clear(gen, offset, var + 1);
+                    }
+                }
+                if (isUse(insn)) {
+                    int var = getVar(insn);
+                    set(gen, offset, var);
+                    if (getSize(insn) == 2) {
+                        set(gen, offset, var + 1);
+                    }
+                }
+            }
+        }
+        solve();
+    }
+
+    /**
+     * Returns the control flow graph used by this analysis.
+     *
+     * @return the control flow graph used by this analysis.
+     */
+    public ControlFlowGraph getControlFlowGraph() {
+        return cfg;
+    }
+
+    /**
+     * Returns the number of longs used for each bitset returned by this
+     * analysis.
+     *
+     * @return the number of longs used for each bitset.
+     */
+    public int getWordCount() {
+        return words;
+    }
+
+    /**
+     * Computes the live variables before and after each instruction of the
+     * given block, in a single backward pass over this block. For a block of
+     * n instructions starting at instruction s, the n + 1 bitsets stored in
+     * the returned array are such that the bitset at index k *
+     * {@link #getWordCount getWordCount()} contains the live variables before
+     * instruction s + k, for k &lt; n, and after instruction s + n - 1 for k
+     * = n. The live variables after an instruction of the block are therefore
+     * the live variables before the next one.
+     *
+     * @param block
+     *            the index of a basic block.
+     * @param live
+     *            an array to be reused to store the result, or <tt>null</tt>.
+     * @return the given array if it is large enough, or a new array
+     *         otherwise, containing the live variables before and after each
+     *         instruction of the given block.
+     */
+    public long[] getBlockLiveness(final int block, final long[] live) {
+        int start = cfg.getBlockStart(block);
+        int end = cfg.getBlockEnd(block);
+        int offset = (end - start) * words;
+        long[] result = live;
+        if (result == null || result.length < offset + words) {
+            result = new long[offset + words];
+        }
+        System.arraycopy(liveOut, block * words, result, offset, words);
+        addHandlers(block, result, offset);
+        for (int i = end - 1; i >= start; --i) {
+            System.arraycopy(result, offset, result, offset - words, words);
+            offset -= words;
+            transfer(insns[i], result, offset);
+            addHandlers(block, result, offset);
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the given local variable is live before the given
+     * instruction. This method takes a time linear in the size of the basic
+     * block of the instruction (see {@link #getBlockLiveness
+     * getBlockLiveness}).
+     *
+     * @param insn
+     *            the index of an instruction.
+     * @param var
+     *            a local variable index.
+     * @return <tt>true</tt> if the given local variable is live before the
+     *         given instruction is executed.
+     */
+    public boolean isLiveIn(final int insn, final int var) {
+        return get(getLiveIn(insn), 0, var);
+    }
+
+    /**
+     * Returns whether the given local variable is live after the given
+     * instruction. This method takes a time linear in the size of the basic
+     * block of the instruction.
+     *
+     * @param insn
+     *            the index of an instruction.
+     * @param var
+     *            a local variable index.
+     * @return <tt>true</tt> if the given local variable is live after the
+     *         given instruction is executed.
+     */
+    public boolean isLiveOut(final int insn, final int var) {
+        return get(getLiveOut(insn), 0, var);
+    }
+
+    /**
+     * Returns the live variables before the given instruction. This method
+     * takes a time linear in the size of the basic block of the instruction.
+     *
+     * @param insn
+     *            the index of an instruction.
+     * @return a bitset of the live variables before the given instruction is
+     *         executed: variable i is live if bit (i &amp; 63) of element
+     *         (i &gt;&gt; 6) is set.
+     */
+    public long[] getLiveIn(final int insn) {
+        long[] live = getLiveOut(insn);
+        transfer(insns[insn], live, 0);
+        addHandlers(cfg.getBlock(insn), live, 0);
+        return live;
+    }
+
+    /**
+     * Returns the live variables after the given instruction. This method
+     * takes a time linear in the size of the basic block of the instruction.
+     *
+     * @param insn
+     *            the index of an instruction.
+     * @return a bitset of the live variables after the given instruction is
+     *         executed: variable i is live if bit (i &amp; 63) of element
+     *         (i &gt;&gt; 6) is set.
+     */
+    public long[] getLiveOut(final int insn) {
+        int b = cfg.getBlock(insn);
+        long[] live = new long[words];
+        System.arraycopy(liveOut, b * words, live, 0, words);
+        for (int i = cfg.getBlockEnd(b) - 1; i > insn; --i) {
+            transfer(insns[i], live, 0);
+        }
+        addHandlers(b, live, 0);
+        return live;
+    }
+
+    // ------------------------------------------------------------------------
+    // Data flow analysis
+    // ------------------------------------------------------------------------
+
+    /**
+     * Computes the exception handlers of each basic block.
+     */
+    private void findHandlers(final InsnList insnList,
+            final List<TryCatchBlockNode> tryCatchBlocks) {
+        int nBlocks = cfg.getBlockCount();
+        handlerStart = new int[nBlocks + 1];
+        for (int pass = 0; pass < 2; ++pass) {
+            int[] pos = null;
+            if (pass == 1) {
+                for (int b = 0; b < nBlocks; ++b) {
+                    handlerStart[b + 1] += handlerStart[b];
+                }
+                handlers = new int[handlerStart[nBlocks]];
+                pos = new int[nBlocks];
+                System.arraycopy(handlerStart, 0, pos, 0, nBlocks);
+            }
+            for (int i = 0; i < tryCatchBlocks.size(); ++i) {
+                TryCatchBlockNode tcb = tryCatchBlocks.get(i);
+                int handler = cfg.getBlock(insnList.indexOf(tcb.handler));
+                int end = insnList.indexOf(tcb.end);
+                int j = insnList.indexOf(tcb.start);
+                while (j < end) {
+                    int b = cfg.getBlock(j);
+                    if (pass == 0) {
+                        ++handlerStart[b + 1];
+                    } else {
+                        handlers[pos[b]++] = handler;
+                    }
+                    j = cfg.getBlockEnd(b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves the data flow equations with a worklist of basic blocks,
+     * initialized in postorder.
+     */
+    private void solve() {
+        int nBlocks = cfg.getBlockCount();
+        int[] rpo = cfg.getReversePostorder();
+        int[] queue = new int[nBlocks];
+        boolean[] queued = new boolean[nBlocks];
+        int top = 0;
+        for (int b = nBlocks - 1; b >= 0; --b) {
+            if (!cfg.isReachable(b)) {
+                queue[top++] = b;
+                queued[b] = true;
+            }
+        }
+        // the queue is used as a stack, so the first block of the reverse
+        // postorder is processed last
+        for (int i = 0; i < rpo.length; ++i) {
+            queue[top++] = rpo[i];
+            queued[rpo[i]] = true;
+        }
+        long[] in = new long[words];
+        while (top > 0) {
+            int b = queue[--top];
+            queued[b] = false;
+            int offset = b * words;
+            for (int i = 0; i < cfg.getSuccessorCount(b); ++i) {
+                int s = cfg.getSuccessor(b, i) * words;
+                for (int w = 0; w < words; ++w) {
+                    liveOut[offset + w] |= liveIn[s + w];
+                }
+            }
+            boolean changed = false;
+            for (int w = 0; w < words; ++w) {
+                in[w] = gen[offset + w]
+                        | (liveOut[offset + w] & ~kill[offset + w]);
+            }
+            addHandlers(b, in, 0);
+            for (int w = 0; w < words; ++w) {
+                if (in[w] != liveIn[offset + w]) {
+                    liveIn[offset + w] = in[w];
+                    changed = true;
+                }
+            }
+            if (changed) {
+                for (int i = 0; i < cfg.getPredecessorCount(b); ++i) {
+                    int p = cfg.getPredecessor(b, i);
+                    if (!queued[p]) {
+                        queued[p] = true;
+                        queue[top++] = p;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the live variables of the exception handlers of the given block to
+     * the bitset stored at the given offset.
+     */
+    private void addHandlers(final int block, final long[] live,
+            final int offset) {
+        for (int i = handlerStart[block]; i < handlerStart[block + 1]; ++i) {
+            int h = handlers[i] * words;
+            for (int w = 0; w < words; ++w) {
+                live[offset + w] |= liveIn[h + w];
+            }
+        }
+    }
+
+    /**
+     * Transforms the live variables after the given instruction into the
+     * live variables before this instruction, in the bitset stored at the
+     * given offset.
+     */
+    private static void transfer(final AbstractInsnNode insn,
+            final long[] live, final int offset) {
+        if (isDef(insn)) {
+            int var = getVar(insn);
+            clear(live, offset, var);
+            if (getSize(insn) == 2) {
+                clear(live, offset, var + 1);
+            }
+        }
+        if (isUse(insn)) {
+            int var = getVar(insn);
+            set(live, offset, var);
+            if (getSize(insn) == 2) {
+                set(live, offset, var + 1);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Utility methods
+    // ------------------------------------------------------------------------
+
+    private static boolean isUse(final AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+        return (opcode >= ILOAD && opcode <= ALOAD) || opcode == IINC
+                || opcode == RET;
+    }
+
+    private static boolean isDef(final AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+        return (opcode >= ISTORE && opcode <= ASTORE) || opcode == IINC;
+    }
+
+    private static int getVar(final AbstractInsnNode insn) {
+        if (insn instanceof IincInsnNode) {
+            return ((IincInsnNode) insn).var;
+        }
+        return ((VarInsnNode) insn).var;
+    }
+
+    private static int getSize(final AbstractInsnNode insn) {
+        switch (insn.getOpcode()) {
+        case LLOAD:
+        case DLOAD:
+        case LSTORE:
+        case DSTORE:
+            return 2;
+        default:
+            return 1;
+        }
+    }
+
+    private static boolean get(final long[] bits, final int offset,
+            final int i) {
+        int w = offset + (i >>> 6);
+        return w < bits.length && (bits[w] & (1L << i)) != 0;
+    }
+
+    private static void set(final long[] bits, final int offset, final int i) {
+        bits[offset + (i >>> 6)] |= 1L << i;
+    }
+
+    private static void clear(final long[] bits, final int offset, final int i) {
+        bits[offset + (i >>> 6)] &= ~(1L << i);
+    }
+}
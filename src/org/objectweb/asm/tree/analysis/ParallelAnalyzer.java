@@ -0,0 +1,443 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tree.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * A driver to analyze all the methods of many classes in parallel, with one
+ * {@link Analyzer} per thread. The frames computed for a method are passed to
+ * {@link #analyzed analyzed} as soon as the method has been analyzed, and are
+ * not retained afterwards. The analysis errors are collected and returned at
+ * the end of the analysis, in a deterministic order.
+ * 
+ * @param <V>
+ *            type of the Value used for the analysis.
+ */
+public abstract class ParallelAnalyzer<V extends Value> {
+
+    /**
+     * The number of threads used to analyze the methods.
+     */
+    private final int nThreads;
+
+    /**
+     * Constructs a new {@link ParallelAnalyzer} using one thread per available
+     * processor.
+     */
+    public ParallelAnalyzer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new {@link ParallelAnalyzer}.
+     * 
+     * @param nThreads
+     *            the number of threads used to analyze the methods.
+     */
+    public ParallelAnalyzer(final int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Analyzes all the methods of the given classes.
+     * 
+     * @param classes
+     *            the classes to be analyzed.
+     * @return the errors found during the analysis, in the order of the given
+     *         classes and of their methods. The message of each error is
+     *         prefixed with the name and descriptor of the corresponding
+     *         method.
+     * @throws InterruptedException
+     *             if the current thread is interrupted while waiting for the
+     *             analysis to complete.
+     */
+    public List<AnalyzerException> analyze(final List<ClassNode> classes)
+            throws InterruptedException {
+        final List<Task> tasks = new ArrayList<Task>();
+        for (int i = 0; i < classes.size(); ++i) {
+            ClassNode cn = classes.get(i);
+            for (int j = 0; j < cn.methods.size(); ++j) {
+                tasks.add(new Task(tasks.size(), cn, cn.methods.get(j)));
+            }
+        }
+        // largest methods first, to balance the load between the threads
+        Collections.sort(tasks, new Comparator<Task>() {
+            public int compare(final Task t1, final Task t2) {
+                return t2.method.instructions.size()
+                        - t1.method.instructions.size();
+            }
+        });
+        final AtomicInteger next = new AtomicInteger();
+        final Errors errors = new Errors();
+        run(new Worker() {
+            @Override
+            void work(final Analyzer<V> analyzer) {
+                int i;
+                while ((i = next.getAndIncrement()) < tasks.size()) {
+                    tasks.get(i).run(analyzer, errors);
+                }
+            }
+        }, errors);
+        return errors.toList();
+    }
+
+    /**
+     * Analyzes all the methods of all the classes of the given jar. The class
+     * files are read by the calling thread, and are parsed and analyzed by the
+     * worker threads. At most a few classes per thread are waiting to be
+     * analyzed at any given time, so that the memory used does not depend on
+     * the size of the jar.
+     * 
+     * @param jar
+     *            a jar file.
+     * @return the errors found during the analysis, in the order of the class
+     *         files in the jar and of their methods. The message of each error
+     *         is prefixed with the name and descriptor of the corresponding
+     *         method.
+     * @throws IOException
+     *             if the jar cannot be read.
+     * @throws InterruptedException
+     *             if the current thread is interrupted while waiting for the
+     *             analysis to complete.
+     */
+    public List<AnalyzerException> analyze(final File jar) throws IOException,
+            InterruptedException {
+        final BlockingQueue<Object[]> queue = new ArrayBlockingQueue<Object[]>(
+                2 * nThreads);
+        final Object[] end = new Object[0];
+        final Errors errors = new Errors();
+        Worker worker = new Worker() {
+            @Override
+            void work(final Analyzer<V> analyzer) throws InterruptedException {
+                while (true) {
+                    Object[] e = queue.take();
+                    if (e == end) {
+                        return;
+                    }
+                    try {
+                        int index = ((Integer) e[0]).intValue();
+                        ClassNode cn = readClass((byte[]) e[1]);
+                        for (int i = 0; i < cn.methods.size(); ++i) {
+                            new Task(index, cn, cn.methods.get(i)).run(
+                                    analyzer, errors);
+                        }
+                    } catch (Throwable t) {
+                        // keeps consuming the queue, so that the reading
+                        // thread is never blocked, but stops the analysis
+                        errors.fail(t);
+                    }
+                }
+            }
+        };
+        Thread[] threads = start(worker, errors);
+        try {
+            ZipFile zip = new ZipFile(jar);
+            try {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                int index = 0;
+                while (entries.hasMoreElements() && errors.failure == null) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.getName().endsWith(".class")) {
+                        InputStream is = zip.getInputStream(entry);
+                        try {
+                            put(queue, new Object[] { Integer.valueOf(index++),
+                                    readFully(is) }, threads, errors, true);
+                        } finally {
+                            is.close();
+                        }
+                    }
+                }
+            } finally {
+                zip.close();
+            }
+        } finally {
+            for (int i = 0; i < threads.length; ++i) {
+                if (!put(queue, end, threads, errors, false)) {
+                    break;
+                }
+            }
+            join(threads, errors);
+        }
+        return errors.toList();
+    }
+
+    /**
+     * Constructs a new interpreter. This method is called once per worker
+     * thread, so that interpreters need not be thread safe.
+     * 
+     * @return a new interpreter.
+     */
+    protected abstract Interpreter<V> newInterpreter();
+
+    /**
+     * Constructs a new analyzer. This method is called once per worker
+     * thread. The default implementation of this method returns a new
+     * {@link Analyzer} using an interpreter returned by
+     * {@link #newInterpreter}.
+     * 
+     * @return a new analyzer.
+     */
+    protected Analyzer<V> newAnalyzer() {
+        return new Analyzer<V>(newInterpreter());
+    }
+
+    /**
+     * Constructs a {@link ClassNode} from the content of a class file. The
+     * default implementation of this method parses the whole class file.
+     * 
+     * @param b
+     *            the content of a class file.
+     * @return the corresponding class node.
+     */
+    protected ClassNode readClass(final byte[] b) {
+        ClassNode cn = new ClassNode();
+        new ClassReader(b).accept(cn, 0);
+        return cn;
+    }
+
+    /**
+     * Called when a method has been successfully analyzed. The default
+     * implementation of this method does nothing. <i>This method is called
+     * concurrently from the worker threads, and must therefore be thread
+     * safe</i>.
+     * 
+     * @param owner
+     *            the class to which the method belongs.
+     * @param method
+     *            the analyzed method.
+     * @param frames
+     *            the frames computed for this method. See
+     *            {@link Analyzer#analyze}.
+     */
+    protected void analyzed(final ClassNode owner, final MethodNode method,
+            final Frame<V>[] frames) {
+    }
+
+    // -------------------------------------------------------------------------
+
+    private void run(final Worker worker, final Errors errors)
+            throws InterruptedException {
+        join(start(worker, errors), errors);
+    }
+
+    private Thread[] start(final Worker worker, final Errors errors) {
+        Thread[] threads = new Thread[nThreads];
+        for (int i = 0; i < nThreads; ++i) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        worker.work(newAnalyzer());
+                    } catch (Throwable t) {
+                        errors.fail(t);
+                    }
+                }
+            };
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        return threads;
+    }
+
+    /**
+     * Adds an element to the given queue, waiting for space to become
+     * available only as long as some worker threads can take it. Worker
+     * threads can terminate early if they fail to create their analyzer, in
+     * which case nothing drains the queue anymore.
+     * 
+     * @param queue
+     *            the queue of the class files to be analyzed.
+     * @param e
+     *            the element to be added.
+     * @param threads
+     *            the worker threads.
+     * @param errors
+     *            the errors collected during the analysis.
+     * @param stopOnFailure
+     *            whether to give up as soon as a worker thread failed.
+     * @return <tt>true</tt> if the element has been added.
+     * @throws InterruptedException
+     *             if the current thread is interrupted while waiting.
+     */
+    private static boolean put(final BlockingQueue<Object[]> queue,
+            final Object[] e, final Thread[] threads, final Errors errors,
+            final boolean stopOnFailure) throws InterruptedException {
+        while (!queue.offer(e, 10, TimeUnit.MILLISECONDS)) {
+            if (stopOnFailure && errors.failure != null) {
+                return false;
+            }
+            boolean alive = false;
+            for (int i = 0; i < threads.length && !alive; ++i) {
+                alive = threads[i].isAlive();
+            }
+            if (!alive) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void join(final Thread[] threads, final Errors errors)
+            throws InterruptedException {
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i].join();
+        }
+        Throwable t = errors.failure;
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private static byte[] readFully(final InputStream is) throws IOException {
+        byte[] b = new byte[is.available() > 0 ? is.available() : 1024];
+        int len = 0;
+        while (true) {
+            int n = is.read(b, len, b.length - len);
+            if (n == -1) {
+                break;
+            }
+            len += n;
+            if (len == b.length) {
+                byte[] c = new byte[b.length * 2];
+                System.arraycopy(b, 0, c, 0, len);
+                b = c;
+            }
+        }
+        byte[] c = new byte[len];
+        System.arraycopy(b, 0, c, 0, len);
+        return c;
+    }
+
+    /**
+     * The code executed by each worker thread.
+     */
+    private abstract class Worker {
+        abstract void work(Analyzer<V> analyzer) throws Exception;
+    }
+
+    /**
+     * The analysis of a single method.
+     */
+    private final class Task {
+
+        final int index;
+
+        final ClassNode owner;
+
+        final MethodNode method;
+
+        Task(final int index, final ClassNode owner, final MethodNode method) {
+            this.index = index;
+            this.owner = owner;
+            this.method = method;
+        }
+
+        void run(final Analyzer<V> analyzer, final Errors errors) {
+            Frame<V>[] frames;
+            try {
+                frames = analyzer.analyze(owner.name, method);
+            } catch (AnalyzerException e) {
+                errors.add(index, new AnalyzerException(e.node, owner.name
+                        + '.' + method.name + method.desc + ": "
+                        + e.getMessage(), e));
+                return;
+            }
+            analyzed(owner, method, frames);
+        }
+    }
+
+    /**
+     * The errors collected during an analysis.
+     */
+    private static final class Errors {
+
+        /**
+         * The analysis errors, indexed by task index.
+         */
+        private final Map<Integer, List<AnalyzerException>> errors =
+                new TreeMap<Integer, List<AnalyzerException>>();
+
+        /**
+         * The first unexpected exception thrown by a worker thread, if any.
+         */
+        volatile Throwable failure;
+
+        synchronized void add(final int index, final AnalyzerException e) {
+            Integer key = Integer.valueOf(index);
+            List<AnalyzerException> l = errors.get(key);
+            if (l == null) {
+                l = new ArrayList<AnalyzerException>();
+                errors.put(key, l);
+            }
+            l.add(e);
+        }
+
+        synchronized void fail(final Throwable t) {
+            if (failure == null) {
+                failure = t;
+            }
+        }
+
+        synchronized List<AnalyzerException> toList() {
+            List<AnalyzerException> result = new ArrayList<AnalyzerException>();
+            for (List<AnalyzerException> l : errors.values()) {
+                result.addAll(l);
+            }
+            return result;
+        }
+    }
+}
@@ -31,6 +31,7 @@ package org.objectweb.asm.tree.analysis;
 
 import java.util.List;
 
+import org.objectweb.asm.ClassHierarchy;
 import org.objectweb.asm.Type;
 
 /**
@@ -68,6 +69,12 @@ public class SimpleVerifier extends BasicVerifier {
      */
     private ClassLoader loader = getClass().getClassLoader();
 
+    /**
+     * The class hierarchy to use for referenced classes, or <tt>null</tt> to
+     * load them with {@link #loader}.
+     */
+    private ClassHierarchy classHierarchy;
+
     /**
      * Constructs a new {@link SimpleVerifier}.
      */
@@ -133,6 +140,21 @@ public class SimpleVerifier extends BasicVerifier {
         this.loader = loader;
     }
 
+    /**
+     * Sets the {@link ClassHierarchy} which will be used to get the super
+     * class, the interfaces and the kind of referenced classes, instead of
+     * loading them with a <code>ClassLoader</code>. Referenced classes are
+     * then never loaded, and the same class hierarchy can be shared between
+     * several verifiers used in parallel, provided it is thread safe.
+     * 
+     * @param classHierarchy
+     *            the class hierarchy to use, or <tt>null</tt> to use the
+     *            <code>ClassLoader</code> set with {@link #setClassLoader}.
+     */
+    public void setClassHierarchy(final ClassHierarchy classHierarchy) {
+        this.classHierarchy = classHierarchy;
+    }
+
     @Override
     public BasicValue newValue(final Type type) {
         if (type == null) {
@@ -259,6 +281,10 @@ public class SimpleVerifier extends BasicVerifier {
         if (currentClass != null && t.equals(currentClass)) {
             return isInterface;
         }
+        if (classHierarchy != null) {
+            return t.getSort() == Type.OBJECT
+                    && classHierarchy.isInterface(t.getInternalName());
+        }
         return getClass(t).isInterface();
     }
 
@@ -266,6 +292,18 @@ public class SimpleVerifier extends BasicVerifier {
         if (currentClass != null && t.equals(currentClass)) {
             return currentSuperClass;
         }
+        if (classHierarchy != null) {
+            // same results as Class.getSuperclass() for loaded classes
+            if (t.getSort() == Type.ARRAY) {
+                return Type.getObjectType("java/lang/Object");
+            }
+            if (t.getSort() != Type.OBJECT || isInterface(t)) {
+                return null;
+            }
+            String superName = classHierarchy.getSuperName(t
+                    .getInternalName());
+            return superName == null ? null : Type.getObjectType(superName);
+        }
         Class<?> c = getClass(t).getSuperclass();
         return c == null ? null : Type.getType(c);
     }
@@ -299,6 +337,32 @@ public class SimpleVerifier extends BasicVerifier {
             }
             return false;
         }
+        if (classHierarchy != null) {
+            if (t.getSort() == Type.ARRAY) {
+                if (u.getSort() != Type.ARRAY) {
+                    return false;
+                }
+                Type te = Type.getType(t.getDescriptor().substring(1));
+                Type ue = Type.getType(u.getDescriptor().substring(1));
+                if ((te.getSort() != Type.OBJECT && te.getSort() != Type.ARRAY)
+                        || (ue.getSort() != Type.OBJECT
+                        && ue.getSort() != Type.ARRAY)) {
+                    return te.equals(ue);
+                }
+                if (te.getSort() == Type.OBJECT && isInterface(te)) {
+                    return isImplementedBy(te, ue);
+                }
+                return isAssignableFrom(te, ue);
+            }
+            if (isInterface(t)) {
+                return true;
+            }
+            if (u.getSort() == Type.ARRAY) {
+                return "java/lang/Object".equals(t.getInternalName());
+            }
+            return classHierarchy.isAssignableFrom(t.getInternalName(),
+                    u.getInternalName());
+        }
         Class<?> tc = getClass(t);
         if (tc.isInterface()) {
             tc = Object.class;
@@ -306,6 +370,45 @@ public class SimpleVerifier extends BasicVerifier {
         return tc.isAssignableFrom(getClass(u));
     }
 
+    /**
+     * Returns whether the given interface is implemented by the given type.
+     * Unlike {@link #isAssignableFrom}, this method does not consider that
+     * an interface accepts any object. It is used for array element types,
+     * for which the interface types are checked as with loaded classes.
+     *
+     * @param t
+     *            an interface type.
+     * @param u
+     *            an object or array type.
+     * @return whether t is a super interface of u.
+     */
+    private boolean isImplementedBy(final Type t, final Type u) {
+        if (t.equals(u)) {
+            return true;
+        }
+        if (u.getSort() == Type.ARRAY) {
+            String name = t.getInternalName();
+            return "java/lang/Cloneable".equals(name)
+                    || "java/io/Serializable".equals(name);
+        }
+        if (currentClass != null && u.equals(currentClass)) {
+            if (currentSuperClass != null
+                    && isImplementedBy(t, currentSuperClass)) {
+                return true;
+            }
+            if (currentClassInterfaces != null) {
+                for (int i = 0; i < currentClassInterfaces.size(); ++i) {
+                    if (isImplementedBy(t, currentClassInterfaces.get(i))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        return classHierarchy.isAssignableFrom(t.getInternalName(),
+                u.getInternalName());
+    }
+
     protected Class<?> getClass(final Type t) {
         try {
             if (t.getSort() == Type.ARRAY) {
@@ -31,6 +31,8 @@ package org.objectweb.asm;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -91,4 +93,178 @@ public class ClassReaderUnitTest extends TestCase implements Opcodes {
         interfaces = new ClassReader(Opcodes.class.getName()).getInterfaces();
         assertNotNull(interfaces);
     }
+
+    public void testByteBuffer() throws IOException {
+        byte[] b = new ClassReader(getClass().getName()).b;
+        ClassWriter cw = new ClassWriter(0);
+        new ClassReader(b).accept(cw, 0);
+        byte[] expected = cw.toByteArray();
+        ClassReader cr = new ClassReader(b);
+        cw = new ClassWriter(cr, 0);
+        cr.accept(cw, 0);
+        byte[] expectedCopy = cw.toByteArray();
+
+        ByteBuffer heap = ByteBuffer.allocate(b.length + 20);
+        heap.position(7);
+        heap.put(b);
+        heap.position(7);
+        heap.limit(7 + b.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(b.length);
+        direct.put(b);
+        direct.flip();
+        ByteBuffer[] buffers = { heap, heap.slice(), direct,
+                ByteBuffer.wrap(b).asReadOnlyBuffer() };
+        for (int i = 0; i < buffers.length; ++i) {
+            ByteBuffer buffer = buffers[i];
+            int position = buffer.position();
+            cr = new ClassReader(buffer);
+            assertEquals(position, buffer.position());
+            assertEquals(getClass().getName().replace('.', '/'),
+                    cr.getClassName());
+            assertEquals(1, cr.getInterfaces().length);
+            cw = new ClassWriter(0);
+            cr.accept(cw, 0);
+            assertTrue(Arrays.equals(expected, cw.toByteArray()));
+            cw = new ClassWriter(cr, 0);
+            cr.accept(cw, 0);
+            assertTrue(Arrays.equals(expectedCopy, cw.toByteArray()));
+        }
+        assertSame(heap.array(), new ClassReader(heap).b);
+        assertNotSame(b, new ClassReader(buffers[3]).b);
+    }
+
+    public void testHeaderOnly() {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_5, ACC_PUBLIC, "p/C\u00e9", null, "p/S", new String[] {
+                "p/I", "p/J" });
+        cw.visitEnd();
+        byte[] b = cw.toByteArray();
+        ClassReader cr = new ClassReader(b);
+        assertEquals("p/C\u00e9", cr.getClassName());
+        assertEquals("p/S", cr.getSuperName());
+        assertEquals(2, cr.getInterfaces().length);
+        assertEquals("p/J", cr.getInterfaces()[1]);
+        char[] buf = new char[cr.getMaxStringLength()];
+        String name = cr.readClass(cr.header + 2, buf);
+        assertEquals("p/C\u00e9", name);
+        assertSame(name, cr.getClassName());
+    }
+
+    public void testConcurrentAccept() throws Exception {
+        byte[] b = new ClassReader(ClassReader.class.getName()).b;
+        ClassWriter cw = new ClassWriter(0);
+        new ClassReader(b).accept(cw, 0);
+        final byte[] expected = cw.toByteArray();
+        ClassReader cr = new ClassReader(b);
+        cw = new ClassWriter(cr, ClassWriter.COMPUTE_MAXS);
+        cr.accept(cw, 0);
+        final byte[] expectedCopy = cw.toByteArray();
+
+        final ClassReader shared = new ClassReader(b);
+        final Throwable[] errors = new Throwable[4];
+        Thread[] threads = new Thread[errors.length];
+        for (int i = 0; i < threads.length; ++i) {
+            final int id = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 20; ++j) {
+                            ClassWriter cw = new ClassWriter(0);
+                            shared.accept(cw, 0);
+                            assertTrue(Arrays.equals(expected,
+                                    cw.toByteArray()));
+                            cw = new ClassWriter(shared,
+                                    ClassWriter.COMPUTE_MAXS);
+                            shared.accept(cw, 0);
+                            assertTrue(Arrays.equals(expectedCopy,
+                                    cw.toByteArray()));
+                        }
+                    } catch (Throwable t) {
+                        errors[id] = t;
+                    }
+                }
+            };
+        }
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i].join();
+            if (errors[i] != null) {
+                throw new Exception(errors[i]);
+            }
+        }
+    }
+
+    public void testMembers() {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_5, ACC_PUBLIC + ACC_ABSTRACT, "C", null,
+                "java/lang/Object", null);
+        cw.visitField(ACC_PUBLIC, "f", "I", null, null).visitEnd();
+        cw.visitField(ACC_PUBLIC, "g", "J", null, null).visitEnd();
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "m", "()V", null, null);
+        mv.visitCode();
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 1);
+        mv.visitEnd();
+        cw.visitMethod(ACC_ABSTRACT, "n", "()V", null, null).visitEnd();
+        mv = cw.visitMethod(ACC_PUBLIC, "o", "()I", null, null);
+        mv.visitCode();
+        mv.visitInsn(ICONST_0);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+        cw.visitSource("C.java", null);
+        cw.visitEnd();
+        byte[] b = cw.toByteArray();
+
+        ClassReader cr = new ClassReader(b);
+        char[] buf = new char[cr.getMaxStringLength()];
+        assertEquals(2, cr.getFieldCount());
+        assertEquals(3, cr.getMethodCount());
+        assertEquals("g", cr.readUTF8(cr.getField(1) + 2, buf));
+        assertEquals("J", cr.readUTF8(cr.getField(1) + 4, buf));
+        assertEquals(ACC_ABSTRACT, cr.readUnsignedShort(cr.getMethod(1)));
+        assertEquals("o", cr.readUTF8(cr.getMethod(2) + 2, buf));
+        assertEquals(0, cr.getMethodCode(1));
+        assertEquals(1, cr.readUnsignedShort(cr.getMethodCode(2)));
+        try {
+            cr.getMethod(3);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+        }
+
+        cw = new ClassWriter(0);
+        new ClassReader(b).accept(cw, 0);
+        byte[] expected = cw.toByteArray();
+        cw = new ClassWriter(0);
+        cr.accept(cw, 0);
+        assertTrue(Arrays.equals(expected, cw.toByteArray()));
+
+        final StringBuilder members = new StringBuilder();
+        cr.accept(new ClassVisitor(ASM5) {
+            @Override
+            public void visitSource(final String source, final String debug) {
+                members.append(source).append(' ');
+            }
+
+            @Override
+            public FieldVisitor visitField(final int access,
+                    final String name, final String desc,
+                    final String signature, final Object value) {
+                members.append(name).append(' ');
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(final int access,
+                    final String name, final String desc,
+                    final String signature, final String[] exceptions) {
+                members.append(name).append(' ');
+                return null;
+            }
+        }, new Attribute[0], 0, new int[0], new int[] { 2, 0 });
+        assertEquals("C.java o m ", members.toString());
+    }
 }
@@ -29,6 +29,12 @@
  */
 package org.objectweb.asm;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 /**
@@ -65,4 +71,89 @@ public class ClassWriterUnitTest extends TestCase {
         } catch (RuntimeException e) {
         }
     }
+
+    public void testWrite() throws IOException {
+        ClassWriter cw = new ClassWriter(0);
+        new ClassReader(getClass().getName()).accept(cw, 0);
+        byte[] b = cw.toByteArray();
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        cw.write(os);
+        assertTrue(Arrays.equals(b, os.toByteArray()));
+
+        os = new ByteArrayOutputStream();
+        cw.write(Channels.newChannel(os));
+        assertTrue(Arrays.equals(b, os.toByteArray()));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(b.length + 1);
+        buffer.put((byte) 0);
+        cw.write(buffer);
+        assertEquals(b.length + 1, buffer.position());
+        byte[] c = new byte[b.length];
+        buffer.position(1);
+        buffer.get(c);
+        assertTrue(Arrays.equals(b, c));
+    }
+
+    private static void generate(final ClassVisitor cv, final String name) {
+        cv.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, name, null,
+                "java/lang/Object", new String[] { "java/lang/Runnable" });
+        cv.visitSource(name + ".java", null);
+        cv.visitField(Opcodes.ACC_PRIVATE, "f" + name, "I", null, null)
+                .visitEnd();
+        MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V",
+                null, null);
+        mv.visitCode();
+        Label l = new Label();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, name, "f" + name, "I");
+        mv.visitJumpInsn(Opcodes.IFEQ, l);
+        mv.visitLdcInsn(name);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitLabel(l);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cv.visitEnd();
+    }
+
+    public void testReset() throws IOException {
+        int flags = ClassWriter.COMPUTE_FRAMES;
+        ClassWriter cw = new ClassWriter(flags);
+        generate(cw, "A");
+        byte[] a = cw.toByteArray();
+        cw.reset();
+        generate(cw, "B");
+        byte[] b = cw.toByteArray();
+        ClassWriter fresh = new ClassWriter(flags);
+        generate(fresh, "B");
+        assertTrue(Arrays.equals(fresh.toByteArray(), b));
+
+        ClassReader cr = new ClassReader(a);
+        fresh = new ClassWriter(cr, 0);
+        cr.accept(fresh, 0);
+        cw = new ClassWriter(0);
+        generate(cw, "C");
+        cw.toByteArray();
+        cw.reset(cr);
+        cr.accept(cw, 0);
+        assertTrue(Arrays.equals(fresh.toByteArray(), cw.toByteArray()));
+    }
+
+    public void testCopyPool() {
+        ClassWriter cw = new ClassWriter(0);
+        generate(cw, "A");
+        ClassReader cr = new ClassReader(cw.toByteArray());
+        int n = cr.getItemCount();
+        cw = new ClassWriter(cr, 0);
+        int field = cw.newField("A", "fA", "I");
+        assertTrue(field > 0 && field < n);
+        assertEquals(field, cw.newField("A", "fA", "I"));
+        assertTrue(cw.newConst("A") < n);
+        assertTrue(cw.newClass("java/lang/Runnable") < n);
+        assertEquals(n, cw.newUTF8("B"));
+        assertEquals(n + 1, cw.newConst(new Long(1)));
+        assertEquals(n + 3, cw.newClass("B"));
+        assertEquals(n, cw.newUTF8("B"));
+    }
 }
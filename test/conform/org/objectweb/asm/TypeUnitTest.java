@@ -110,4 +110,79 @@ public class TypeUnitTest extends TestCase implements Opcodes {
         assertEquals(t2.getClassName(), t1.getClassName());
         assertEquals(t2.getDescriptor(), t1.getDescriptor());
     }
+
+    public void testDescriptorsAreNotCopied() {
+        String desc = "(I[JLjava/lang/String;)[Ljava/lang/Object;";
+        Type t = Type.getMethodType(desc);
+        assertSame(desc, t.getDescriptor());
+        Type[] args = t.getArgumentTypes();
+        assertEquals(3, args.length);
+        assertEquals(Type.INT_TYPE, args[0]);
+        assertEquals("[J", args[1].getDescriptor());
+        assertEquals(Type.LONG_TYPE, args[1].getElementType());
+        assertEquals("Ljava/lang/String;", args[2].getDescriptor());
+        assertEquals("java/lang/String", args[2].getInternalName());
+        assertEquals("java.lang.String", args[2].getClassName());
+        assertEquals(Type.getObjectType("java/lang/String"), args[2]);
+        assertEquals(Type.getObjectType("java/lang/String").hashCode(),
+                args[2].hashCode());
+        Type r = t.getReturnType();
+        assertEquals(Type.ARRAY, r.getSort());
+        assertEquals("[Ljava/lang/Object;", r.getDescriptor());
+        assertEquals("java/lang/Object", r.getElementType().getInternalName());
+        String name = "java/util/List";
+        assertSame(name, Type.getObjectType(name).getInternalName());
+        assertEquals("Ljava/util/List;", Type.getObjectType(name)
+                .getDescriptor());
+    }
+
+    public void testTypeCache() {
+        TypeCache cache = new TypeCache();
+        String desc = "(IJLjava/lang/String;)V";
+        Type[] args = cache.getArgumentTypes(desc);
+        assertTrue(Arrays.equals(Type.getArgumentTypes(desc), args));
+        assertSame(args, cache.getArgumentTypes(new String(desc)));
+        assertSame(Type.VOID_TYPE, cache.getReturnType(desc));
+        assertEquals(Type.getObjectType("java/lang/Object"), cache
+                .getReturnType("()Ljava/lang/Object;"));
+        assertEquals(0, cache.getArgumentTypes("()V").length);
+        assertEquals(3, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    public void testTypeCacheCapacity() {
+        TypeCache cache = new TypeCache(5);
+        cache.setCountersEnabled(true);
+        assertEquals(8, cache.getCapacity());
+        for (int i = 0; i < 100; ++i) {
+            String desc = "(I)L" + i + ";";
+            assertEquals(9, cache.getArgumentsAndReturnSizes(desc));
+            assertEquals(9, cache.getArgumentsAndReturnSizes(desc));
+            assertTrue(cache.size() <= 8);
+        }
+        assertEquals(100, cache.getHitCount());
+        assertEquals(100, cache.getMissCount());
+        assertEquals(Type.getArgumentsAndReturnSizes("(JD)J"), cache
+                .getArgumentsAndReturnSizes("(JD)J"));
+        cache.resetCounters();
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+        assertSame(TypeCache.getShared(), TypeCache.getShared());
+    }
+
+    public void testTypeCacheSizes() {
+        TypeCache cache = new TypeCache();
+        String desc = "(JLjava/lang/String;)D";
+        assertEquals(Type.getArgumentsAndReturnSizes(desc), cache
+                .getArgumentsAndReturnSizes(desc));
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getHitCount() + cache.getMissCount());
+        // the types of a descriptor cached by a sizes lookup are parsed later
+        Type[] args = cache.getArgumentTypes(desc);
+        assertTrue(Arrays.equals(Type.getArgumentTypes(desc), args));
+        assertSame(args, cache.getArgumentTypes(desc));
+        assertSame(Type.DOUBLE_TYPE, cache.getReturnType(desc));
+        assertEquals(1, cache.size());
+    }
 }
@@ -0,0 +1,180 @@
+/***
+ * ASM tests
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.commons;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * ClassPathHierarchy unit tests.
+ */
+public class ClassPathHierarchyUnitTest extends TestCase implements Opcodes {
+
+    private File dir;
+
+    private ClassPathHierarchy hierarchy;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = File.createTempFile("classpath", "");
+        dir.delete();
+        dir.mkdir();
+        writeClass("p/I", ACC_INTERFACE | ACC_ABSTRACT, "java/lang/Object",
+                null);
+        writeClass("p/J", ACC_INTERFACE | ACC_ABSTRACT, "java/lang/Object",
+                new String[] { "p/I" });
+        writeClass("p/A", ACC_PUBLIC, "java/lang/Object", null);
+        writeClass("p/B", ACC_PUBLIC, "p/A", new String[] { "p/J" });
+        writeClass("p/C", ACC_PUBLIC, "p/A", null);
+        writeClass("p/D", ACC_PUBLIC, "p/B", null);
+        hierarchy = new ClassPathHierarchy(dir.getPath());
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        hierarchy.close();
+        File[] files = new File(dir, "p").listFiles();
+        for (int i = 0; i < files.length; ++i) {
+            files[i].delete();
+        }
+        new File(dir, "p").delete();
+        dir.delete();
+    }
+
+    private void writeClass(final String name, final int access,
+            final String superName, final String[] interfaces)
+            throws IOException {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_5, access, name, null, superName, interfaces);
+        cw.visitEnd();
+        File f = new File(dir, name + ".class");
+        f.getParentFile().mkdirs();
+        FileOutputStream os = new FileOutputStream(f);
+        try {
+            os.write(cw.toByteArray());
+        } finally {
+            os.close();
+        }
+    }
+
+    public void testHeader() {
+        assertEquals("p/A", hierarchy.getSuperName("p/B"));
+        assertEquals(1, hierarchy.getInterfaces("p/B").length);
+        assertTrue(hierarchy.isInterface("p/J"));
+        assertFalse(hierarchy.isInterface("p/D"));
+    }
+
+    public void testIsAssignableFrom() {
+        assertTrue(hierarchy.isAssignableFrom("p/A", "p/D"));
+        assertTrue(hierarchy.isAssignableFrom("p/I", "p/D"));
+        assertTrue(hierarchy.isAssignableFrom("p/I", "p/J"));
+        assertTrue(hierarchy.isAssignableFrom("java/lang/Object", "p/I"));
+        assertFalse(hierarchy.isAssignableFrom("p/B", "p/C"));
+        assertFalse(hierarchy.isAssignableFrom("p/J", "p/C"));
+    }
+
+    public void testGetCommonSuperClass() {
+        assertEquals("p/A", hierarchy.getCommonSuperClass("p/D", "p/C"));
+        assertEquals("p/B", hierarchy.getCommonSuperClass("p/B", "p/D"));
+        assertEquals("p/I", hierarchy.getCommonSuperClass("p/I", "p/D"));
+        assertEquals("java/lang/Object",
+                hierarchy.getCommonSuperClass("p/J", "p/C"));
+    }
+
+    public void testClassNotFound() {
+        try {
+            hierarchy.getSuperName("p/Unknown");
+            fail();
+        } catch (RuntimeException e) {
+        }
+    }
+
+    public void testClose() throws IOException {
+        assertEquals("java/lang/Object", hierarchy.getSuperName("p/A"));
+        hierarchy.close();
+        assertEquals("java/lang/Object", hierarchy.getSuperName("p/A"));
+        try {
+            hierarchy.getSuperName("p/C");
+            fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    public void testComputeFrames() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.setClassHierarchy(hierarchy);
+        cw.visit(V1_6, ACC_PUBLIC, "p/E", null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(ACC_STATIC, "m",
+                "(Z)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        Label l0 = new Label();
+        Label l1 = new Label();
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitJumpInsn(IFEQ, l0);
+        mv.visitInsn(ACONST_NULL);
+        mv.visitTypeInsn(CHECKCAST, "p/D");
+        mv.visitJumpInsn(GOTO, l1);
+        mv.visitLabel(l0);
+        mv.visitInsn(ACONST_NULL);
+        mv.visitTypeInsn(CHECKCAST, "p/C");
+        mv.visitLabel(l1);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        final StringBuilder frames = new StringBuilder();
+        new ClassReader(cw.toByteArray()).accept(new ClassVisitor(ASM5) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name,
+                    String desc, String signature, String[] exceptions) {
+                return new MethodVisitor(ASM5) {
+                    @Override
+                    public void visitFrame(int type, int nLocal,
+                            Object[] local, int nStack, Object[] stack) {
+                        if (nStack > 0) {
+                            frames.append(stack[0]);
+                        }
+                    }
+                };
+            }
+        }, 0);
+        assertEquals("p/A", frames.toString());
+    }
+}
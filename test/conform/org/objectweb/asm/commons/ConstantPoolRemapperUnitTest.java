@@ -0,0 +1,85 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.commons;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+/**
+ * ConstantPoolRemapper unit tests.
+ */
+public class ConstantPoolRemapperUnitTest extends TestCase {
+
+    private static String toString(final byte[] b) {
+        StringWriter sw = new StringWriter();
+        new ClassReader(b).accept(new TraceClassVisitor(new PrintWriter(sw)),
+                0);
+        return sw.toString();
+    }
+
+    public void testSameResultAsClassRemapper() throws IOException {
+        Map<String, String> mapping = new HashMap<String, String>();
+        mapping.put("org/objectweb/asm/ClassReader", "p/Reader");
+        mapping.put("org/objectweb/asm/commons/Remapper", "p/Remapper");
+        mapping.put("org/objectweb/asm/commons/ConstantPoolRemapper.cr", "r");
+        mapping.put("org/objectweb/asm/ClassReader.readUTF8"
+                + "(I[C)Ljava/lang/String;", "utf8");
+        mapping.put("junit/framework/TestCase", "p/Test");
+        Remapper remapper = new SimpleRemapper(mapping);
+        ConstantPoolRemapper cpr = new ConstantPoolRemapper(remapper);
+        Class<?>[] classes = { ConstantPoolRemapper.class, getClass(),
+                ClassRemapperUnitTest.class };
+        for (int i = 0; i < classes.length; ++i) {
+            ClassReader cr = new ClassReader(classes[i].getName());
+            ClassWriter cw = new ClassWriter(0);
+            cr.accept(new ClassRemapper(cw, remapper), 0);
+            byte[] b = cpr.remap(cr);
+            assertEquals(toString(cw.toByteArray()), toString(b));
+            assertFalse(toString(cr.b).equals(toString(b)));
+        }
+    }
+
+    public void testUnchangedClass() throws IOException {
+        ClassReader cr = new ClassReader(getClass().getName());
+        byte[] b = new ConstantPoolRemapper(new SimpleRemapper("p/A", "p/B"))
+                .remap(cr);
+        assertTrue(Arrays.equals(cr.b, b));
+    }
+}
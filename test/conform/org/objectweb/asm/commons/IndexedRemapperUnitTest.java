@@ -0,0 +1,81 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.commons;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * IndexedRemapper unit tests.
+ */
+public class IndexedRemapperUnitTest extends TestCase {
+
+    public void testSameMappingAsSimpleRemapper() {
+        Map<String, String> mapping = new HashMap<String, String>();
+        mapping.put("a/A", "b/B");
+        mapping.put("a/A.f", "g");
+        mapping.put("a/A.m(I)V", "n");
+        mapping.put("a/A.m()V", "o");
+        mapping.put(".run()Ljava/lang/Runnable;", "call");
+        mapping.put("a.FakeClassName", "b.FakeClassName");
+        Remapper expected = new SimpleRemapper(mapping);
+        Remapper remapper = new IndexedRemapper(mapping);
+        mapping.put("a/A.h", "i");
+
+        String[][] members = { { "a/A", "f", "I" }, { "a/A", "m", "(I)V" },
+                { "a/A", "m", "()V" }, { "a/A", "m", "(J)V" },
+                { "a/A", "h", "I" }, { "a/C", "f", "I" },
+                { "a/C", "m", "()V" } };
+        for (int i = 0; i < members.length; ++i) {
+            String[] m = members[i];
+            assertEquals(expected.mapMethodName(m[0], m[1], m[2]),
+                    remapper.mapMethodName(m[0], m[1], m[2]));
+            assertEquals(m[1].equals("h") ? "h" : expected.mapFieldName(m[0],
+                    m[1], m[2]), remapper.mapFieldName(m[0], m[1], m[2]));
+        }
+        assertEquals("n", remapper.mapMethodName("a/A", "m", "(I)V"));
+        assertEquals("g", remapper.mapFieldName("a/A", "f", "J"));
+        assertEquals("call", remapper.mapInvokeDynamicMethodName("run",
+                "()Ljava/lang/Runnable;"));
+        assertEquals("run", remapper.mapInvokeDynamicMethodName("run", "()V"));
+        assertEquals("b/B", remapper.mapType("a/A"));
+        assertEquals("[Lb/B;", remapper.mapDesc("[La/A;"));
+        assertEquals("b", remapper.mapPackageName("a"));
+    }
+
+    public void testSingleMapping() {
+        Remapper remapper = new IndexedRemapper("a/A.m()V", "n");
+        assertEquals("n", remapper.mapMethodName("a/A", "m", "()V"));
+        assertEquals("m", remapper.mapFieldName("a/A", "m", "()V"));
+        assertEquals("a/A", remapper.mapType("a/A"));
+    }
+}
@@ -0,0 +1,108 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.commons;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Remapper unit tests.
+ */
+public class RemapperUnitTest extends TestCase {
+
+    private static Remapper newRemapper(final boolean cache) {
+        final Map<String, String> mapping = new HashMap<String, String>();
+        mapping.put("a/A", "b/B");
+        mapping.put("a/C", "a/C");
+        if (cache) {
+            return new Remapper(2) {
+                @Override
+                public String map(final String typeName) {
+                    return mapping.get(typeName);
+                }
+            };
+        }
+        return new SimpleRemapper(mapping);
+    }
+
+    public void testIdentity() {
+        String[] descs = { "I", "La/C;", "[[La/C;", "Ljava/lang/Object;" };
+        String[] methodDescs = { "(ILa/C;)V", "([La/C;)La/C;" };
+        String[] signatures = { "Ljava/util/List<La/C;>;",
+                "<T:La/C;>(TT;)V" };
+        for (int k = 0; k < 2; ++k) {
+            Remapper remapper = newRemapper(k == 1);
+            for (int i = 0; i < descs.length; ++i) {
+                assertSame(descs[i], remapper.mapDesc(descs[i]));
+            }
+            for (int i = 0; i < methodDescs.length; ++i) {
+                assertSame(methodDescs[i], remapper
+                        .mapMethodDesc(methodDescs[i]));
+            }
+            assertSame(signatures[0], remapper.mapSignature(signatures[0],
+                    true));
+            assertSame(signatures[1], remapper.mapSignature(signatures[1],
+                    false));
+        }
+    }
+
+    public void testCache() {
+        Remapper remapper = newRemapper(true);
+        Remapper expected = newRemapper(false);
+        String[] descs = { "La/A;", "[La/A;", "La/C;", "La/A;", "[La/A;" };
+        for (int i = 0; i < descs.length; ++i) {
+            assertEquals(expected.mapDesc(descs[i]), remapper
+                    .mapDesc(descs[i]));
+        }
+        assertSame(remapper.mapDesc("La/A;"), remapper.mapDesc("La/A;"));
+        String desc = "(La/A;[La/C;)La/A;";
+        assertEquals("(Lb/B;[La/C;)Lb/B;", remapper.mapMethodDesc(desc));
+        assertSame(remapper.mapMethodDesc(desc), remapper.mapMethodDesc(desc));
+        String signature = "Ljava/util/List<La/A;>;";
+        assertEquals("Ljava/util/List<Lb/B;>;", remapper.mapSignature(
+                signature, true));
+        assertSame(remapper.mapSignature(signature, true), remapper
+                .mapSignature(signature, true));
+        assertEquals(expected.mapSignature("<T:La/A;>(TT;)V", false),
+                remapper.mapSignature("<T:La/A;>(TT;)V", false));
+        assertNull(remapper.mapSignature(null, false));
+    }
+
+    public void testIllegalCacheCapacity() {
+        try {
+            new Remapper(0) {
+            };
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * JarTransformer unit tests.
+ */
+public class JarTransformerUnitTest extends TestCase implements Opcodes {
+
+    private File src;
+
+    private File dst;
+
+    /**
+     * Adds a field to each class.
+     */
+    private final JarTransformer transformer = new JarTransformer(2) {
+        @Override
+        protected ClassVisitor createClassVisitor(final ClassVisitor cv) {
+            return new ClassVisitor(ASM5, cv) {
+                @Override
+                public void visitEnd() {
+                    cv.visitField(ACC_PUBLIC, "added", "I", null, null)
+                            .visitEnd();
+                    cv.visitEnd();
+                }
+            };
+        }
+    };
+
+    @Override
+    protected void setUp() throws IOException {
+        src = File.createTempFile("src", ".jar");
+        dst = File.createTempFile("dst", ".jar");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(src));
+        zos.setComment("archive comment");
+        // a deflated entry, with a data descriptor
+        putEntry(zos, "META-INF/MANIFEST.MF", ZipEntry.DEFLATED,
+                "Manifest-Version: 1.0\n".getBytes("UTF-8"));
+        putEntry(zos, "p/", ZipEntry.STORED, new byte[0]);
+        for (int i = 0; i < 20; ++i) {
+            putEntry(zos, "p/C" + i + ".class", i % 3 == 0 ? ZipEntry.STORED
+                    : ZipEntry.DEFLATED, newClass("p/C" + i));
+        }
+        byte[] resource = new byte[100000];
+        for (int i = 0; i < resource.length; ++i) {
+            resource[i] = (byte) (i % 7);
+        }
+        putEntry(zos, "p/resource.bin", ZipEntry.STORED, resource);
+        putEntry(zos, "p/resource.txt", ZipEntry.DEFLATED, resource);
+        zos.close();
+    }
+
+    @Override
+    protected void tearDown() {
+        src.delete();
+        dst.delete();
+    }
+
+    private static byte[] newClass(final String name) {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_5, ACC_PUBLIC, name, null, "java/lang/Object", null);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void putEntry(final ZipOutputStream zos, final String name,
+            final int method, final byte[] b) throws IOException {
+        ZipEntry e = new ZipEntry(name);
+        e.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(b);
+            e.setCrc(crc.getValue());
+            e.setSize(b.length);
+            e.setCompressedSize(b.length);
+        }
+        zos.putNextEntry(e);
+        zos.write(b);
+        zos.closeEntry();
+    }
+
+    private static byte[] readFully(final InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = is.read(buf)) > 0) {
+            bos.write(buf, 0, n);
+        }
+        return bos.toByteArray();
+    }
+
+    private static void assertTransformed(final String name,
+            final byte[] expected, final byte[] actual) {
+        if (name.endsWith(".class")) {
+            ClassNode cn = new ClassNode();
+            new ClassReader(actual).accept(cn, 0);
+            assertEquals(name, cn.name + ".class");
+            assertEquals(1, cn.fields.size());
+            assertEquals("added", cn.fields.get(0).name);
+        } else {
+            assertTrue(name, Arrays.equals(expected, actual));
+        }
+    }
+
+    public void testTransform() throws IOException {
+        transformer.transform(src, dst);
+        List<String> names = new ArrayList<String>();
+        List<byte[]> contents = new ArrayList<byte[]>();
+        ZipFile in = new ZipFile(src);
+        ZipFile out = new ZipFile(dst);
+        try {
+            Enumeration<? extends ZipEntry> ins = in.entries();
+            Enumeration<? extends ZipEntry> outs = out.entries();
+            while (ins.hasMoreElements()) {
+                ZipEntry e = ins.nextElement();
+                ZipEntry f = outs.nextElement();
+                assertEquals(e.getName(), f.getName());
+                assertEquals(e.getMethod(), f.getMethod());
+                assertEquals(e.getTime(), f.getTime());
+                byte[] b = readFully(in.getInputStream(e));
+                byte[] c = readFully(out.getInputStream(f));
+                assertEquals(f.getSize(), c.length);
+                assertTransformed(e.getName(), b, c);
+                names.add(e.getName());
+                contents.add(b);
+            }
+            assertFalse(outs.hasMoreElements());
+        } finally {
+            in.close();
+            out.close();
+        }
+        assertEquals(24, names.size());
+
+        // the local headers must be consistent with the central directory
+        ZipInputStream zis = new ZipInputStream(new FileInputStream(dst));
+        try {
+            for (int i = 0; i < names.size(); ++i) {
+                ZipEntry e = zis.getNextEntry();
+                assertEquals(names.get(i), e.getName());
+                assertTransformed(e.getName(), contents.get(i),
+                        readFully(zis));
+            }
+            assertNull(zis.getNextEntry());
+        } finally {
+            zis.close();
+        }
+    }
+
+    public void testIdentity() throws IOException {
+        new JarTransformer(1).transform(src, dst);
+        ZipInputStream in = new ZipInputStream(new FileInputStream(src));
+        ZipInputStream out = new ZipInputStream(new FileInputStream(dst));
+        try {
+            ZipEntry e;
+            while ((e = in.getNextEntry()) != null) {
+                ZipEntry f = out.getNextEntry();
+                assertEquals(e.getName(), f.getName());
+                byte[] b = readFully(in);
+                byte[] c = readFully(out);
+                // classes are unchanged since their constant pool is copied
+                assertTrue(e.getName(), Arrays.equals(b, c));
+            }
+            assertNull(out.getNextEntry());
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    public void testDataDescriptor() throws IOException {
+        new JarTransformer(1).transform(src, dst);
+        // the first entry is deflated, and written with a data descriptor by
+        // ZipOutputStream, while its sizes are in its local header in dst
+        assertEquals(8, getFirstEntryFlags(src) & 8);
+        assertEquals(0, getFirstEntryFlags(dst) & 8);
+    }
+
+    private static int getFirstEntryFlags(final File f) throws IOException {
+        InputStream is = new FileInputStream(f);
+        try {
+            byte[] b = new byte[8];
+            assertEquals(8, is.read(b));
+            return (b[6] & 0xFF) | ((b[7] & 0xFF) << 8);
+        } finally {
+            is.close();
+        }
+    }
+
+    public void testTransformFailure() throws IOException {
+        JarTransformer failing = new JarTransformer(2) {
+            @Override
+            protected byte[] transform(final String name, final byte[] b) {
+                if (name.equals("p/C13.class")) {
+                    throw new IllegalStateException("cannot transform "
+                            + name);
+                }
+                return b;
+            }
+        };
+        try {
+            failing.transform(src, dst);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("cannot transform p/C13.class", e.getCause()
+                    .getMessage());
+        }
+    }
+
+    public void testSameFile() throws IOException {
+        long length = src.length();
+        try {
+            transformer.transform(src, new File(src.getParentFile(), "."
+                    + File.separator + src.getName()));
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        assertEquals(length, src.length());
+    }
+
+    public void testNotAZipFile() throws IOException {
+        FileOutputStream os = new FileOutputStream(src);
+        try {
+            os.write(new byte[100]);
+        } finally {
+            os.close();
+        }
+        try {
+            transformer.transform(src, dst);
+            fail();
+        } catch (IOException e) {
+        }
+    }
+}
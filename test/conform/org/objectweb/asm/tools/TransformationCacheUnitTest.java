@@ -0,0 +1,232 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * TransformationCache unit tests.
+ */
+public class TransformationCacheUnitTest extends TestCase {
+
+    private File dir;
+
+    private TransformationCache cache;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = File.createTempFile("cache", "");
+        dir.delete();
+        cache = new TransformationCache(dir, "fingerprint", 100000);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        cache.close();
+        File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; ++i) {
+            files[i].delete();
+        }
+        dir.delete();
+    }
+
+    private static byte[] newKey(final int i) {
+        return ("class " + i).getBytes();
+    }
+
+    private static byte[] newValue(final int i, final int length) {
+        byte[] b = new byte[length];
+        new Random(i).nextBytes(b);
+        return b;
+    }
+
+    private void reopen(final String fingerprint) throws IOException {
+        cache.close();
+        cache = new TransformationCache(dir, fingerprint, 100000);
+    }
+
+    public void testGetPut() throws IOException {
+        assertNull(cache.get(newKey(0)));
+        cache.put(newKey(0), newValue(0, 100));
+        cache.put(newKey(1), new byte[0]);
+        assertTrue(Arrays.equals(newValue(0, 100), cache.get(newKey(0))));
+        assertEquals(0, cache.get(newKey(1)).length);
+        assertNull(cache.get(newKey(2)));
+        cache.put(newKey(0), newValue(1, 50));
+        assertTrue(Arrays.equals(newValue(1, 50), cache.get(newKey(0))));
+    }
+
+    public void testReopen() throws IOException {
+        for (int i = 0; i < 10; ++i) {
+            cache.put(newKey(i), newValue(i, 100));
+        }
+        reopen("fingerprint");
+        for (int i = 0; i < 10; ++i) {
+            assertTrue(Arrays.equals(newValue(i, 100), cache.get(newKey(i))));
+        }
+    }
+
+    public void testFingerprint() throws IOException {
+        cache.put(newKey(0), newValue(0, 100));
+        reopen("other fingerprint");
+        assertNull(cache.get(newKey(0)));
+        cache.put(newKey(0), newValue(1, 100));
+        reopen("fingerprint");
+        assertTrue(Arrays.equals(newValue(0, 100), cache.get(newKey(0))));
+    }
+
+    public void testLocked() throws IOException {
+        try {
+            new TransformationCache(dir, "fingerprint", 100000);
+            fail();
+        } catch (IOException e) {
+        }
+    }
+
+    public void testGrowth() throws IOException {
+        long length = new File(dir, "index").length();
+        for (int i = 0; i < 2000; ++i) {
+            cache.put(newKey(i), newValue(i, 10));
+        }
+        assertTrue(new File(dir, "index").length() > 2 * length);
+        for (int i = 0; i < 2000; ++i) {
+            assertTrue(Arrays.equals(newValue(i, 10), cache.get(newKey(i))));
+        }
+    }
+
+    public void testEviction() throws IOException {
+        for (int i = 0; i < 100; ++i) {
+            cache.put(newKey(i), newValue(i, 1000));
+        }
+        assertEquals(100000, new File(dir, "data").length());
+        for (int i = 0; i < 10; ++i) {
+            assertNotNull(cache.get(newKey(i)));
+        }
+        // exceeds the maximum size, which keeps only the 49 most recently
+        // used entries, i.e. 0 to 9 and 61 to 99, and compacts them
+        for (int i = 100; i < 120; ++i) {
+            cache.put(newKey(i), newValue(i, 1000));
+        }
+        assertEquals(69000, new File(dir, "data").length());
+        for (int i = 0; i < 120; ++i) {
+            byte[] value = cache.get(newKey(i));
+            if (i < 10 || i > 60) {
+                assertTrue(Arrays.equals(newValue(i, 1000), value));
+            } else {
+                assertNull(value);
+            }
+        }
+        reopen("fingerprint");
+        for (int i = 0; i < 120; ++i) {
+            assertEquals(i < 10 || i > 60, cache.get(newKey(i)) != null);
+        }
+    }
+
+    public void testTooLarge() throws IOException {
+        cache.put(newKey(0), newValue(0, 60000));
+        assertNull(cache.get(newKey(0)));
+    }
+
+    public void testCorruptedData() throws IOException {
+        cache.put(newKey(0), newValue(0, 100));
+        cache.put(newKey(1), newValue(1, 100));
+        cache.close();
+        RandomAccessFile f = new RandomAccessFile(new File(dir, "data"), "rw");
+        try {
+            f.seek(150);
+            f.write(~f.read());
+        } finally {
+            f.close();
+        }
+        cache = new TransformationCache(dir, "fingerprint", 100000);
+        assertTrue(Arrays.equals(newValue(0, 100), cache.get(newKey(0))));
+        assertNull(cache.get(newKey(1)));
+    }
+
+    public void testCorruptedIndex() throws IOException {
+        cache.put(newKey(0), newValue(0, 100));
+        long length = new File(dir, "index").length();
+        cache.close();
+        RandomAccessFile f = new RandomAccessFile(new File(dir, "index"), "rw");
+        try {
+            f.seek(4);
+            f.writeInt(-1);
+        } finally {
+            f.close();
+        }
+        cache = new TransformationCache(dir, "fingerprint", 100000);
+        assertNull(cache.get(newKey(0)));
+        assertEquals(length, new File(dir, "index").length());
+        assertEquals(0, new File(dir, "data").length());
+        cache.put(newKey(0), newValue(1, 100));
+        reopen("fingerprint");
+        assertTrue(Arrays.equals(newValue(1, 100), cache.get(newKey(0))));
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random(seed);
+                        for (int j = 0; j < 2000; ++j) {
+                            int i = random.nextInt(200);
+                            byte[] value = cache.get(newKey(i));
+                            if (value == null) {
+                                cache.put(newKey(i), newValue(i, 1000));
+                            } else {
+                                assertTrue(Arrays.equals(newValue(i, 1000),
+                                        value));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t].join();
+        }
+        assertNull(failure[0]);
+        assertTrue(new File(dir, "data").length() <= 100000);
+    }
+}
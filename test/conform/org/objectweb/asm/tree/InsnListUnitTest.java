@@ -29,8 +29,11 @@
  */
 package org.objectweb.asm.tree;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -740,6 +743,66 @@ public class InsnListUnitTest extends TestCase {
 
         assertNotSame(label, labelNode.getLabel());
     }
+
+    public void testIndexOfAfterModifications() {
+        Random random = new Random(0);
+        List<AbstractInsnNode> expected = new ArrayList<AbstractInsnNode>();
+        for (int i = 0; i < 200; ++i) {
+            InsnNode insn = new InsnNode(0);
+            l1.add(insn);
+            expected.add(insn);
+        }
+        for (int i = 0; i < 2000; ++i) {
+            int index = random.nextInt(expected.size());
+            AbstractInsnNode location = expected.get(index);
+            InsnNode insn = new InsnNode(0);
+            switch (random.nextInt(8)) {
+            case 0:
+                l1.insert(location, insn);
+                expected.add(index + 1, insn);
+                break;
+            case 1:
+                l1.insertBefore(location, insn);
+                expected.add(index, insn);
+                break;
+            case 2:
+                InsnList insns = new InsnList();
+                insns.add(insn);
+                insns.add(new InsnNode(0));
+                expected.add(index + 1, insns.getLast());
+                expected.add(index + 1, insn);
+                l1.insert(location, insns);
+                break;
+            case 3:
+                l1.set(location, insn);
+                expected.set(index, insn);
+                break;
+            case 4:
+                l1.add(insn);
+                expected.add(insn);
+                break;
+            case 5:
+                l1.insert(insn);
+                expected.add(0, insn);
+                break;
+            default:
+                l1.remove(location);
+                expected.remove(index);
+                break;
+            }
+            assertEquals(expected.size(), l1.size());
+            // checks some indexes, which updates some stale indexes
+            for (int j = 0; j < 3; ++j) {
+                int k = random.nextInt(expected.size());
+                assertEquals(k, l1.indexOf(expected.get(k)));
+                assertSame(expected.get(k), l1.get(k));
+            }
+        }
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(i, l1.indexOf(expected.get(i)));
+            assertSame(expected.get(i), l1.get(i));
+        }
+    }
 }
 
 class CheckedInsnList extends InsnList {
@@ -0,0 +1,141 @@
+/***
+ * ASM tests
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tree.analysis;
+
+import junit.framework.TestCase;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Analyzer unit tests for compact frames.
+ */
+public class AnalyzerCompactFramesUnitTest extends TestCase implements Opcodes {
+
+    private static MethodNode newMethod() {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "(I)I", null, null);
+        Label l0 = new Label();
+        Label l1 = new Label();
+        Label l2 = new Label();
+        Label l3 = new Label();
+        Label l4 = new Label();
+        Label l5 = new Label();
+        mn.visitCode();
+        mn.visitTryCatchBlock(l0, l1, l2, "java/lang/RuntimeException");
+        mn.visitInsn(ICONST_0);
+        mn.visitVarInsn(ISTORE, 1);
+        mn.visitLabel(l0);
+        mn.visitLineNumber(1, l0);
+        mn.visitVarInsn(ILOAD, 1);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitJumpInsn(IF_ICMPGE, l1);
+        mn.visitVarInsn(ILOAD, 1);
+        mn.visitTableSwitchInsn(0, 1, l4, l3, l4);
+        mn.visitLabel(l3);
+        mn.visitInsn(ACONST_NULL);
+        mn.visitVarInsn(ASTORE, 2);
+        mn.visitLabel(l4);
+        mn.visitIincInsn(1, 1);
+        mn.visitJumpInsn(GOTO, l0);
+        mn.visitLabel(l1);
+        mn.visitVarInsn(ILOAD, 1);
+        mn.visitInsn(IRETURN);
+        mn.visitLabel(l2);
+        mn.visitInsn(POP);
+        mn.visitInsn(ICONST_M1);
+        mn.visitInsn(IRETURN);
+        mn.visitLabel(l5);
+        mn.visitMaxs(2, 3);
+        mn.visitEnd();
+        return mn;
+    }
+
+    private static String toString(final Frame<BasicValue> f) {
+        return f == null ? null : f.getLocals() + " " + f;
+    }
+
+    public void testCompactFrames() throws AnalyzerException {
+        MethodNode mn = newMethod();
+        Frame<BasicValue>[] expected = new Analyzer<BasicValue>(
+                new BasicVerifier()).analyze("C", mn);
+
+        Analyzer<BasicValue> a = new Analyzer<BasicValue>(new BasicVerifier());
+        a.setCompactFrames(true);
+        Frame<BasicValue>[] frames = a.analyze("C", mn);
+        assertEquals(expected.length, frames.length);
+        int n = 0;
+        for (int i = 0; i < frames.length; ++i) {
+            if (frames[i] != null) {
+                assertEquals(toString(expected[i]), toString(frames[i]));
+                ++n;
+            }
+            assertEquals(toString(expected[i]), toString(a.getFrame(i)));
+        }
+        assertTrue(n < frames.length / 2);
+
+        frames = a.getFrames();
+        for (int i = 0; i < frames.length; ++i) {
+            assertEquals(toString(expected[i]), toString(frames[i]));
+        }
+        assertNull(frames[frames.length - 1]);
+    }
+
+    public void testCompactFramesError() {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "()V", null, null);
+        mn.visitCode();
+        mn.visitInsn(NOP);
+        mn.visitMaxs(0, 0);
+        mn.visitEnd();
+        Analyzer<BasicValue> a = new Analyzer<BasicValue>(new BasicVerifier());
+        a.setCompactFrames(true);
+        try {
+            a.analyze("C", mn);
+            fail();
+        } catch (AnalyzerException e) {
+            assertTrue(e.getMessage().endsWith(
+                    "Execution can fall off end of the code"));
+        }
+    }
+
+    public void testCopyOnWrite() {
+        Frame<BasicValue> f = new Frame<BasicValue>(2, 1);
+        f.setLocal(0, BasicValue.INT_VALUE);
+        f.setLocal(1, BasicValue.INT_VALUE);
+        Frame<BasicValue> g = new Frame<BasicValue>(f);
+        g.setLocal(1, BasicValue.REFERENCE_VALUE);
+        g.push(BasicValue.INT_VALUE);
+        assertEquals(BasicValue.INT_VALUE, f.getLocal(1));
+        assertEquals(BasicValue.REFERENCE_VALUE, g.getLocal(1));
+        assertEquals(0, f.getStackSize());
+        f.setLocal(0, BasicValue.FLOAT_VALUE);
+        assertEquals(BasicValue.INT_VALUE, g.getLocal(0));
+    }
+}
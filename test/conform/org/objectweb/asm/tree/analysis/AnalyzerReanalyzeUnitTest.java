@@ -0,0 +1,236 @@
+/***
+ * ASM tests
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tree.analysis;
+
+import junit.framework.TestCase;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+/**
+ * Analyzer unit tests for incremental re-analysis.
+ */
+public class AnalyzerReanalyzeUnitTest extends TestCase implements Opcodes {
+
+    private MethodNode mn;
+
+    private AbstractInsnNode store;
+
+    private AbstractInsnNode tail;
+
+    /**
+     * Creates a method made of a loop followed by a long sequence of
+     * instructions. The loop stores null or an object in local 2.
+     */
+    @Override
+    protected void setUp() {
+        mn = new MethodNode(ACC_STATIC, "m", "(I)Ljava/lang/Object;", null,
+                null);
+        Label l0 = new Label();
+        Label l1 = new Label();
+        mn.visitCode();
+        mn.visitInsn(ICONST_0);
+        mn.visitVarInsn(ISTORE, 1);
+        mn.visitInsn(ACONST_NULL);
+        mn.visitVarInsn(ASTORE, 2);
+        mn.visitLabel(l0);
+        mn.visitVarInsn(ILOAD, 1);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitJumpInsn(IF_ICMPGE, l1);
+        mn.visitInsn(ACONST_NULL);
+        store = mn.instructions.getLast();
+        mn.visitVarInsn(ASTORE, 2);
+        mn.visitIincInsn(1, 1);
+        mn.visitJumpInsn(GOTO, l0);
+        mn.visitLabel(l1);
+        for (int i = 0; i < 50; ++i) {
+            mn.visitInsn(ICONST_0);
+            mn.visitVarInsn(ISTORE, 1);
+        }
+        tail = mn.instructions.getLast();
+        mn.visitVarInsn(ALOAD, 2);
+        mn.visitInsn(ARETURN);
+        mn.visitMaxs(2, 3);
+        mn.visitEnd();
+    }
+
+    private static void assertFrames(final MethodNode mn,
+            final Frame<BasicValue>[] frames) throws AnalyzerException {
+        Frame<BasicValue>[] expected = new Analyzer<BasicValue>(
+                new SimpleVerifier()).analyze("C", mn);
+        assertEquals(expected.length, frames.length);
+        for (int i = 0; i < frames.length; ++i) {
+            assertEquals(String.valueOf(expected[i]),
+                    String.valueOf(frames[i]));
+        }
+    }
+
+    public void testReplaceInstruction() throws AnalyzerException {
+        Analyzer<BasicValue> a = new Analyzer<BasicValue>(new SimpleVerifier());
+        a.analyze("C", mn);
+        mn.instructions.set(store, new LdcInsnNode("x"));
+        assertFrames(mn, a.reanalyze("C", mn));
+    }
+
+    public void testInsertAndRemoveInstructions() throws AnalyzerException {
+        Analyzer<BasicValue> a = new Analyzer<BasicValue>(new SimpleVerifier());
+        int full = a.analyze("C", mn).length;
+        int fullIterations = a.getIterationCount();
+
+        mn.instructions.insert(tail, new InsnNode(POP));
+        mn.instructions.insert(tail, new InsnNode(ICONST_1));
+        Frame<BasicValue>[] frames = a.reanalyze("C", mn);
+        assertEquals(full + 2, frames.length);
+        assertFrames(mn, frames);
+        assertTrue(a.getIterationCount() < fullIterations / 4);
+
+        mn.instructions.remove(tail.getNext());
+        mn.instructions.remove(tail.getNext());
+        assertFrames(mn, a.reanalyze("C", mn));
+        assertTrue(a.getIterationCount() < fullIterations / 4);
+    }
+
+    public void testChangedInPlace() throws AnalyzerException {
+        Analyzer<BasicValue> a = new Analyzer<BasicValue>(new SimpleVerifier());
+        a.analyze("C", mn);
+        ((VarInsnNode) store.getNext()).var = 1;
+        try {
+            a.reanalyze("C", mn, store.getNext());
+            fail();
+        } catch (AnalyzerException e) {
+            // the loop now loads an object from local 1 with ILOAD
+        }
+        ((VarInsnNode) store.getNext()).var = 2;
+        assertFrames(mn, a.reanalyze("C", mn, store.getNext()));
+    }
+
+    public void testOtherMethod() throws AnalyzerException {
+        Analyzer<BasicValue> a = new Analyzer<BasicValue>(new SimpleVerifier());
+        a.analyze("C", mn);
+        MethodNode other = new MethodNode(ACC_STATIC, "n", "()V", null, null);
+        other.visitCode();
+        other.visitInsn(RETURN);
+        other.visitMaxs(0, 0);
+        other.visitEnd();
+        assertEquals(1, a.reanalyze("C", other).length);
+        assertEquals(1, a.getIterationCount());
+    }
+
+    /**
+     * Creates a method where a loop header has three predecessors, one of
+     * which stores a float in local 1.
+     */
+    private static MethodNode newLoop() {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "(I)V", null, null);
+        Label l = new Label();
+        Label e = new Label();
+        Label x = new Label();
+        mn.visitCode();
+        mn.visitInsn(ICONST_0);
+        mn.visitVarInsn(ISTORE, 1);
+        mn.visitLabel(l);
+        mn.visitInsn(NOP);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitJumpInsn(IFNE, e);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitJumpInsn(IFEQ, x);
+        mn.visitJumpInsn(GOTO, l);
+        mn.visitLabel(e);
+        mn.visitInsn(RETURN);
+        mn.visitLabel(x);
+        mn.visitInsn(FCONST_0);
+        mn.visitVarInsn(FSTORE, 1);
+        mn.visitJumpInsn(GOTO, l);
+        mn.visitMaxs(1, 2);
+        mn.visitEnd();
+        return mn;
+    }
+
+    public void testRemovedEdge() throws AnalyzerException {
+        MethodNode mn = newLoop();
+        Analyzer<BasicValue> a = new Analyzer<BasicValue>(new SimpleVerifier());
+        assertEquals(".", a.analyze("C", mn)[3].getLocal(1).toString());
+        mn.instructions.set(mn.instructions.getLast(), new InsnNode(RETURN));
+        Frame<BasicValue>[] frames = a.reanalyze("C", mn);
+        assertEquals("I", frames[3].getLocal(1).toString());
+        assertFrames(mn, frames);
+    }
+
+    public void testJumpChangedInPlace() throws AnalyzerException {
+        MethodNode mn = newLoop();
+        Analyzer<BasicValue> a = new Analyzer<BasicValue>(new SimpleVerifier());
+        a.analyze("C", mn);
+        JumpInsnNode jump = (JumpInsnNode) mn.instructions.getLast();
+        jump.label = (LabelNode) mn.instructions.get(9);
+        Frame<BasicValue>[] frames = a.reanalyze("C", mn, jump);
+        assertEquals("I", frames[3].getLocal(1).toString());
+        assertFrames(mn, frames);
+    }
+
+    public void testRemovedInstructionInHandlerRange()
+            throws AnalyzerException {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "()V", null, null);
+        Label l0 = new Label();
+        Label l1 = new Label();
+        Label l2 = new Label();
+        mn.visitCode();
+        mn.visitTryCatchBlock(l0, l1, l2, null);
+        mn.visitInsn(ICONST_0);
+        mn.visitVarInsn(ISTORE, 0);
+        mn.visitLabel(l0);
+        mn.visitInsn(FCONST_0);
+        AbstractInsnNode fconst = mn.instructions.getLast();
+        mn.visitVarInsn(FSTORE, 0);
+        mn.visitInsn(ICONST_0);
+        mn.visitVarInsn(ISTORE, 0);
+        mn.visitLabel(l1);
+        mn.visitInsn(RETURN);
+        mn.visitLabel(l2);
+        mn.visitInsn(POP);
+        mn.visitInsn(RETURN);
+        mn.visitMaxs(1, 1);
+        mn.visitEnd();
+        Analyzer<BasicValue> a = new Analyzer<BasicValue>(new SimpleVerifier());
+        int handler = mn.instructions.size() - 2;
+        assertEquals(".", a.analyze("C", mn)[handler].getLocal(0).toString());
+        mn.instructions.remove(fconst.getNext());
+        mn.instructions.remove(fconst);
+        Frame<BasicValue>[] frames = a.reanalyze("C", mn);
+        assertEquals("I", frames[handler - 2].getLocal(0).toString());
+        assertFrames(mn, frames);
+    }
+}
@@ -0,0 +1,132 @@
+/***
+ * ASM tests
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tree.analysis;
+
+import junit.framework.TestCase;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Analyzer unit tests for the worklist orders.
+ */
+public class AnalyzerWorklistUnitTest extends TestCase implements Opcodes {
+
+    /**
+     * Returns a method with nested loops, in which the type of a local
+     * variable changes in the inner loop.
+     */
+    private static MethodNode newMethod() {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "(I)V", null, null);
+        Label l0 = new Label();
+        Label l1 = new Label();
+        Label l2 = new Label();
+        Label l3 = new Label();
+        Label l4 = new Label();
+        mn.visitCode();
+        mn.visitTryCatchBlock(l0, l3, l4, "java/lang/RuntimeException");
+        mn.visitInsn(ICONST_0);
+        mn.visitVarInsn(ISTORE, 1);
+        mn.visitInsn(ACONST_NULL);
+        mn.visitVarInsn(ASTORE, 3);
+        mn.visitLabel(l0);
+        mn.visitVarInsn(ILOAD, 1);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitJumpInsn(IF_ICMPGE, l3);
+        mn.visitInsn(ICONST_0);
+        mn.visitVarInsn(ISTORE, 2);
+        mn.visitLabel(l1);
+        mn.visitVarInsn(ILOAD, 2);
+        mn.visitVarInsn(ILOAD, 1);
+        mn.visitJumpInsn(IF_ICMPGE, l2);
+        mn.visitLdcInsn("x");
+        mn.visitVarInsn(ASTORE, 3);
+        mn.visitIincInsn(2, 1);
+        mn.visitJumpInsn(GOTO, l1);
+        mn.visitLabel(l2);
+        mn.visitIincInsn(1, 1);
+        mn.visitJumpInsn(GOTO, l0);
+        mn.visitLabel(l3);
+        mn.visitInsn(RETURN);
+        mn.visitLabel(l4);
+        mn.visitInsn(POP);
+        mn.visitInsn(RETURN);
+        mn.visitMaxs(2, 4);
+        mn.visitEnd();
+        return mn;
+    }
+
+    private static Analyzer<BasicValue> analyze(final MethodNode mn,
+            final int order, final boolean compact, final String[] result)
+            throws AnalyzerException {
+        Analyzer<BasicValue> a = new Analyzer<BasicValue>(new SimpleVerifier());
+        a.setWorklistOrder(order);
+        a.setCompactFrames(compact);
+        a.analyze("C", mn);
+        Frame<BasicValue>[] frames = a.getFrames();
+        for (int i = 0; i < frames.length; ++i) {
+            result[i] = frames[i] == null ? null : frames[i].toString();
+        }
+        return a;
+    }
+
+    public void testWorklistOrders() throws AnalyzerException {
+        MethodNode mn = newMethod();
+        int n = mn.instructions.size();
+        String[] expected = new String[n];
+        String[] actual = new String[n];
+        int lifo = analyze(mn, Analyzer.LIFO, false, expected)
+                .getIterationCount();
+        int[] orders = { Analyzer.REVERSE_POSTORDER, Analyzer.SCC_ORDER };
+        for (int i = 0; i < orders.length; ++i) {
+            for (int j = 0; j < 2; ++j) {
+                Analyzer<BasicValue> a = analyze(mn, orders[i], j == 1, actual);
+                for (int k = 0; k < n; ++k) {
+                    assertEquals(expected[k], actual[k]);
+                }
+                assertTrue(a.getIterationCount() <= lifo);
+            }
+        }
+    }
+
+    public void testIterationCount() throws AnalyzerException {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "()V", null, null);
+        mn.visitCode();
+        mn.visitInsn(NOP);
+        mn.visitInsn(NOP);
+        mn.visitInsn(RETURN);
+        mn.visitMaxs(0, 0);
+        mn.visitEnd();
+        Analyzer<BasicValue> a = new Analyzer<BasicValue>(new BasicVerifier());
+        a.analyze("C", mn);
+        assertEquals(3, a.getIterationCount());
+    }
+}
@@ -0,0 +1,216 @@
+/***
+ * ASM tests
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tree.analysis;
+
+import junit.framework.TestCase;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * ControlFlowGraph unit tests.
+ */
+public class ControlFlowGraphUnitTest extends TestCase implements Opcodes {
+
+    /**
+     * Returns a method with two nested loops, a try catch block and some
+     * dead code. Its basic blocks are:
+     *
+     * <pre>
+     * 0: ICONST_0 ISTORE 1                 -> 1
+     * 1: L0 ILOAD 1 ILOAD 0 IF_ICMPGE L3   -> 2, 6
+     * 2: ICONST_0 ISTORE 2                 -> 3
+     * 3: L1 ILOAD 2 ILOAD 1 IF_ICMPGE L2   -> 4, 5
+     * 4: IINC 2 1 GOTO L1                  -> 3
+     * 5: L2 IINC 1 1 GOTO L0               -> 1
+     * 6: L3 ILOAD 1 IRETURN                -> 8
+     * 7: NOP ICONST_0 IRETURN              -> (dead code)
+     * 8: L4 POP ICONST_M1 IRETURN          (handler of L3-L4)
+     * </pre>
+     */
+    private static MethodNode newMethod() {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "(I)I", null, null);
+        Label l0 = new Label();
+        Label l1 = new Label();
+        Label l2 = new Label();
+        Label l3 = new Label();
+        Label l4 = new Label();
+        mn.visitCode();
+        mn.visitTryCatchBlock(l3, l4, l4, null);
+        mn.visitInsn(ICONST_0);
+        mn.visitVarInsn(ISTORE, 1);
+        mn.visitLabel(l0);
+        mn.visitVarInsn(ILOAD, 1);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitJumpInsn(IF_ICMPGE, l3);
+        mn.visitInsn(ICONST_0);
+        mn.visitVarInsn(ISTORE, 2);
+        mn.visitLabel(l1);
+        mn.visitVarInsn(ILOAD, 2);
+        mn.visitVarInsn(ILOAD, 1);
+        mn.visitJumpInsn(IF_ICMPGE, l2);
+        mn.visitIincInsn(2, 1);
+        mn.visitJumpInsn(GOTO, l1);
+        mn.visitLabel(l2);
+        mn.visitIincInsn(1, 1);
+        mn.visitJumpInsn(GOTO, l0);
+        mn.visitLabel(l3);
+        mn.visitVarInsn(ILOAD, 1);
+        mn.visitInsn(IRETURN);
+        mn.visitInsn(NOP);
+        mn.visitInsn(ICONST_0);
+        mn.visitInsn(IRETURN);
+        mn.visitLabel(l4);
+        mn.visitInsn(POP);
+        mn.visitInsn(ICONST_M1);
+        mn.visitInsn(IRETURN);
+        mn.visitMaxs(2, 3);
+        mn.visitEnd();
+        return mn;
+    }
+
+    private static String successors(final ControlFlowGraph g, final int b) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < g.getSuccessorCount(b); ++i) {
+            sb.append(g.getSuccessor(b, i)).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    private static String predecessors(final ControlFlowGraph g, final int b) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < g.getPredecessorCount(b); ++i) {
+            sb.append(g.getPredecessor(b, i)).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    public void testBlocks() {
+        MethodNode mn = newMethod();
+        ControlFlowGraph g = new ControlFlowGraph(mn);
+        assertEquals(9, g.getBlockCount());
+        assertEquals(0, g.getBlockStart(0));
+        assertEquals(2, g.getBlockEnd(0));
+        assertEquals(mn.instructions.size(), g.getBlockEnd(8));
+        for (int b = 0; b < g.getBlockCount(); ++b) {
+            for (int i = g.getBlockStart(b); i < g.getBlockEnd(b); ++i) {
+                assertEquals(b, g.getBlock(i));
+            }
+        }
+        assertEquals("1", successors(g, 0));
+        assertEquals("6 2", successors(g, 1));
+        assertEquals("5 4", successors(g, 3));
+        assertEquals("3", successors(g, 4));
+        assertEquals("1", successors(g, 5));
+        assertEquals("8", successors(g, 6));
+        assertEquals("8", successors(g, 7));
+        assertEquals("", successors(g, 8));
+        assertEquals("0 5", predecessors(g, 1));
+        assertEquals("2 4", predecessors(g, 3));
+        assertEquals("6 7", predecessors(g, 8));
+    }
+
+    public void testReversePostorder() {
+        ControlFlowGraph g = new ControlFlowGraph(newMethod());
+        int[] rpo = g.getReversePostorder();
+        assertEquals(8, rpo.length);
+        assertEquals(0, rpo[0]);
+        assertFalse(g.isReachable(7));
+        assertEquals(-1, g.getReversePostorderNumber(7));
+        for (int i = 0; i < rpo.length; ++i) {
+            assertEquals(i, g.getReversePostorderNumber(rpo[i]));
+        }
+        // a block comes before its successors, except for back edges
+        assertTrue(g.getReversePostorderNumber(1) < g
+                .getReversePostorderNumber(2));
+        assertTrue(g.getReversePostorderNumber(3) < g
+                .getReversePostorderNumber(4));
+        assertTrue(g.getReversePostorderNumber(6) < g
+                .getReversePostorderNumber(8));
+    }
+
+    public void testDominators() {
+        ControlFlowGraph g = new ControlFlowGraph(newMethod());
+        assertEquals(-1, g.getImmediateDominator(0));
+        assertEquals(0, g.getImmediateDominator(1));
+        assertEquals(1, g.getImmediateDominator(2));
+        assertEquals(2, g.getImmediateDominator(3));
+        assertEquals(3, g.getImmediateDominator(4));
+        assertEquals(3, g.getImmediateDominator(5));
+        assertEquals(1, g.getImmediateDominator(6));
+        assertEquals(-1, g.getImmediateDominator(7));
+        assertEquals(6, g.getImmediateDominator(8));
+        assertTrue(g.dominates(0, 5));
+        assertTrue(g.dominates(1, 8));
+        assertTrue(g.dominates(3, 3));
+        assertFalse(g.dominates(4, 5));
+        assertFalse(g.dominates(2, 6));
+        assertFalse(g.dominates(0, 7));
+    }
+
+    public void testLoops() {
+        ControlFlowGraph g = new ControlFlowGraph(newMethod());
+        assertTrue(g.isLoopHeader(1));
+        assertTrue(g.isLoopHeader(3));
+        assertFalse(g.isLoopHeader(5));
+        assertEquals(-1, g.getLoopHeader(0));
+        assertEquals(1, g.getLoopHeader(2));
+        assertEquals(3, g.getLoopHeader(4));
+        assertEquals(1, g.getLoopHeader(5));
+        assertEquals(-1, g.getLoopHeader(6));
+        assertEquals(0, g.getLoopDepth(0));
+        assertEquals(1, g.getLoopDepth(1));
+        assertEquals(2, g.getLoopDepth(3));
+        assertEquals(2, g.getLoopDepth(4));
+        assertEquals(1, g.getLoopDepth(5));
+        assertEquals(0, g.getLoopDepth(8));
+    }
+
+    public void testComponents() {
+        ControlFlowGraph g = new ControlFlowGraph(newMethod());
+        assertEquals(0, g.getComponent(0));
+        assertEquals(1, g.getComponent(1));
+        assertEquals(1, g.getComponent(2));
+        assertEquals(1, g.getComponent(3));
+        assertEquals(1, g.getComponent(4));
+        assertEquals(1, g.getComponent(5));
+        assertEquals(2, g.getComponent(6));
+        assertEquals(-1, g.getComponent(7));
+        assertEquals(3, g.getComponent(8));
+    }
+
+    public void testEmptyMethod() {
+        MethodNode mn = new MethodNode(ACC_ABSTRACT, "m", "()V", null, null);
+        ControlFlowGraph g = new ControlFlowGraph(mn);
+        assertEquals(0, g.getBlockCount());
+        assertEquals(0, g.getReversePostorder().length);
+    }
+}
@@ -0,0 +1,167 @@
+/***
+ * ASM tests
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tree.analysis;
+
+import junit.framework.TestCase;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Liveness unit tests.
+ */
+public class LivenessUnitTest extends TestCase implements Opcodes {
+
+    public void testLoop() {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "(I)I", null, null);
+        Label l0 = new Label();
+        Label l1 = new Label();
+        mn.visitCode();
+        mn.visitInsn(ICONST_0); // 0
+        mn.visitVarInsn(ISTORE, 1); // 1
+        mn.visitInsn(ICONST_5); // 2
+        mn.visitVarInsn(ISTORE, 2); // 3 dead store
+        mn.visitLabel(l0); // 4
+        mn.visitVarInsn(ILOAD, 1); // 5
+        mn.visitVarInsn(ILOAD, 0); // 6
+        mn.visitJumpInsn(IF_ICMPGE, l1); // 7
+        mn.visitIincInsn(1, 1); // 8
+        mn.visitJumpInsn(GOTO, l0); // 9
+        mn.visitLabel(l1); // 10
+        mn.visitVarInsn(ILOAD, 1); // 11
+        mn.visitInsn(IRETURN); // 12
+        mn.visitMaxs(2, 3);
+        mn.visitEnd();
+        Liveness l = new Liveness(mn);
+        assertTrue(l.isLiveIn(0, 0));
+        assertFalse(l.isLiveIn(0, 1));
+        assertTrue(l.isLiveOut(1, 1));
+        assertFalse(l.isLiveOut(3, 2));
+        assertFalse(l.isLiveIn(2, 2));
+        assertTrue(l.isLiveIn(8, 0));
+        assertTrue(l.isLiveIn(8, 1));
+        assertTrue(l.isLiveOut(8, 1));
+        assertFalse(l.isLiveIn(11, 0));
+        assertTrue(l.isLiveIn(11, 1));
+        assertFalse(l.isLiveOut(11, 1));
+        assertFalse(l.isLiveOut(12, 1));
+        assertEquals(3L, l.getLiveIn(5)[0]);
+    }
+
+    public void testLongAndHandlers() {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "(J)J", null, null);
+        Label l0 = new Label();
+        Label l1 = new Label();
+        Label l2 = new Label();
+        mn.visitCode();
+        mn.visitTryCatchBlock(l0, l1, l2, null);
+        mn.visitLabel(l0); // 0
+        mn.visitInsn(LCONST_0); // 1
+        mn.visitVarInsn(LSTORE, 0); // 2
+        mn.visitVarInsn(LLOAD, 0); // 3
+        mn.visitInsn(LRETURN); // 4
+        mn.visitLabel(l1); // 5
+        mn.visitLabel(l2); // 6
+        mn.visitInsn(POP); // 7
+        mn.visitVarInsn(LLOAD, 0); // 8
+        mn.visitInsn(LRETURN); // 9
+        mn.visitMaxs(2, 2);
+        mn.visitEnd();
+        Liveness l = new Liveness(mn);
+        // the argument is live before the store, because of the handler
+        assertTrue(l.isLiveIn(1, 0));
+        assertTrue(l.isLiveIn(1, 1));
+        assertTrue(l.isLiveIn(2, 1));
+        assertTrue(l.isLiveIn(8, 0));
+        assertTrue(l.isLiveIn(8, 1));
+        assertFalse(l.isLiveOut(8, 1));
+    }
+
+    public void testManyLocals() {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "()V", null, null);
+        mn.visitCode();
+        mn.visitInsn(ICONST_0);
+        mn.visitVarInsn(ISTORE, 100);
+        mn.visitIincInsn(100, 1);
+        mn.visitVarInsn(ILOAD, 100);
+        mn.visitInsn(POP);
+        mn.visitInsn(RETURN);
+        mn.visitMaxs(1, 101);
+        mn.visitEnd();
+        Liveness l = new Liveness(mn);
+        assertFalse(l.isLiveIn(0, 100));
+        assertTrue(l.isLiveIn(2, 100));
+        assertTrue(l.isLiveOut(2, 100));
+        assertFalse(l.isLiveOut(3, 100));
+        assertEquals(2, l.getLiveIn(0).length);
+    }
+
+    public void testBlockLiveness() {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "(J)J", null, null);
+        Label l0 = new Label();
+        Label l1 = new Label();
+        Label l2 = new Label();
+        mn.visitCode();
+        mn.visitTryCatchBlock(l0, l1, l2, null);
+        mn.visitLabel(l0);
+        mn.visitInsn(LCONST_0);
+        mn.visitVarInsn(LSTORE, 0);
+        mn.visitVarInsn(LLOAD, 0);
+        mn.visitVarInsn(LSTORE, 70);
+        mn.visitVarInsn(LLOAD, 70);
+        mn.visitInsn(LRETURN);
+        mn.visitLabel(l1);
+        mn.visitLabel(l2);
+        mn.visitInsn(POP);
+        mn.visitVarInsn(LLOAD, 0);
+        mn.visitInsn(LRETURN);
+        mn.visitMaxs(2, 72);
+        mn.visitEnd();
+        Liveness l = new Liveness(mn);
+        ControlFlowGraph cfg = l.getControlFlowGraph();
+        int words = l.getWordCount();
+        assertEquals(2, words);
+        long[] live = null;
+        for (int b = 0; b < cfg.getBlockCount(); ++b) {
+            live = l.getBlockLiveness(b, live);
+            int start = cfg.getBlockStart(b);
+            int end = cfg.getBlockEnd(b);
+            for (int i = start; i < end; ++i) {
+                long[] in = l.getLiveIn(i);
+                long[] out = l.getLiveOut(i);
+                for (int w = 0; w < words; ++w) {
+                    assertEquals(in[w], live[(i - start) * words + w]);
+                    assertEquals(out[w], live[(i - start + 1) * words + w]);
+                }
+            }
+        }
+    }
+}
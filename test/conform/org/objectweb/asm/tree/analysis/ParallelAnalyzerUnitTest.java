@@ -0,0 +1,167 @@
+/***
+ * ASM tests
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm.tree.analysis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * ParallelAnalyzer unit tests.
+ */
+public class ParallelAnalyzerUnitTest extends TestCase implements Opcodes {
+
+    private final AtomicInteger analyzed = new AtomicInteger();
+
+    private final ParallelAnalyzer<BasicValue> analyzer = new ParallelAnalyzer<BasicValue>(
+            4) {
+        @Override
+        protected Interpreter<BasicValue> newInterpreter() {
+            return new BasicVerifier();
+        }
+
+        @Override
+        protected void analyzed(final ClassNode owner,
+                final MethodNode method, final Frame<BasicValue>[] frames) {
+            assertEquals(method.instructions.size(), frames.length);
+            analyzed.incrementAndGet();
+        }
+    };
+
+    private static ClassNode newClass(final String name, final int nMethods,
+            final int invalidMethod) {
+        ClassNode cn = new ClassNode();
+        cn.visit(V1_5, ACC_PUBLIC, name, null, "java/lang/Object", null);
+        for (int i = 0; i < nMethods; ++i) {
+            MethodVisitor mv = cn.visitMethod(ACC_STATIC, "m" + i, "()I",
+                    null, null);
+            mv.visitCode();
+            for (int j = 0; j < i; ++j) {
+                mv.visitInsn(ICONST_0);
+                mv.visitInsn(POP);
+            }
+            mv.visitInsn(i == invalidMethod ? FCONST_0 : ICONST_0);
+            mv.visitInsn(IRETURN);
+            mv.visitMaxs(1, 0);
+            mv.visitEnd();
+        }
+        cn.visitEnd();
+        return cn;
+    }
+
+    public void testAnalyzeClasses() throws Exception {
+        List<ClassNode> classes = new ArrayList<ClassNode>();
+        for (int i = 0; i < 50; ++i) {
+            classes.add(newClass("C" + i, 20, i % 10 == 0 ? i % 20 : -1));
+        }
+        List<AnalyzerException> errors = analyzer.analyze(classes);
+        assertEquals(5, errors.size());
+        assertEquals(995, analyzed.get());
+        for (int i = 0; i < errors.size(); ++i) {
+            assertTrue(errors.get(i).getMessage().startsWith(
+                    "C" + (10 * i) + ".m" + (10 * i % 20) + "()I: "));
+        }
+    }
+
+    private static File newJar() throws Exception {
+        File jar = File.createTempFile("analyzer", ".jar");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar));
+        for (int i = 0; i < 50; ++i) {
+            ClassWriter cw = new ClassWriter(0);
+            newClass("C" + i, 20, i % 10 == 0 ? 3 : -1).accept(cw);
+            zos.putNextEntry(new ZipEntry("C" + i + ".class"));
+            zos.write(cw.toByteArray());
+            zos.closeEntry();
+        }
+        zos.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+        zos.closeEntry();
+        zos.close();
+        return jar;
+    }
+
+    public void testAnalyzeJar() throws Exception {
+        File jar = newJar();
+        try {
+            List<AnalyzerException> errors = analyzer.analyze(jar);
+            assertEquals(5, errors.size());
+            assertEquals(995, analyzed.get());
+            for (int i = 0; i < errors.size(); ++i) {
+                assertTrue(errors.get(i).getMessage().startsWith(
+                        "C" + (10 * i) + ".m3()I: "));
+            }
+        } finally {
+            jar.delete();
+        }
+    }
+
+    public void testAnalyzeJarWorkerFailure() throws Exception {
+        final File jar = newJar();
+        final ParallelAnalyzer<BasicValue> failing = new ParallelAnalyzer<BasicValue>(
+                1) {
+            @Override
+            protected Interpreter<BasicValue> newInterpreter() {
+                throw new IllegalStateException("no interpreter");
+            }
+        };
+        final Throwable[] result = new Throwable[1];
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    failing.analyze(jar);
+                } catch (Throwable e) {
+                    result[0] = e;
+                }
+            }
+        };
+        t.setDaemon(true);
+        try {
+            t.start();
+            t.join(10000);
+            assertFalse(t.isAlive());
+            assertTrue(result[0] instanceof IllegalStateException);
+            assertEquals("no interpreter", result[0].getMessage());
+        } finally {
+            jar.delete();
+        }
+    }
+}
@@ -31,6 +31,7 @@ package org.objectweb.asm.tree.analysis;
 
 import junit.framework.TestCase;
 
+import org.objectweb.asm.ClassHierarchy;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -444,6 +445,88 @@ public class SimpleVerifierUnitTest extends TestCase implements Opcodes {
         }
     }
 
+    public void testClassHierarchy() throws AnalyzerException {
+        SimpleVerifier verifier = new SimpleVerifier(Type.getType("LC;"),
+                Type.getType("Ljava/lang/Number;"), false);
+        verifier.setClassHierarchy(new ClassHierarchy() {
+            @Override
+            public String getSuperName(String type) {
+                return type.equals("E") ? "java/lang/Object" : "E";
+            }
+
+            @Override
+            public String[] getInterfaces(String type) {
+                return new String[0];
+            }
+
+            @Override
+            public boolean isInterface(String type) {
+                return false;
+            }
+        });
+        mn = new MethodNode(ACC_STATIC, "m", "(Z)V", null, null);
+        Label l0 = new Label();
+        Label l1 = new Label();
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitJumpInsn(IFEQ, l0);
+        mn.visitInsn(ACONST_NULL);
+        mn.visitTypeInsn(CHECKCAST, "D");
+        mn.visitJumpInsn(GOTO, l1);
+        mn.visitLabel(l0);
+        mn.visitInsn(ACONST_NULL);
+        mn.visitTypeInsn(CHECKCAST, "F");
+        mn.visitLabel(l1);
+        mn.visitTypeInsn(CHECKCAST, "E");
+        mn.visitInsn(ICONST_0);
+        mn.visitTypeInsn(ANEWARRAY, "D");
+        mn.visitTypeInsn(CHECKCAST, "[LE;");
+        mn.visitInsn(POP2);
+        mn.visitInsn(RETURN);
+        mn.visitMaxs(10, 10);
+        Analyzer<BasicValue> analyzer = new Analyzer<BasicValue>(verifier);
+        Frame<BasicValue>[] frames = analyzer.analyze("C", mn);
+        int i = mn.instructions.indexOf(mn.instructions.getLast()) - 5;
+        assertEquals(Type.getObjectType("E"), frames[i].getStack(0).getType());
+
+        verifier = new SimpleVerifier();
+        verifier.setClassHierarchy(new ClassHierarchy() {
+            @Override
+            public String getSuperName(String type) {
+                return type.equals("java/lang/Object") ? null
+                        : "java/lang/Object";
+            }
+
+            @Override
+            public String[] getInterfaces(String type) {
+                return type.equals("java/lang/Thread") ? new String[] {
+                        "java/lang/Runnable" } : new String[0];
+            }
+
+            @Override
+            public boolean isInterface(String type) {
+                return type.equals("java/lang/Runnable")
+                        || type.equals("java/lang/Cloneable");
+            }
+        });
+        Type runnable = Type.getType("Ljava/lang/Runnable;");
+        Type runnables = Type.getType("[Ljava/lang/Runnable;");
+        assertTrue(verifier.isAssignableFrom(runnable,
+                Type.getType("Ljava/lang/String;")));
+        assertTrue(verifier.isAssignableFrom(runnables,
+                Type.getType("[Ljava/lang/Thread;")));
+        assertFalse(verifier.isAssignableFrom(runnables,
+                Type.getType("[Ljava/lang/String;")));
+        assertFalse(verifier.isAssignableFrom(
+                Type.getType("[[Ljava/lang/Runnable;"),
+                Type.getType("[[Ljava/lang/Integer;")));
+        assertTrue(verifier.isAssignableFrom(
+                Type.getType("[Ljava/lang/Cloneable;"),
+                Type.getType("[[Ljava/lang/Integer;")));
+        assertTrue(verifier.isAssignableFrom(
+                Type.getType("[Ljava/lang/Object;"),
+                Type.getType("[Ljava/lang/Runnable;")));
+    }
+
     /**
      * Dummy method to avoid a FindBugs warning.
      */
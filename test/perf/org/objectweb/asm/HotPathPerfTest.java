@@ -0,0 +1,520 @@
+/***
+ * ASM performance test: measures the performances of asm package
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.asm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.ConstantPoolRemapper;
+import org.objectweb.asm.commons.IndexedRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.Interpreter;
+import org.objectweb.asm.tree.analysis.Liveness;
+import org.objectweb.asm.tree.analysis.SimpleVerifier;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.Value;
+
+/**
+ * Benchmarks of the read, write and analysis hot paths of ASM alone, over a
+ * fixed corpus of classes. Unlike {@link ALLPerfTest}, which compares ASM with
+ * other bytecode libraries, each benchmark here is run with warmup and
+ * measurement iterations over the same corpus, and reports both the time and
+ * the number of bytes allocated per class (when the JVM supports thread
+ * allocation accounting). The corpus is made of the first
+ * <tt>corpus.size</tt> classes, sorted by name, found in the jars or
+ * directories given as arguments. The hit rate of the shared
+ * {@link TypeCache} is also reported if <tt>typecache.counters</tt> is set.
+ */
+public class HotPathPerfTest {
+
+    private static final int WARMUP_ITERATIONS = Integer.getInteger(
+            "warmup.iterations", 5).intValue();
+
+    private static final int ITERATIONS = Integer.getInteger("iterations", 10)
+            .intValue();
+
+    private static final int CORPUS_SIZE = Integer.getInteger("corpus.size",
+            2000).intValue();
+
+    private static final String BENCHMARK = System.getProperty("benchmark");
+
+    static List<byte[]> classes = new ArrayList<byte[]>();
+
+    static List<ClassNode> classNodes = new ArrayList<ClassNode>();
+
+    /**
+     * The number of instructions executed by the analyzers in the current
+     * benchmark.
+     */
+    static long analyzerIterations;
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("java HotPathPerfTest <jar-or-dir>...");
+            System.exit(1);
+        }
+        TreeMap<String, byte[]> corpus = new TreeMap<String, byte[]>();
+        for (int i = 0; i < args.length; ++i) {
+            addClasses(corpus, new File(args[i]), "");
+        }
+        for (Map.Entry<String, byte[]> e : corpus.entrySet()) {
+            if (classes.size() == CORPUS_SIZE) {
+                break;
+            }
+            classes.add(e.getValue());
+        }
+        for (int i = 0; i < classes.size(); ++i) {
+            ClassNode cn = new ClassNode();
+            new ClassReader(classes.get(i)).accept(cn, 0);
+            classNodes.add(cn);
+        }
+        System.out.println("Corpus: " + classes.size() + " classes.");
+        // counting the cache hits and misses slows down the benchmarks
+        TypeCache.getShared().setCountersEnabled(
+                Boolean.getBoolean("typecache.counters"));
+
+        run("ClassReader header", new Benchmark() {
+            @Override
+            void run(final int i) {
+                ClassReader cr = new ClassReader(classes.get(i));
+                cr.getClassName();
+                cr.getSuperName();
+                cr.getInterfaces();
+            }
+        });
+        run("ClassReader.accept", new Benchmark() {
+            @Override
+            void run(final int i) {
+                new ClassReader(classes.get(i)).accept(new EmptyVisitor(), 0);
+            }
+        });
+        run("ClassReader.accept SKIP_DEBUG", new Benchmark() {
+            @Override
+            void run(final int i) {
+                new ClassReader(classes.get(i)).accept(new EmptyVisitor(),
+                        ClassReader.SKIP_DEBUG);
+            }
+        });
+        run("ClassReader.accept SKIP_FRAMES", new Benchmark() {
+            @Override
+            void run(final int i) {
+                new ClassReader(classes.get(i)).accept(new EmptyVisitor(),
+                        ClassReader.SKIP_FRAMES);
+            }
+        });
+        run("ClassReader.accept EXPAND_FRAMES", new Benchmark() {
+            @Override
+            void run(final int i) {
+                new ClassReader(classes.get(i)).accept(new EmptyVisitor(),
+                        ClassReader.EXPAND_FRAMES);
+            }
+        });
+        run("ClassReader -> ClassWriter", new Benchmark() {
+            @Override
+            void run(final int i) {
+                ClassWriter cw = new ClassWriter(0);
+                new ClassReader(classes.get(i)).accept(cw, 0);
+                cw.toByteArray();
+            }
+        });
+        run("ClassReader -> ClassWriter copyPool", new Benchmark() {
+            @Override
+            void run(final int i) {
+                ClassReader cr = new ClassReader(classes.get(i));
+                ClassWriter cw = new ClassWriter(cr, 0);
+                cr.accept(cw, 0);
+                cw.toByteArray();
+            }
+        });
+        run("ClassReader -> ClassWriter copyPool + field", new Benchmark() {
+            @Override
+            void run(final int i) {
+                ClassReader cr = new ClassReader(classes.get(i));
+                ClassWriter cw = new ClassWriter(cr, 0);
+                cr.accept(new ClassVisitor(Opcodes.ASM5, cw) {
+                    @Override
+                    public void visitEnd() {
+                        cv.visitField(Opcodes.ACC_STATIC, "added", "I", null,
+                                null).visitEnd();
+                        cv.visitEnd();
+                    }
+                }, 0);
+                cw.toByteArray();
+            }
+        });
+        run("ClassWriter.toByteArray COMPUTE_MAXS", new Benchmark() {
+            @Override
+            void run(final int i) {
+                ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+                new ClassReader(classes.get(i)).accept(cw,
+                        ClassReader.SKIP_FRAMES);
+                cw.toByteArray();
+            }
+        });
+        run("ClassWriter.toByteArray COMPUTE_FRAMES", new Benchmark() {
+            @Override
+            void run(final int i) {
+                ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+                new ClassReader(classes.get(i)).accept(cw,
+                        ClassReader.SKIP_FRAMES);
+                cw.toByteArray();
+            }
+        });
+        Map<String, String> mapping = new HashMap<String, String>();
+        mapping.put("org/objectweb/asm/ByteVector", "org/objectweb/asm/Bytes");
+        mapping.put("org/objectweb/asm/ByteVector.putShort"
+                + "(I)Lorg/objectweb/asm/ByteVector;", "putU2");
+        mapping.put("org/objectweb/asm/ByteVector.length", "size");
+        Remapper[] remappers = { new SimpleRemapper(mapping),
+                new IndexedRemapper(mapping) };
+        for (int k = 0; k < remappers.length; ++k) {
+            final Remapper remapper = remappers[k];
+            run("ClassRemapper " + remapper.getClass().getSimpleName(),
+                    new Benchmark() {
+                        @Override
+                        void run(final int i) {
+                            new ClassReader(classes.get(i)).accept(
+                                    new ClassRemapper(new EmptyVisitor(),
+                                            remapper), 0);
+                        }
+                    });
+        }
+        final Remapper remapper = remappers[1];
+        run("ClassRemapper -> ClassWriter", new Benchmark() {
+            @Override
+            void run(final int i) {
+                ClassWriter cw = new ClassWriter(0);
+                new ClassReader(classes.get(i)).accept(new ClassRemapper(cw,
+                        remapper), 0);
+                cw.toByteArray();
+            }
+        });
+        final ConstantPoolRemapper cpr = new ConstantPoolRemapper(remapper);
+        run("ConstantPoolRemapper", new Benchmark() {
+            @Override
+            void run(final int i) {
+                cpr.remap(new ClassReader(classes.get(i)));
+            }
+        });
+        run("ClassNode round trip", new Benchmark() {
+            @Override
+            void run(final int i) {
+                ClassNode cn = new ClassNode();
+                new ClassReader(classes.get(i)).accept(cn, 0);
+                ClassWriter cw = new ClassWriter(0);
+                cn.accept(cw);
+                cw.toByteArray();
+            }
+        });
+        run("Analyzer BasicInterpreter", new Benchmark() {
+            @Override
+            void run(final int i) throws Exception {
+                analyze(classNodes.get(i), new BasicInterpreter());
+            }
+        });
+        run("Analyzer SourceInterpreter", new Benchmark() {
+            @Override
+            void run(final int i) throws Exception {
+                analyze(classNodes.get(i), new SourceInterpreter());
+            }
+        });
+        run("Analyzer SimpleVerifier", new Benchmark() {
+            @Override
+            void run(final int i) throws Exception {
+                analyze(classNodes.get(i), new SimpleVerifier());
+            }
+        });
+        run("Liveness", new Benchmark() {
+            @Override
+            void run(final int i) throws Exception {
+                ClassNode cn = classNodes.get(i);
+                for (int j = 0; j < cn.methods.size(); ++j) {
+                    new Liveness(cn.methods.get(j));
+                }
+            }
+        });
+        run("Liveness + all instructions", new Benchmark() {
+            @Override
+            void run(final int i) throws Exception {
+                ClassNode cn = classNodes.get(i);
+                long[] live = null;
+                for (int j = 0; j < cn.methods.size(); ++j) {
+                    Liveness l = new Liveness(cn.methods.get(j));
+                    int n = l.getControlFlowGraph().getBlockCount();
+                    for (int b = 0; b < n; ++b) {
+                        live = l.getBlockLiveness(b, live);
+                    }
+                }
+            }
+        });
+        String[] orders = { "LIFO", "REVERSE_POSTORDER", "SCC_ORDER" };
+        for (int k = 0; k < orders.length; ++k) {
+            final int order = k;
+            run("Analyzer SourceInterpreter " + orders[k], new Benchmark() {
+                @Override
+                void run(final int i) throws Exception {
+                    analyze(classNodes.get(i), new SourceInterpreter(), order);
+                }
+            });
+            run("Analyzer SimpleVerifier " + orders[k], new Benchmark() {
+                @Override
+                void run(final int i) throws Exception {
+                    analyze(classNodes.get(i), new SimpleVerifier(), order);
+                }
+            });
+        }
+    }
+
+    static <V extends Value> void analyze(
+            final ClassNode cn, final Interpreter<V> interpreter)
+            throws Exception {
+        analyze(cn, interpreter, Analyzer.LIFO);
+    }
+
+    static <V extends Value> void analyze(final ClassNode cn,
+            final Interpreter<V> interpreter, final int worklistOrder)
+            throws Exception {
+        for (int j = 0; j < cn.methods.size(); ++j) {
+            MethodNode mn = cn.methods.get(j);
+            if (mn.instructions.size() > 0) {
+                Analyzer<V> a = new Analyzer<V>(interpreter);
+                a.setWorklistOrder(worklistOrder);
+                try {
+                    a.analyze(cn.name, mn);
+                } finally {
+                    analyzerIterations += a.getIterationCount();
+                }
+            }
+        }
+    }
+
+    static void addClasses(final Map<String, byte[]> corpus, final File file,
+            final String prefix) throws IOException {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files == null) {
+                throw new IOException("unable to read files of " + file);
+            }
+            for (int i = 0; i < files.length; ++i) {
+                addClasses(corpus, files[i], prefix + file.getName() + '/');
+            }
+        } else if (file.getName().endsWith(".class")) {
+            InputStream is = new FileInputStream(file);
+            try {
+                corpus.put(prefix + file.getName(), new ClassReader(is).b);
+            } finally {
+                is.close();
+            }
+        } else if (file.getName().endsWith(".jar")) {
+            ZipFile zip = new ZipFile(file);
+            try {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry e = entries.nextElement();
+                    String name = e.getName();
+                    if (name.endsWith(".class") && !corpus.containsKey(name)) {
+                        InputStream is = zip.getInputStream(e);
+                        try {
+                            corpus.put(name, new ClassReader(is).b);
+                        } finally {
+                            is.close();
+                        }
+                    }
+                }
+            } finally {
+                zip.close();
+            }
+        }
+    }
+
+    static void run(final String name, final Benchmark benchmark) {
+        if (BENCHMARK != null && name.indexOf(BENCHMARK) == -1) {
+            return;
+        }
+        System.out.println("\n" + name);
+        analyzerIterations = 0;
+        TypeCache.getShared().resetCounters();
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            benchmark.iteration();
+        }
+        boolean allocSupported = allocatedBytes() >= 0;
+        long totalTime = 0;
+        long totalBytes = 0;
+        long bestTime = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; ++i) {
+            long allocated = allocatedBytes();
+            long t = System.nanoTime();
+            benchmark.iteration();
+            t = System.nanoTime() - t;
+            allocated = allocatedBytes() - allocated;
+            totalTime += t;
+            totalBytes += allocated;
+            bestTime = Math.min(bestTime, t);
+        }
+        int n = ITERATIONS * classes.size();
+        System.out.println("  time:  " + (totalTime / n) + " ns/class (best "
+                + (bestTime / classes.size()) + " ns/class)");
+        if (allocSupported) {
+            System.out.println("  alloc: " + (totalBytes / n) + " bytes/class");
+        }
+        if (analyzerIterations > 0) {
+            System.out.println("  analyzer iterations: " + analyzerIterations
+                    / (WARMUP_ITERATIONS + ITERATIONS) + " insns/corpus");
+        }
+        TypeCache cache = TypeCache.getShared();
+        long lookups = cache.getHitCount() + cache.getMissCount();
+        if (lookups > 0) {
+            System.out.println("  type cache: " + cache.getHitCount() * 100
+                    / lookups + "% hits (" + cache.getMissCount()
+                    + " misses, " + cache.size() + "/" + cache.getCapacity()
+                    + " entries)");
+        }
+        if (benchmark.errors > 0) {
+            System.out.println("  errors: " + benchmark.errors /
+                    (WARMUP_ITERATIONS + ITERATIONS) + " classes");
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread, or
+     * {@link Long#MIN_VALUE} if this is not supported by the JVM.
+     */
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean) bean;
+            if (b.isThreadAllocatedMemorySupported()
+                    && b.isThreadAllocatedMemoryEnabled()) {
+                return b.getThreadAllocatedBytes(Thread.currentThread()
+                        .getId());
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    static abstract class Benchmark {
+
+        int errors;
+
+        abstract void run(int i) throws Exception;
+
+        void iteration() {
+            for (int i = 0; i < classes.size(); ++i) {
+                try {
+                    run(i);
+                } catch (Throwable t) {
+                    // classes that cannot be loaded or verified are counted,
+                    // but otherwise ignored, so that all runs are comparable
+                    ++errors;
+                }
+            }
+        }
+    }
+
+    static class EmptyVisitor extends ClassVisitor {
+
+        AnnotationVisitor av = new AnnotationVisitor(Opcodes.ASM5) {
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String name, String desc) {
+                return this;
+            }
+
+            @Override
+            public AnnotationVisitor visitArray(String name) {
+                return this;
+            }
+        };
+
+        public EmptyVisitor() {
+            super(Opcodes.ASM5);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            return av;
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc,
+                String signature, Object value) {
+            return new FieldVisitor(Opcodes.ASM5) {
+
+                @Override
+                public AnnotationVisitor visitAnnotation(String desc,
+                        boolean visible) {
+                    return av;
+                }
+            };
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc,
+                String signature, String[] exceptions) {
+            return new MethodVisitor(Opcodes.ASM5) {
+
+                @Override
+                public AnnotationVisitor visitAnnotationDefault() {
+                    return av;
+                }
+
+                @Override
+                public AnnotationVisitor visitAnnotation(String desc,
+                        boolean visible) {
+                    return av;
+                }
+
+                @Override
+                public AnnotationVisitor visitParameterAnnotation(
+                        int parameter, String desc, boolean visible) {
+                    return av;
+                }
+            };
+        }
+    }
+}